@@ -0,0 +1,117 @@
+/*
+ * Copyright 2013 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * A minimal measurement loop for the benchmarks in this package: it runs a {@link Task} for a
+ * number of warmup operations so that the JIT settles, then for a number of measured operations
+ * while recording wall time, bytes allocated by the current thread and how many operations
+ * reported success.
+ *
+ * Allocation figures come from the HotSpot-specific {@code com.sun.management.ThreadMXBean};
+ * on other VMs they are reported as -1.
+ */
+final class BenchmarkHarness {
+
+  /**
+   * One benchmarked operation, e.g. decoding a single frame.
+   */
+  interface Task {
+
+    /**
+     * @param op index of the operation, can be used to rotate through a corpus
+     * @return whether the operation succeeded (e.g. the frame was decoded correctly)
+     */
+    boolean run(int op) throws Exception;
+  }
+
+  /**
+   * The outcome of {@link BenchmarkHarness#measure(Task, int, int)}.
+   */
+  static final class Measurement {
+
+    private final int operations;
+    private final long nanos;
+    private final long allocatedBytes;
+    private final int successes;
+
+    Measurement(int operations, long nanos, long allocatedBytes, int successes) {
+      this.operations = operations;
+      this.nanos = nanos;
+      this.allocatedBytes = allocatedBytes;
+      this.successes = successes;
+    }
+
+    double getNanosPerOp() {
+      return (double) nanos / operations;
+    }
+
+    /**
+     * @return bytes allocated per operation, or -1 if the VM can't tell
+     */
+    double getBytesPerOp() {
+      return allocatedBytes < 0 ? -1 : (double) allocatedBytes / operations;
+    }
+
+    double getSuccessRate() {
+      return (double) successes / operations;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%12.0f ns/op %12.0f B/op %6.1f%% ok",
+          getNanosPerOp(), getBytesPerOp(), 100.0 * getSuccessRate());
+    }
+  }
+
+  private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+  private BenchmarkHarness() {
+  }
+
+  static Measurement measure(Task task, int warmupOps, int measuredOps) throws Exception {
+    for (int op = 0; op < warmupOps; op++) {
+      task.run(op);
+    }
+    int successes = 0;
+    long startBytes = allocatedBytes();
+    long start = System.nanoTime();
+    for (int op = 0; op < measuredOps; op++) {
+      if (task.run(op)) {
+        successes++;
+      }
+    }
+    long nanos = System.nanoTime() - start;
+    long endBytes = allocatedBytes();
+    long bytes = startBytes < 0 || endBytes < 0 ? -1 : endBytes - startBytes;
+    return new Measurement(measuredOps, nanos, bytes, successes);
+  }
+
+  private static long allocatedBytes() {
+    if (THREADS instanceof com.sun.management.ThreadMXBean) {
+      com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+      if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+      }
+    }
+    return -1;
+  }
+
+}
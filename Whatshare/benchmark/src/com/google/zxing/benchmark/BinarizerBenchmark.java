@@ -0,0 +1,120 @@
+/*
+ * Copyright 2013 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.benchmark;
+
+import com.google.zxing.Binarizer;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.benchmark.FrameCorpus.Frame;
+import com.google.zxing.common.BitMatrix;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Times {@code Binarizer.getBlackMatrix()} alone, frame size by frame size, so that changes to the
+ * thresholding kernels can be measured without the noise of the readers. Every binarizer is
+ * compared against {@link LegacyHybridBinarizer}, and matrices that differ from its output are
+ * reported, since a faster HybridBinarizer must still produce exactly the same bits.
+ *
+ * Usage: {@code BinarizerBenchmark [--warmup ops] [--iterations ops]}
+ */
+public final class BinarizerBenchmark {
+
+  private static final int DEFAULT_WARMUP = 500;
+  private static final int DEFAULT_ITERATIONS = 1000;
+
+  private BinarizerBenchmark() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    int warmup = DEFAULT_WARMUP;
+    int iterations = DEFAULT_ITERATIONS;
+    for (int i = 0; i < args.length; i++) {
+      if ("--warmup".equals(args[i])) {
+        warmup = Integer.parseInt(args[++i]);
+      } else if ("--iterations".equals(args[i])) {
+        iterations = Integer.parseInt(args[++i]);
+      } else {
+        throw new IllegalArgumentException("Unknown argument " + args[i]);
+      }
+    }
+
+    FrameCorpus corpus = new FrameCorpus().addSynthetic();
+    System.out.println(String.format("%-18s %-10s %8s", "binarizer", "size", "speedup"));
+    for (int[] size : FrameCorpus.SYNTHETIC_SIZES) {
+      List<Frame> frames = new ArrayList<Frame>();
+      for (Frame frame : corpus.getFrames()) {
+        if (frame.getWidth() == size[0] && frame.getHeight() == size[1]) {
+          frames.add(frame);
+        }
+      }
+      String sizeName = size[0] + "x" + size[1];
+      BenchmarkHarness.Measurement baseline =
+          BenchmarkHarness.measure(new BinarizeTask(null, frames), warmup, iterations);
+      System.out.println(String.format("%-18s %-10s %8s %s", "LEGACY_HYBRID", sizeName, "", baseline));
+      for (BinarizerType binarizer : BinarizerType.values()) {
+        checkSameAsLegacy(binarizer, frames);
+        BenchmarkHarness.Measurement measurement =
+            BenchmarkHarness.measure(new BinarizeTask(binarizer, frames), warmup, iterations);
+        System.out.println(String.format("%-18s %-10s %7.2fx %s", binarizer, sizeName,
+            baseline.getNanosPerOp() / measurement.getNanosPerOp(), measurement));
+      }
+    }
+  }
+
+  private static void checkSameAsLegacy(BinarizerType binarizer, List<Frame> frames) throws Exception {
+    if (binarizer == BinarizerType.GLOBAL_HISTOGRAM || binarizer == BinarizerType.INTEGRAL_IMAGE) {
+      // Different algorithms altogether.
+      return;
+    }
+    for (Frame frame : frames) {
+      BitMatrix expected = new LegacyHybridBinarizer(frame.toLuminanceSource()).getBlackMatrix();
+      BitMatrix actual = binarizer.create(frame.toLuminanceSource()).getBlackMatrix();
+      if (!expected.equals(actual)) {
+        System.out.println(binarizer + " differs from LEGACY_HYBRID on " + frame);
+      }
+    }
+  }
+
+  /**
+   * Binarizes one frame per operation; a null type stands for {@link LegacyHybridBinarizer}.
+   */
+  private static final class BinarizeTask implements BenchmarkHarness.Task {
+
+    private final BinarizerType binarizer;
+    private final List<Frame> frames;
+
+    BinarizeTask(BinarizerType binarizer, List<Frame> frames) {
+      this.binarizer = binarizer;
+      this.frames = frames;
+    }
+
+    @Override
+    public boolean run(int op) {
+      LuminanceSource source = frames.get(op % frames.size()).toLuminanceSource();
+      Binarizer instance = binarizer == null ? new LegacyHybridBinarizer(source) : binarizer.create(source);
+      try {
+        return instance.getBlackMatrix() != null;
+      } catch (NotFoundException nfe) {
+        // GlobalHistogramBinarizer gives up on frames without enough contrast.
+        return false;
+      }
+    }
+  }
+
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2013 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.benchmark;
+
+import com.google.zxing.Binarizer;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.common.BinarizerWorkspace;
+import com.google.zxing.common.GlobalHistogramBinarizer;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.common.IntegralImageBinarizer;
+
+/**
+ * The {@link Binarizer} implementations the benchmarks compare.
+ */
+enum BinarizerType {
+
+  HYBRID {
+    @Override
+    Binarizer create(LuminanceSource source) {
+      return new HybridBinarizer(source);
+    }
+  },
+
+  /**
+   * {@link HybridBinarizer} recycling its buffers across frames, as {@code DecodeHandler} does.
+   */
+  HYBRID_WORKSPACE {
+    private final BinarizerWorkspace workspace = new BinarizerWorkspace();
+
+    @Override
+    Binarizer create(LuminanceSource source) {
+      return new HybridBinarizer(source, workspace);
+    }
+  },
+
+  INTEGRAL_IMAGE {
+    @Override
+    Binarizer create(LuminanceSource source) {
+      return new IntegralImageBinarizer(source);
+    }
+  },
+
+  GLOBAL_HISTOGRAM {
+    @Override
+    Binarizer create(LuminanceSource source) {
+      return new GlobalHistogramBinarizer(source);
+    }
+  };
+
+  abstract Binarizer create(LuminanceSource source);
+
+}
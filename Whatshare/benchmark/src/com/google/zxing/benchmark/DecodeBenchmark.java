@@ -0,0 +1,165 @@
+/*
+ * Copyright 2013 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.benchmark;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.Reader;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.aztec.AztecReader;
+import com.google.zxing.benchmark.FrameCorpus.Frame;
+import com.google.zxing.datamatrix.DataMatrixReader;
+import com.google.zxing.maxicode.MaxiCodeReader;
+import com.google.zxing.oned.MultiFormatOneDReader;
+import com.google.zxing.pdf417.PDF417Reader;
+import com.google.zxing.qrcode.QRCodeReader;
+
+import java.io.File;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Feeds every frame of a {@link FrameCorpus} through the same pipeline {@code DecodeHandler}
+ * runs for each camera preview frame: {@code PlanarYUVLuminanceSource} to a {@code Binarizer}
+ * to a {@link Reader}, once with the reader dedicated to the frame's format and once with a
+ * {@link MultiFormatReader} configured with default hints, with and without
+ * {@link DecodeHintType#ADAPTIVE_READER_ORDER}. For each binarizer, reader and
+ * format it prints the time and bytes allocated per frame and the fraction of frames that
+ * decoded to the expected text.
+ *
+ * Usage: {@code DecodeBenchmark [--warmup ops] [--iterations ops] [--frames dir]}
+ */
+public final class DecodeBenchmark {
+
+  private static final int DEFAULT_WARMUP = 200;
+  private static final int DEFAULT_ITERATIONS = 500;
+  private static final Map<DecodeHintType,Object> ADAPTIVE_HINTS =
+      new EnumMap<DecodeHintType,Object>(DecodeHintType.class);
+  static {
+    ADAPTIVE_HINTS.put(DecodeHintType.ADAPTIVE_READER_ORDER, Boolean.TRUE);
+  }
+
+  private DecodeBenchmark() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    int warmup = DEFAULT_WARMUP;
+    int iterations = DEFAULT_ITERATIONS;
+    File recorded = null;
+    for (int i = 0; i < args.length; i++) {
+      if ("--warmup".equals(args[i])) {
+        warmup = Integer.parseInt(args[++i]);
+      } else if ("--iterations".equals(args[i])) {
+        iterations = Integer.parseInt(args[++i]);
+      } else if ("--frames".equals(args[i])) {
+        recorded = new File(args[++i]);
+      } else {
+        throw new IllegalArgumentException("Unknown argument " + args[i]);
+      }
+    }
+
+    FrameCorpus corpus = new FrameCorpus().addSynthetic();
+    if (recorded != null) {
+      corpus.addRecorded(recorded);
+    }
+
+    System.out.println(String.format("%-18s %-24s %-14s %6s", "binarizer", "reader", "format", "frames"));
+    for (BinarizerType binarizer : BinarizerType.values()) {
+      for (BarcodeFormat format : corpus.getFormats()) {
+        List<Frame> frames = corpus.getFrames(format);
+        Reader dedicated = readerFor(format);
+        report(binarizer, dedicated.getClass().getSimpleName(), format, frames,
+            BenchmarkHarness.measure(new DecodeTask(binarizer, dedicated, frames), warmup, iterations));
+        MultiFormatReader multi = new MultiFormatReader();
+        multi.setHints(null);
+        report(binarizer, "MultiFormatReader", format, frames,
+            BenchmarkHarness.measure(new DecodeTask(binarizer, multi, frames), warmup, iterations));
+        MultiFormatReader adaptive = new MultiFormatReader();
+        adaptive.setHints(ADAPTIVE_HINTS);
+        report(binarizer, "MultiFormatReader+adapt", format, frames,
+            BenchmarkHarness.measure(new DecodeTask(binarizer, adaptive, frames), warmup, iterations));
+      }
+    }
+  }
+
+  private static void report(BinarizerType binarizer,
+                             String reader,
+                             BarcodeFormat format,
+                             List<Frame> frames,
+                             BenchmarkHarness.Measurement measurement) {
+    System.out.println(String.format("%-18s %-24s %-14s %6d %s",
+        binarizer, reader, format, frames.size(), measurement));
+  }
+
+  static Reader readerFor(BarcodeFormat format) {
+    switch (format) {
+      case QR_CODE:
+        return new QRCodeReader();
+      case DATA_MATRIX:
+        return new DataMatrixReader();
+      case AZTEC:
+        return new AztecReader();
+      case PDF_417:
+        return new PDF417Reader();
+      case MAXICODE:
+        return new MaxiCodeReader();
+      default:
+        return new MultiFormatOneDReader(null);
+    }
+  }
+
+  /**
+   * Decodes one frame per operation, rotating through the given frames.
+   */
+  static final class DecodeTask implements BenchmarkHarness.Task {
+
+    private final BinarizerType binarizer;
+    private final Reader reader;
+    private final List<Frame> frames;
+
+    DecodeTask(BinarizerType binarizer, Reader reader, List<Frame> frames) {
+      this.binarizer = binarizer;
+      this.reader = reader;
+      this.frames = frames;
+    }
+
+    @Override
+    public boolean run(int op) {
+      Frame frame = frames.get(op % frames.size());
+      BinaryBitmap bitmap = new BinaryBitmap(binarizer.create(frame.toLuminanceSource()));
+      Result result;
+      try {
+        if (reader instanceof MultiFormatReader) {
+          result = ((MultiFormatReader) reader).decodeWithState(bitmap);
+        } else {
+          result = reader.decode(bitmap);
+        }
+      } catch (ReaderException re) {
+        return false;
+      } finally {
+        reader.reset();
+      }
+      String expected = frame.getExpectedText();
+      return expected == null || expected.equals(result.getText());
+    }
+  }
+
+}
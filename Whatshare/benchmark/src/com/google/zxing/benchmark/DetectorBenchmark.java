@@ -0,0 +1,121 @@
+/*
+ * Copyright 2013 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.benchmark;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.ReaderException;
+import com.google.zxing.benchmark.FrameCorpus.Frame;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.multi.qrcode.detector.MultiDetector;
+import com.google.zxing.qrcode.detector.Detector;
+
+import java.util.Random;
+
+/**
+ * Times the QR code detector alone, finder patterns, alignment pattern and sampling, on frames
+ * binarized once beforehand: sparse frames holding the pairing code, whose rows cross few
+ * modules, and dense frames filled by a code holding a long shared text.
+ *
+ * Usage: {@code DetectorBenchmark [--warmup ops] [--iterations ops]}
+ */
+public final class DetectorBenchmark {
+
+  private static final int DEFAULT_WARMUP = 300;
+  private static final int DEFAULT_ITERATIONS = 1000;
+
+  private static final String PAIRING = "12 97 33 104 Samsung GT-I9300";
+  private static final String LINK =
+      "http://developer.android.com/guide/topics/ui/actionbar.html#ActionView - "
+      + "Action views are widgets that appear in the action bar as a substitute for an "
+      + "action button, like a search box that expands in place";
+
+  private DetectorBenchmark() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    int warmup = DEFAULT_WARMUP;
+    int iterations = DEFAULT_ITERATIONS;
+    for (int i = 0; i < args.length; i++) {
+      if ("--warmup".equals(args[i])) {
+        warmup = Integer.parseInt(args[++i]);
+      } else if ("--iterations".equals(args[i])) {
+        iterations = Integer.parseInt(args[++i]);
+      } else {
+        throw new IllegalArgumentException("Unknown argument " + args[i]);
+      }
+    }
+
+    StringBuilder longText = new StringBuilder();
+    while (longText.length() < 600) {
+      longText.append(LINK).append(' ');
+    }
+    Random random = new Random(0x5EED);
+    System.out.println(String.format("%-10s %-10s %-8s", "frame", "size", "detector"));
+    for (int[] size : FrameCorpus.SYNTHETIC_SIZES) {
+      for (boolean dense : new boolean[] {false, true}) {
+        FrameCorpus corpus = new FrameCorpus().addSynthetic(BarcodeFormat.QR_CODE,
+            dense ? longText.toString() : PAIRING, size[0], size[1], random);
+        BitMatrix matrix = binarize(corpus.getFrames().get(0));
+        for (boolean multi : new boolean[] {false, true}) {
+          BenchmarkHarness.Measurement measurement =
+              BenchmarkHarness.measure(new DetectTask(matrix, multi), warmup, iterations);
+          System.out.println(String.format("%-10s %-10s %-8s %s",
+              dense ? "dense" : "sparse", size[0] + "x" + size[1], multi ? "multi" : "single",
+              measurement));
+        }
+      }
+    }
+  }
+
+  private static BitMatrix binarize(Frame frame) throws ReaderException {
+    int width = frame.getWidth();
+    int height = frame.getHeight();
+    PlanarYUVLuminanceSource source = new PlanarYUVLuminanceSource(frame.getYuvData(),
+        width, height, 0, 0, width, height, false);
+    return new BinaryBitmap(new HybridBinarizer(source)).getBlackMatrix();
+  }
+
+  /**
+   * Detects the code in the same matrix once per operation.
+   */
+  private static final class DetectTask implements BenchmarkHarness.Task {
+
+    private final BitMatrix matrix;
+    private final boolean multi;
+
+    DetectTask(BitMatrix matrix, boolean multi) {
+      this.matrix = matrix;
+      this.multi = multi;
+    }
+
+    @Override
+    public boolean run(int op) {
+      try {
+        if (multi) {
+          return new MultiDetector(matrix).detectMulti(null).length > 0;
+        }
+        return new Detector(matrix).detect().getBits() != null;
+      } catch (ReaderException re) {
+        return false;
+      }
+    }
+  }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2013 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.benchmark;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+
+/**
+ * Times {@code QRCodeWriter.encode()} from text to a scaled {@link BitMatrix}, the way the app
+ * generates the QR code it shows for pairing, on contents of increasing size: a pairing code, a
+ * shared link with some text, and a long shared text that needs one of the largest versions.
+ *
+ * Usage: {@code EncodeBenchmark [--warmup ops] [--iterations ops] [--size pixels]}
+ */
+public final class EncodeBenchmark {
+
+  private static final int DEFAULT_WARMUP = 200;
+  private static final int DEFAULT_ITERATIONS = 500;
+  private static final int DEFAULT_SIZE = 400;
+
+  private static final String PAIRING = "12 97 33 104 Samsung GT-I9300";
+  private static final String LINK =
+      "http://developer.android.com/guide/topics/ui/actionbar.html#ActionView - "
+      + "Action views are widgets that appear in the action bar as a substitute for an "
+      + "action button, like a search box that expands in place";
+
+  private EncodeBenchmark() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    int warmup = DEFAULT_WARMUP;
+    int iterations = DEFAULT_ITERATIONS;
+    int size = DEFAULT_SIZE;
+    for (int i = 0; i < args.length; i++) {
+      if ("--warmup".equals(args[i])) {
+        warmup = Integer.parseInt(args[++i]);
+      } else if ("--iterations".equals(args[i])) {
+        iterations = Integer.parseInt(args[++i]);
+      } else if ("--size".equals(args[i])) {
+        size = Integer.parseInt(args[++i]);
+      } else {
+        throw new IllegalArgumentException("Unknown argument " + args[i]);
+      }
+    }
+
+    StringBuilder longText = new StringBuilder();
+    while (longText.length() < 1500) {
+      longText.append(LINK).append(' ');
+    }
+    String[][] contents = {
+        {"pairing", PAIRING},
+        {"link", LINK},
+        {"long text", longText.toString()},
+    };
+    System.out.println(String.format("%-10s %7s", "contents", "chars"));
+    for (String[] content : contents) {
+      BenchmarkHarness.Measurement measurement =
+          BenchmarkHarness.measure(new EncodeTask(content[1], size), warmup, iterations);
+      System.out.println(String.format("%-10s %7d %s",
+          content[0], content[1].length(), measurement));
+    }
+  }
+
+  /**
+   * Encodes the same contents once per operation.
+   */
+  private static final class EncodeTask implements BenchmarkHarness.Task {
+
+    private final String contents;
+    private final int size;
+    private final QRCodeWriter writer;
+
+    EncodeTask(String contents, int size) {
+      this.contents = contents;
+      this.size = size;
+      writer = new QRCodeWriter();
+    }
+
+    @Override
+    public boolean run(int op) throws WriterException {
+      BitMatrix matrix = writer.encode(contents, BarcodeFormat.QR_CODE, size, size);
+      return matrix.getWidth() >= size;
+    }
+  }
+
+}
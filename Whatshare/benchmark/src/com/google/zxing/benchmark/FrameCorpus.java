@@ -0,0 +1,275 @@
+/*
+ * Copyright 2013 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.benchmark;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.MultiFormatWriter;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A set of NV21 camera frames used by the benchmarks, in the same layout the camera hands to
+ * {@code DecodeHandler}: a full resolution Y plane followed by an interleaved, half resolution
+ * VU plane.
+ *
+ * Synthetic frames are rendered from the writers in this library, placed on an unevenly lit
+ * background and covered in sensor-like noise, so that every run sees the same pixels. Recorded
+ * frames are raw preview dumps named {@code FORMAT_WIDTHxHEIGHT[_anything].yuv}, e.g.
+ * {@code QR_CODE_640x480_desk.yuv}; their expected text, if any, is read from a sibling
+ * {@code .txt} file.
+ */
+final class FrameCorpus {
+
+  /**
+   * A single camera frame and what it is expected to decode to.
+   */
+  static final class Frame {
+
+    private final String name;
+    private final BarcodeFormat format;
+    private final byte[] yuvData;
+    private final int width;
+    private final int height;
+    private final String expectedText;
+
+    Frame(String name, BarcodeFormat format, byte[] yuvData, int width, int height, String expectedText) {
+      this.name = name;
+      this.format = format;
+      this.yuvData = yuvData;
+      this.width = width;
+      this.height = height;
+      this.expectedText = expectedText;
+    }
+
+    String getName() {
+      return name;
+    }
+
+    BarcodeFormat getFormat() {
+      return format;
+    }
+
+    byte[] getYuvData() {
+      return yuvData;
+    }
+
+    int getWidth() {
+      return width;
+    }
+
+    int getHeight() {
+      return height;
+    }
+
+    /**
+     * @return the text the frame decodes to, or null if any successful decode counts
+     */
+    String getExpectedText() {
+      return expectedText;
+    }
+
+    /**
+     * Wraps the whole frame, as {@code CameraManager.buildLuminanceSource()} does once the
+     * framing rectangle has been applied.
+     */
+    PlanarYUVLuminanceSource toLuminanceSource() {
+      return new PlanarYUVLuminanceSource(yuvData, width, height, 0, 0, width, height, false);
+    }
+
+    @Override
+    public String toString() {
+      return name;
+    }
+  }
+
+  static final int[][] SYNTHETIC_SIZES = {{640, 480}, {1280, 720}};
+
+  private static final Pattern RECORDED_NAME = Pattern.compile("([A-Z_0-9]+?)_(\\d+)x(\\d+)(_.*)?\\.yuv");
+  private static final long SEED = 0x5EED;
+  private static final int NOISE = 12;
+
+  private final List<Frame> frames = new ArrayList<Frame>();
+
+  List<Frame> getFrames() {
+    return Collections.unmodifiableList(frames);
+  }
+
+  List<Frame> getFrames(BarcodeFormat format) {
+    List<Frame> result = new ArrayList<Frame>();
+    for (Frame frame : frames) {
+      if (frame.getFormat() == format) {
+        result.add(frame);
+      }
+    }
+    return result;
+  }
+
+  List<BarcodeFormat> getFormats() {
+    List<BarcodeFormat> result = new ArrayList<BarcodeFormat>();
+    for (Frame frame : frames) {
+      if (!result.contains(frame.getFormat())) {
+        result.add(frame.getFormat());
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Adds one synthetic frame per size in {@link #SYNTHETIC_SIZES} for each of the formats this
+   * library can write.
+   */
+  FrameCorpus addSynthetic() throws WriterException {
+    Random random = new Random(SEED);
+    for (int[] size : SYNTHETIC_SIZES) {
+      int width = size[0];
+      int height = size[1];
+      addSynthetic(BarcodeFormat.QR_CODE, "WhatsHare pairing 0123456789abcdef0123456789abcdef",
+          width, height, random);
+      addSynthetic(BarcodeFormat.CODE_128, "WhatsHare-128", width, height, random);
+      addSynthetic(BarcodeFormat.CODE_39, "WHATSHARE39", width, height, random);
+      addSynthetic(BarcodeFormat.EAN_13, "5901234123457", width, height, random);
+      addSynthetic(BarcodeFormat.ITF, "00012345678905", width, height, random);
+      addSynthetic(BarcodeFormat.PDF_417, "WhatsHare PDF417 payload", width, height, random);
+      addScreen(BarcodeFormat.QR_CODE, "WhatsHare pairing 0123456789abcdef0123456789abcdef",
+          width, height, random);
+    }
+    return this;
+  }
+
+  /**
+   * Renders {@code contents} as {@code format} centered in a frame of the given size.
+   */
+  FrameCorpus addSynthetic(BarcodeFormat format,
+                           String contents,
+                           int width,
+                           int height,
+                           Random random) throws WriterException {
+    boolean twoD = format == BarcodeFormat.QR_CODE || format == BarcodeFormat.PDF_417;
+    int codeWidth = twoD ? height * 3 / 5 : width * 3 / 5;
+    int codeHeight = twoD ? height * 3 / 5 : height / 3;
+    BitMatrix code = new MultiFormatWriter().encode(contents, format, codeWidth, codeHeight);
+    byte[] yuv = render(code, width, height, random, false);
+    frames.add(new Frame(format + "_" + width + 'x' + height + "_synthetic", format, yuv, width, height, contents));
+    return this;
+  }
+
+  /**
+   * Like {@link #addSynthetic(BarcodeFormat, String, int, int, Random)}, but imitates a code shown
+   * on a screen: low contrast and a bright glare spot that falls off sharply, which defeats
+   * thresholds shared by large areas.
+   */
+  FrameCorpus addScreen(BarcodeFormat format,
+                        String contents,
+                        int width,
+                        int height,
+                        Random random) throws WriterException {
+    int side = height * 3 / 5;
+    BitMatrix code = new MultiFormatWriter().encode(contents, format, side, side);
+    byte[] yuv = render(code, width, height, random, true);
+    frames.add(new Frame(format + "_" + width + 'x' + height + "_screen", format, yuv, width, height, contents));
+    return this;
+  }
+
+  /**
+   * Adds every recorded frame found in {@code directory}.
+   */
+  FrameCorpus addRecorded(File directory) throws IOException {
+    File[] files = directory.listFiles();
+    if (files == null) {
+      throw new IOException("Not a directory: " + directory);
+    }
+    Arrays.sort(files);
+    for (File file : files) {
+      Matcher matcher = RECORDED_NAME.matcher(file.getName());
+      if (!matcher.matches()) {
+        continue;
+      }
+      BarcodeFormat format = BarcodeFormat.valueOf(matcher.group(1));
+      int width = Integer.parseInt(matcher.group(2));
+      int height = Integer.parseInt(matcher.group(3));
+      byte[] yuv = readFully(file);
+      if (yuv.length < width * height) {
+        throw new IOException(file + " is too short for a " + width + 'x' + height + " frame");
+      }
+      String baseName = file.getName().substring(0, file.getName().length() - ".yuv".length());
+      File expected = new File(directory, baseName + ".txt");
+      String expectedText = expected.isFile() ? new String(readFully(expected), "UTF-8").trim() : null;
+      frames.add(new Frame(baseName, format, yuv, width, height, expectedText));
+    }
+    return this;
+  }
+
+  private static byte[] render(BitMatrix code, int width, int height, Random random, boolean screen) {
+    int codeWidth = code.getWidth();
+    int codeHeight = code.getHeight();
+    int left = (width - codeWidth) / 2;
+    int top = (height - codeHeight) / 2;
+    // NV21: Y plane, then interleaved V/U at quarter resolution.
+    byte[] yuv = new byte[width * height * 3 / 2];
+    for (int y = 0; y < height; y++) {
+      int offset = y * width;
+      for (int x = 0; x < width; x++) {
+        int light;
+        if (screen) {
+          // Glare centered on the upper left quarter of the code, on a dim backlight.
+          int dx = x - width * 2 / 5;
+          int dy = y - height * 2 / 5;
+          int distanceSquared = dx * dx + dy * dy;
+          int radiusSquared = height * height / 16;
+          light = 110 + 140 * radiusSquared / (radiusSquared + distanceSquared);
+        } else {
+          // A diagonal lighting gradient, like a sheet of paper lit from one side.
+          light = 230 - 70 * (x + y) / (width + height);
+        }
+        int codeX = x - left;
+        int codeY = y - top;
+        boolean dark = codeX >= 0 && codeX < codeWidth && codeY >= 0 && codeY < codeHeight &&
+            code.get(codeX, codeY);
+        int luminance = dark ? (screen ? light * 3 / 5 : light / 5) : light;
+        luminance += random.nextInt(2 * NOISE + 1) - NOISE;
+        yuv[offset + x] = (byte) (luminance < 0 ? 0 : luminance > 255 ? 255 : luminance);
+      }
+    }
+    Arrays.fill(yuv, width * height, yuv.length, (byte) 128);
+    return yuv;
+  }
+
+  private static byte[] readFully(File file) throws IOException {
+    byte[] data = new byte[(int) file.length()];
+    DataInputStream in = new DataInputStream(new FileInputStream(file));
+    try {
+      in.readFully(data);
+    } finally {
+      in.close();
+    }
+    return data;
+  }
+
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2013 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.benchmark;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.benchmark.FrameCorpus.Frame;
+import com.google.zxing.common.BinarizerWorkspace;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.qrcode.QRCodeReader;
+
+import java.util.List;
+
+/**
+ * Measures what the camera preview loop allocates while scanning for QR codes, in bytes per
+ * frame and bytes per second of scanning on this machine. Every frame is first copied into a
+ * preview buffer, standing in for the camera filling it, then cropped, binarized and decoded the
+ * way {@code DecodeHandler} does.
+ *
+ * Two loops are compared: the one-shot callbacks the app used to rely on, where the camera
+ * allocates every frame and the crop is copied into a new array, and the recycled preview buffers
+ * and crop buffer of {@code CameraManager}. Each runs on a centered crop like the viewfinder's
+ * and on full width rows starting from the top, which {@link PlanarYUVLuminanceSource} decodes
+ * straight from the Y plane.
+ *
+ * Usage: {@code PreviewBenchmark [--warmup ops] [--iterations ops]}
+ */
+public final class PreviewBenchmark {
+
+  private static final int DEFAULT_WARMUP = 100;
+  private static final int DEFAULT_ITERATIONS = 300;
+  private static final int PREVIEW_BUFFERS = 3;
+
+  private PreviewBenchmark() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    int warmup = DEFAULT_WARMUP;
+    int iterations = DEFAULT_ITERATIONS;
+    for (int i = 0; i < args.length; i++) {
+      if ("--warmup".equals(args[i])) {
+        warmup = Integer.parseInt(args[++i]);
+      } else if ("--iterations".equals(args[i])) {
+        iterations = Integer.parseInt(args[++i]);
+      } else {
+        throw new IllegalArgumentException("Unknown argument " + args[i]);
+      }
+    }
+
+    List<Frame> frames = new FrameCorpus().addSynthetic().getFrames(BarcodeFormat.QR_CODE);
+    System.out.println(String.format("%-10s %-12s %14s", "buffers", "crop", "MB/s"));
+    for (boolean pooled : new boolean[] {false, true}) {
+      for (boolean fullWidth : new boolean[] {false, true}) {
+        BenchmarkHarness.Measurement measurement = BenchmarkHarness.measure(
+            new PreviewTask(frames, pooled, fullWidth), warmup, iterations);
+        double bytesPerSecond = measurement.getBytesPerOp() * 1.0e9 / measurement.getNanosPerOp();
+        System.out.println(String.format("%-10s %-12s %14.1f %s",
+            pooled ? "pooled" : "one-shot", fullWidth ? "full-width" : "centered",
+            bytesPerSecond / (1024 * 1024), measurement));
+      }
+    }
+  }
+
+  /**
+   * Scans one frame per operation, rotating through the given frames.
+   */
+  private static final class PreviewTask implements BenchmarkHarness.Task {
+
+    private final List<Frame> frames;
+    private final boolean pooled;
+    private final boolean fullWidth;
+    private final QRCodeReader reader;
+    private final BinarizerWorkspace workspace;
+    private final byte[][] previewBuffers;
+    private byte[] matrixBuffer;
+
+    PreviewTask(List<Frame> frames, boolean pooled, boolean fullWidth) {
+      this.frames = frames;
+      this.pooled = pooled;
+      this.fullWidth = fullWidth;
+      reader = new QRCodeReader();
+      workspace = new BinarizerWorkspace();
+      previewBuffers = new byte[PREVIEW_BUFFERS][];
+    }
+
+    @Override
+    public boolean run(int op) {
+      Frame frame = frames.get(op % frames.size());
+      byte[] yuv = frame.getYuvData();
+      byte[] preview;
+      if (pooled) {
+        int index = op % PREVIEW_BUFFERS;
+        preview = previewBuffers[index];
+        if (preview == null || preview.length != yuv.length) {
+          preview = new byte[yuv.length];
+          previewBuffers[index] = preview;
+        }
+      } else {
+        preview = new byte[yuv.length];
+      }
+      System.arraycopy(yuv, 0, preview, 0, yuv.length);
+
+      int width = frame.getWidth();
+      int height = frame.getHeight();
+      int cropWidth = fullWidth ? width : width * 5 / 8;
+      int cropHeight = height * 5 / 8;
+      int left = (width - cropWidth) / 2;
+      int top = (height - cropHeight) / 2;
+      if (fullWidth) {
+        // Down to the same bottom edge, so that the code is still inside.
+        cropHeight += top;
+        top = 0;
+      }
+      byte[] cropBuffer = null;
+      if (pooled) {
+        if (matrixBuffer == null || matrixBuffer.length < cropWidth * cropHeight) {
+          matrixBuffer = new byte[cropWidth * cropHeight];
+        }
+        cropBuffer = matrixBuffer;
+      }
+      PlanarYUVLuminanceSource source = new PlanarYUVLuminanceSource(preview, width, height,
+          left, top, cropWidth, cropHeight, false, cropBuffer);
+      try {
+        Result result = reader.decode(new BinaryBitmap(new HybridBinarizer(source, workspace)));
+        return frame.getExpectedText().equals(result.getText());
+      } catch (ReaderException re) {
+        return false;
+      } finally {
+        reader.reset();
+      }
+    }
+  }
+
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2013 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.benchmark;
+
+import com.google.zxing.common.reedsolomon.GenericGF;
+import com.google.zxing.common.reedsolomon.ReedSolomonDecoder;
+import com.google.zxing.common.reedsolomon.ReedSolomonEncoder;
+import com.google.zxing.common.reedsolomon.ReedSolomonException;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Times {@code ReedSolomonDecoder.decode()} on every {@link GenericGF} field, with block sizes
+ * typical of the symbologies that use it, on blocks without errors (what nearly every scanned
+ * frame contains) and on blocks with a quarter of their error correction capacity in errors. Every
+ * decoded block is checked against the one that was encoded.
+ *
+ * {@code ReedSolomonEncoder} only supports QR codes, so blocks are encoded here as multiples of
+ * the generator polynomial, with arithmetic tables of their own built from each field's primitive
+ * polynomial.
+ *
+ * {@code ReedSolomonEncoder.encode()} is timed too, on QR code blocks of bytes like the QR code
+ * encoder's.
+ *
+ * Usage: {@code ReedSolomonBenchmark [--warmup ops] [--iterations ops]}
+ */
+public final class ReedSolomonBenchmark {
+
+  private static final int DEFAULT_WARMUP = 2000;
+  private static final int DEFAULT_ITERATIONS = 5000;
+  // Distinct blocks per field and case, decoded in turn.
+  private static final int BLOCKS = 16;
+
+  private static final Object[][] FIELDS = {
+      // name, field, primitive polynomial, data codewords, error correction codewords
+      {"QR_CODE_FIELD_256", GenericGF.QR_CODE_FIELD_256, 0x011D, 98, 36},
+      {"DATA_MATRIX_FIELD_256", GenericGF.DATA_MATRIX_FIELD_256, 0x012D, 114, 48},
+      {"AZTEC_DATA_12", GenericGF.AZTEC_DATA_12, 0x1069, 400, 150},
+      {"AZTEC_DATA_10", GenericGF.AZTEC_DATA_10, 0x409, 200, 80},
+      {"AZTEC_DATA_6/MAXICODE", GenericGF.AZTEC_DATA_6, 0x43, 34, 20},
+      {"AZTEC_PARAM", GenericGF.AZTEC_PARAM, 0x13, 2, 5},
+  };
+
+  private ReedSolomonBenchmark() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    int warmup = DEFAULT_WARMUP;
+    int iterations = DEFAULT_ITERATIONS;
+    for (int i = 0; i < args.length; i++) {
+      if ("--warmup".equals(args[i])) {
+        warmup = Integer.parseInt(args[++i]);
+      } else if ("--iterations".equals(args[i])) {
+        iterations = Integer.parseInt(args[++i]);
+      } else {
+        throw new IllegalArgumentException("Unknown argument " + args[i]);
+      }
+    }
+
+    System.out.println(String.format("%-22s %-10s", "field", "errors"));
+    for (Object[] field : FIELDS) {
+      for (boolean withErrors : new boolean[] {false, true}) {
+        DecodeTask task = new DecodeTask((GenericGF) field[1], (Integer) field[2],
+            (Integer) field[3], (Integer) field[4], withErrors);
+        BenchmarkHarness.Measurement measurement =
+            BenchmarkHarness.measure(task, warmup, iterations);
+        System.out.println(String.format("%-22s %-10s %s",
+            field[0], withErrors ? task.errors : "none", measurement));
+      }
+    }
+    System.out.println(String.format("%-22s %-10s %s", "QR_CODE_FIELD_256", "encode",
+        BenchmarkHarness.measure(new EncodeTask(98, 36), warmup, iterations)));
+  }
+
+  /**
+   * Decodes one block per operation, rotating through {@link #BLOCKS} blocks.
+   */
+  private static final class DecodeTask implements BenchmarkHarness.Task {
+
+    private final ReedSolomonDecoder decoder;
+    private final int ecCodewords;
+    private final int errors;
+    private final int[][] expected;
+    private final int[][] received;
+    private final int[] work;
+
+    DecodeTask(GenericGF field, int primitive, int dataCodewords, int ecCodewords,
+               boolean withErrors) {
+      this.ecCodewords = ecCodewords;
+      decoder = new ReedSolomonDecoder(field);
+      errors = withErrors ? Math.max(ecCodewords / 8, 1) : 0;
+      int size = field.getSize();
+      int length = dataCodewords + ecCodewords;
+      expected = new int[BLOCKS][];
+      received = new int[BLOCKS][];
+      work = new int[length];
+
+      int[] exp = new int[size];
+      int[] log = new int[size];
+      int x = 1;
+      for (int i = 0; i < size - 1; i++) {
+        exp[i] = x;
+        log[x] = i;
+        x <<= 1;
+        if (x >= size) {
+          x = (x ^ primitive) & (size - 1);
+        }
+      }
+      // The decoder evaluates syndromes from alpha^1 in the Data Matrix field, alpha^0 elsewhere.
+      int firstRoot = field == GenericGF.DATA_MATRIX_FIELD_256 ? 1 : 0;
+      int[] generator = {1};
+      for (int i = 0; i < ecCodewords; i++) {
+        generator = multiply(generator, new int[] {1, exp[firstRoot + i]}, exp, log);
+      }
+
+      Random random = new Random(length);
+      for (int i = 0; i < BLOCKS; i++) {
+        int[] message = new int[dataCodewords];
+        for (int j = 0; j < dataCodewords; j++) {
+          message[j] = random.nextInt(size);
+        }
+        int[] block = multiply(message, generator, exp, log);
+        expected[i] = block;
+        received[i] = block.clone();
+        for (int j = 0; j < errors; j++) {
+          int position;
+          do {
+            position = random.nextInt(length);
+          } while (received[i][position] != block[position]);
+          received[i][position] ^= 1 + random.nextInt(size - 1);
+        }
+      }
+    }
+
+    /**
+     * @return the product of two polynomials given highest degree coefficient first
+     */
+    private static int[] multiply(int[] a, int[] b, int[] exp, int[] log) {
+      int[] product = new int[a.length + b.length - 1];
+      for (int i = 0; i < a.length; i++) {
+        for (int j = 0; j < b.length; j++) {
+          if (a[i] != 0 && b[j] != 0) {
+            product[i + j] ^= exp[(log[a[i]] + log[b[j]]) % (exp.length - 1)];
+          }
+        }
+      }
+      return product;
+    }
+
+    @Override
+    public boolean run(int op) {
+      int block = op % BLOCKS;
+      System.arraycopy(received[block], 0, work, 0, work.length);
+      try {
+        decoder.decode(work, ecCodewords);
+      } catch (ReedSolomonException rse) {
+        return false;
+      }
+      return Arrays.equals(expected[block], work);
+    }
+  }
+
+  /**
+   * Computes the error correction bytes of one block per operation, rotating through
+   * {@link #BLOCKS} blocks.
+   */
+  private static final class EncodeTask implements BenchmarkHarness.Task {
+
+    private final ReedSolomonEncoder encoder;
+    private final byte[][] blocks;
+    private final byte[] ecBytes;
+
+    EncodeTask(int dataBytes, int numEcBytes) {
+      encoder = new ReedSolomonEncoder(GenericGF.QR_CODE_FIELD_256);
+      blocks = new byte[BLOCKS][dataBytes];
+      ecBytes = new byte[numEcBytes];
+      Random random = new Random(dataBytes);
+      for (byte[] block : blocks) {
+        random.nextBytes(block);
+      }
+    }
+
+    @Override
+    public boolean run(int op) {
+      encoder.encode(blocks[op % BLOCKS], ecBytes);
+      return true;
+    }
+  }
+
+}
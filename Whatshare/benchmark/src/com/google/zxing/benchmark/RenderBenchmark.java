@@ -0,0 +1,121 @@
+/*
+ * Copyright 2013 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.benchmark;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.BitMatrixRenderer;
+import com.google.zxing.qrcode.QRCodeWriter;
+
+/**
+ * Times turning an encoded QR code into ARGB pixels, the step between {@code QRCodeWriter} and
+ * the {@code Bitmap} the app shows. The bitmap itself is stood in for by an array of pixels
+ * allocated once, so that B/op is what rendering allocates on top of it.
+ *
+ * Three ways are compared: reading every pixel of the full size matrix with
+ * {@link BitMatrix#get(int, int)} into an array of the bitmap's size, as the app used to; the
+ * {@link BitMatrixRenderer} on the full size matrix; and the renderer scaling up a matrix encoded
+ * at module resolution. Encoding is done once, outside of the measurement.
+ *
+ * Usage: {@code RenderBenchmark [--warmup ops] [--iterations ops] [--size pixels]}
+ */
+public final class RenderBenchmark {
+
+  private static final int DEFAULT_WARMUP = 200;
+  private static final int DEFAULT_ITERATIONS = 1000;
+  private static final int DEFAULT_SIZE = 600;
+
+  private static final String PAIRING = "12 97 33 104 Samsung GT-I9300";
+
+  private static final int PER_PIXEL = 0;
+  private static final int FULL_SIZE = 1;
+  private static final int MODULES = 2;
+
+  private RenderBenchmark() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    int warmup = DEFAULT_WARMUP;
+    int iterations = DEFAULT_ITERATIONS;
+    int size = DEFAULT_SIZE;
+    for (int i = 0; i < args.length; i++) {
+      if ("--warmup".equals(args[i])) {
+        warmup = Integer.parseInt(args[++i]);
+      } else if ("--iterations".equals(args[i])) {
+        iterations = Integer.parseInt(args[++i]);
+      } else if ("--size".equals(args[i])) {
+        size = Integer.parseInt(args[++i]);
+      } else {
+        throw new IllegalArgumentException("Unknown argument " + args[i]);
+      }
+    }
+
+    String[] names = {"per-pixel", "full size", "modules"};
+    System.out.println(String.format("%-10s", "render"));
+    for (int mode = PER_PIXEL; mode <= MODULES; mode++) {
+      BenchmarkHarness.Measurement measurement =
+          BenchmarkHarness.measure(new RenderTask(PAIRING, size, mode), warmup, iterations);
+      System.out.println(String.format("%-10s %s", names[mode], measurement));
+    }
+  }
+
+  /**
+   * Renders the same matrix once per operation.
+   */
+  private static final class RenderTask implements BenchmarkHarness.Task {
+
+    private final BitMatrix matrix;
+    private final int size;
+    private final int mode;
+    private final int[] bitmap;
+
+    RenderTask(String contents, int size, int mode) throws WriterException {
+      int encodedSize = mode == MODULES ? 0 : size;
+      matrix = new QRCodeWriter().encode(contents, BarcodeFormat.QR_CODE, encodedSize, encodedSize);
+      this.size = size;
+      this.mode = mode;
+      bitmap = new int[size * size];
+    }
+
+    @Override
+    public boolean run(int op) {
+      if (mode == PER_PIXEL) {
+        int width = matrix.getWidth();
+        int height = matrix.getHeight();
+        int[] pixels = new int[width * height];
+        for (int y = 0; y < height; y++) {
+          int offset = y * width;
+          for (int x = 0; x < width; x++) {
+            pixels[offset + x] = matrix.get(x, y) ? BitMatrixRenderer.BLACK : BitMatrixRenderer.WHITE;
+          }
+        }
+        System.arraycopy(pixels, 0, bitmap, 0, pixels.length);
+        return pixels[0] == BitMatrixRenderer.WHITE;
+      }
+      BitMatrixRenderer renderer = new BitMatrixRenderer(matrix, size, size);
+      int width = renderer.getWidth();
+      int[] band = renderer.createBandBuffer();
+      int rows;
+      while ((rows = renderer.nextBand(band)) > 0) {
+        System.arraycopy(band, 0, bitmap, renderer.getBandTop() * width, rows * width);
+      }
+      return bitmap[0] == BitMatrixRenderer.WHITE;
+    }
+  }
+
+}
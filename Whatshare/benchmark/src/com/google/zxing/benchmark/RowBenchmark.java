@@ -0,0 +1,98 @@
+/*
+ * Copyright 2013 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.benchmark;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.ReaderException;
+import com.google.zxing.benchmark.FrameCorpus.Frame;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.GlobalHistogramBinarizer;
+import com.google.zxing.oned.MultiFormatOneDReader;
+
+/**
+ * Times {@link MultiFormatOneDReader#decodeRow} alone on the middle row of each synthetic frame,
+ * binarized once beforehand: every 1D reader looks at the row until one decodes it, or all of
+ * them give up on the rows of 2D codes. The row's bits are copied into the same
+ * {@link BitArray} before each operation, so nothing computed from them is carried over.
+ *
+ * Usage: {@code RowBenchmark [--warmup ops] [--iterations ops]}
+ */
+public final class RowBenchmark {
+
+  private static final int DEFAULT_WARMUP = 1000;
+  private static final int DEFAULT_ITERATIONS = 5000;
+
+  private RowBenchmark() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    int warmup = DEFAULT_WARMUP;
+    int iterations = DEFAULT_ITERATIONS;
+    for (int i = 0; i < args.length; i++) {
+      if ("--warmup".equals(args[i])) {
+        warmup = Integer.parseInt(args[++i]);
+      } else if ("--iterations".equals(args[i])) {
+        iterations = Integer.parseInt(args[++i]);
+      } else {
+        throw new IllegalArgumentException("Unknown argument " + args[i]);
+      }
+    }
+
+    System.out.println(String.format("%-36s %-8s", "frame", "decoded"));
+    for (Frame frame : new FrameCorpus().addSynthetic().getFrames()) {
+      int y = frame.getHeight() / 2;
+      BitArray row = new BinaryBitmap(new GlobalHistogramBinarizer(frame.toLuminanceSource()))
+          .getBlackRow(y, null);
+      RowTask task = new RowTask(row, y);
+      BenchmarkHarness.Measurement measurement = BenchmarkHarness.measure(task, warmup, iterations);
+      System.out.println(String.format("%-36s %-8s %s",
+          frame.getName(), task.run(0) ? "yes" : "no", measurement));
+    }
+  }
+
+  /**
+   * Decodes a fresh copy of the same row once per operation.
+   */
+  private static final class RowTask implements BenchmarkHarness.Task {
+
+    private final int[] bits;
+    private final int rowNumber;
+    private final BitArray row;
+    private final MultiFormatOneDReader reader = new MultiFormatOneDReader(null);
+
+    RowTask(BitArray row, int rowNumber) {
+      bits = row.getBitArray().clone();
+      this.rowNumber = rowNumber;
+      this.row = new BitArray(row.getSize());
+    }
+
+    @Override
+    public boolean run(int op) {
+      for (int i = 0; i < bits.length; i++) {
+        row.setBulk(i << 5, bits[i]);
+      }
+      try {
+        return reader.decodeRow(rowNumber, row, null) != null;
+      } catch (ReaderException re) {
+        return false;
+      } finally {
+        reader.reset();
+      }
+    }
+  }
+
+}
@@ -0,0 +1,315 @@
+/**
+ * GCMSendQueueBenchmark.java Created on 24 Oct 2013 Copyright 2013 Michele
+ * Bonazza <emmepuntobi@gmail.com>
+ * 
+ * This file is part of WhatsHare.
+ * 
+ * WhatsHare is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * Foobar is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * WhatsHare. If not, see <http://www.gnu.org/licenses/>.
+ */
+package it.mb.whatshare;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.BasicResponseHandler;
+import org.apache.http.impl.client.DefaultHttpClient;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Sends bursts of shares through a {@link GCMSendQueue} to a local stand-in
+ * for GCM's HTTP server, and through a new <tt>DefaultHttpClient</tt> per
+ * message as <tt>SendToGCMActivity</tt> used to, and reports throughput, p50
+ * and p99 latency, requests and connections for each.
+ * 
+ * <p>
+ * Usage:
+ * <tt>GCMSendQueueBenchmark [--bursts n] [--burst_size n] [--devices n]
+ * [--handshake ms] [--server_delay ms]</tt>
+ * 
+ * @author Michele Bonazza
+ * 
+ */
+public final class GCMSendQueueBenchmark {
+
+    private static final Pattern REGISTRATION_IDS = Pattern
+            .compile("\"registration_ids\": \\[([^\\]]*)\\]");
+
+    /**
+     * Sends one message.
+     */
+    private interface Sender {
+        Future<String> send(String registrationID, String data);
+
+        void shutdown() throws InterruptedException;
+    }
+
+    /**
+     * Counts what the stand-in server receives.
+     */
+    private static final class StandInGCM implements HttpHandler {
+
+        private final long handshakeMillis;
+        private final long delayMillis;
+        private final AtomicInteger requests = new AtomicInteger();
+        private final Set<String> connections = Collections
+                .synchronizedSet(new HashSet<String>());
+
+        StandInGCM(long handshakeMillis, long delayMillis) {
+            this.handshakeMillis = handshakeMillis;
+            this.delayMillis = delayMillis;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            String body = read(exchange.getRequestBody());
+            requests.incrementAndGet();
+            boolean newConnection = connections.add(exchange
+                    .getRemoteAddress().toString());
+            Matcher matcher = REGISTRATION_IDS.matcher(body);
+            int recipients = matcher.find() ? matcher.group(1).split(",").length
+                    : 0;
+            StringBuilder results = new StringBuilder();
+            for (int i = 0; i < recipients; i++) {
+                results.append(i == 0 ? "" : ", ").append(
+                        "{\"message_id\": \"0:1\"}");
+            }
+            byte[] response = String.format(
+                    "{\"multicast_id\": 1, \"success\": %d, \"failure\": 0, "
+                            + "\"canonical_ids\": 0, \"results\": [%s]}",
+                    recipients, results).getBytes("UTF-8");
+            try {
+                // GCM's own processing time, plus the TLS handshake the first
+                // request of a connection pays over the real thing
+                Thread.sleep(newConnection ? handshakeMillis + delayMillis
+                        : delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.getResponseHeaders().set("Content-Type",
+                    "application/json");
+            exchange.sendResponseHeaders(200, response.length);
+            OutputStream out = exchange.getResponseBody();
+            out.write(response);
+            out.close();
+        }
+
+        void reset() {
+            requests.set(0);
+            connections.clear();
+        }
+
+        private static String read(InputStream in) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                bytes.write(buffer, 0, read);
+            }
+            in.close();
+            return bytes.toString("UTF-8");
+        }
+    }
+
+    private GCMSendQueueBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int bursts = 50;
+        int burstSize = 8;
+        int devices = 4;
+        long handshake = 100L;
+        long serverDelay = 20L;
+        for (int i = 0; i < args.length; i++) {
+            if ("--bursts".equals(args[i])) {
+                bursts = Integer.parseInt(args[++i]);
+            } else if ("--burst_size".equals(args[i])) {
+                burstSize = Integer.parseInt(args[++i]);
+            } else if ("--devices".equals(args[i])) {
+                devices = Integer.parseInt(args[++i]);
+            } else if ("--handshake".equals(args[i])) {
+                handshake = Long.parseLong(args[++i]);
+            } else if ("--server_delay".equals(args[i])) {
+                serverDelay = Long.parseLong(args[++i]);
+            } else {
+                throw new IllegalArgumentException("Unknown argument "
+                        + args[i]);
+            }
+        }
+
+        // otherwise responses on a reused connection wait for the delayed
+        // ACK of their headers
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        StandInGCM gcm = new StandInGCM(handshake, serverDelay);
+        HttpServer server = HttpServer.create(new InetSocketAddress(
+                "127.0.0.1", 0), 0);
+        server.createContext("/gcm/send", gcm);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        String url = String.format("http://127.0.0.1:%d/gcm/send", server
+                .getAddress().getPort());
+
+        System.out.println(String.format("%-40s %8s %8s %8s %9s %12s",
+                "sender / workload", "msgs/s", "p50 ms", "p99 ms", "requests",
+                "connections"));
+        try {
+            for (int run = 0; run < 2; run++) {
+                // the first run warms up
+                boolean print = run == 1;
+                for (boolean sameText : new boolean[] { false, true }) {
+                    String workload = sameText ? String.format(
+                            "same text to %d", devices) : "distinct texts";
+                    run(print, "one client per message, " + workload,
+                            newClientPerMessage(url), gcm, bursts, burstSize,
+                            devices, sameText);
+                    // the same text to several devices is what batching is for
+                    run(print, "GCMSendQueue, " + workload, queue(url,
+                            sameText ? GCMSendQueue.BATCHING_LINGER_MILLIS
+                                    : GCMSendQueue.DEFAULT_LINGER_MILLIS),
+                            gcm, bursts, burstSize, devices, sameText);
+                }
+            }
+        } finally {
+            server.stop(0);
+            ((ExecutorService) server.getExecutor()).shutdownNow();
+        }
+    }
+
+    private static Sender queue(String url, long lingerMillis) {
+        final GCMSendQueue queue = new GCMSendQueue(url, "benchmark",
+                GCMSendQueue.DEFAULT_CONCURRENT_REQUESTS, lingerMillis);
+        return new Sender() {
+            @Override
+            public Future<String> send(String registrationID, String data) {
+                return queue.send(registrationID, data);
+            }
+
+            @Override
+            public void shutdown() throws InterruptedException {
+                queue.shutdown();
+            }
+        };
+    }
+
+    /**
+     * What <tt>SendToGCMActivity</tt> did before {@link GCMSendQueue}: a new
+     * client, and so a new connection, per message, on as many threads as the
+     * queue uses.
+     */
+    private static Sender newClientPerMessage(final String url) {
+        final ExecutorService executor = Executors
+                .newFixedThreadPool(GCMSendQueue.DEFAULT_CONCURRENT_REQUESTS);
+        return new Sender() {
+            @Override
+            public Future<String> send(final String registrationID,
+                    final String data) {
+                return executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws IOException {
+                        HttpPost post = new HttpPost(url);
+                        post.setEntity(new StringEntity(String.format(
+                                "{\"delay_while_idle\": false, "
+                                        + "\"registration_ids\": [\"%s\"], "
+                                        + "\"data\": %s}", registrationID,
+                                data), "UTF-8"));
+                        post.setHeader("Content-Type", "application/json");
+                        post.setHeader("Authorization", "key=benchmark");
+                        DefaultHttpClient client = new DefaultHttpClient();
+                        try {
+                            return client.execute(post,
+                                    new BasicResponseHandler());
+                        } finally {
+                            client.getConnectionManager().shutdown();
+                        }
+                    }
+                });
+            }
+
+            @Override
+            public void shutdown() {
+                executor.shutdown();
+            }
+        };
+    }
+
+    /**
+     * Sends <tt>bursts</tt> bursts of <tt>burstSize</tt> messages back to
+     * back, waiting for each burst to be sent before the next one. A message's
+     * latency runs until its response and those of the messages sent before
+     * it in the burst are in.
+     */
+    private static void run(boolean print, String name, Sender sender,
+            StandInGCM gcm, int bursts, int burstSize, int devices,
+            boolean sameText) throws InterruptedException, ExecutionException {
+        gcm.reset();
+        long[] latencies = new long[bursts * burstSize];
+        int sent = 0;
+        long start = System.nanoTime();
+        for (int burst = 0; burst < bursts; burst++) {
+            List<Future<String>> responses = new ArrayList<Future<String>>();
+            long[] sentAt = new long[burstSize];
+            for (int i = 0; i < burstSize; i++) {
+                String text = sameText ? "http://example.com/" + burst
+                        : "http://example.com/" + burst + "/" + i;
+                String data = String.format(
+                        "{\"message\": \"%s\", \"sender\": \"42\", "
+                                + "\"type\": \"whatsapp\"}", text);
+                String device = "device-"
+                        + (sameText ? i % devices : burst % devices);
+                sentAt[i] = System.nanoTime();
+                responses.add(sender.send(device, data));
+            }
+            for (int i = 0; i < burstSize; i++) {
+                responses.get(i).get();
+                latencies[sent++] = System.nanoTime() - sentAt[i];
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        sender.shutdown();
+        if (print) {
+            Arrays.sort(latencies);
+            System.out.println(String.format(
+                    "%-40s %8.1f %8.1f %8.1f %9d %12d", name, sent * 1e9
+                            / elapsed, percentile(latencies, 50) / 1e6,
+                    percentile(latencies, 99) / 1e6, gcm.requests.get(),
+                    gcm.connections.size()));
+        }
+    }
+
+    private static long percentile(long[] sorted, int percentile) {
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+}
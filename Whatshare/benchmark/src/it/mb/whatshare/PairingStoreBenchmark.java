@@ -0,0 +1,255 @@
+/**
+ * PairingStoreBenchmark.java Created on 2 Nov 2013 Copyright 2013 Michele
+ * Bonazza <emmepuntobi@gmail.com>
+ * 
+ * This file is part of WhatsHare.
+ * 
+ * WhatsHare is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * Foobar is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * WhatsHare. If not, see <http://www.gnu.org/licenses/>.
+ */
+package it.mb.whatshare;
+
+import it.mb.whatshare.MainActivity.PairedDevice;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Times loading, saving and pairing one more inbound device with a
+ * {@link PairingStore}, and with the serialized <tt>ArrayList</tt> that
+ * <tt>MainActivity</tt> used to keep inbound devices in, for lists of 10, 1k
+ * and 100k paired devices, and reports the median and p99 time per operation
+ * and the size of the file.
+ * 
+ * <p>
+ * Usage: <tt>PairingStoreBenchmark [--dir path] [--sizes n,n,...]</tt>
+ * 
+ * @author Michele Bonazza
+ * 
+ */
+public final class PairingStoreBenchmark {
+
+    /**
+     * One operation on a file holding <tt>devices</tt>.
+     */
+    private interface Operation {
+        void run(File file, List<PairedDevice> devices) throws Exception;
+    }
+
+    private PairingStoreBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        File dir = new File(System.getProperty("java.io.tmpdir"));
+        int[] sizes = { 10, 1000, 100000 };
+        for (int i = 0; i < args.length; i++) {
+            if ("--dir".equals(args[i])) {
+                dir = new File(args[++i]);
+            } else if ("--sizes".equals(args[i])) {
+                String[] split = args[++i].split(",");
+                sizes = new int[split.length];
+                for (int j = 0; j < split.length; j++) {
+                    sizes[j] = Integer.parseInt(split[j].trim());
+                }
+            } else {
+                throw new IllegalArgumentException("Unknown argument "
+                        + args[i]);
+            }
+        }
+
+        System.out.println(String.format("%-34s %8s %12s %12s %12s",
+                "format / operation", "devices", "median us", "p99 us",
+                "file bytes"));
+        for (int run = 0; run < 2; run++) {
+            // the first run warms up
+            boolean print = run == 1;
+            for (int size : sizes) {
+                List<PairedDevice> devices = newDevices(size);
+                File serialized = new File(dir, "inbound-benchmark");
+                File store = new File(dir, "pairings-benchmark");
+                try {
+                    writeSerialized(serialized, devices);
+                    new PairingStore(store).setInbound(devices);
+                    run(print, "serialized list, load", serialized, devices,
+                            new Operation() {
+                                @Override
+                                public void run(File file,
+                                        List<PairedDevice> devices)
+                                        throws Exception {
+                                    readSerialized(file);
+                                }
+                            });
+                    run(print, "pairing store, load", store, devices,
+                            new Operation() {
+                                @Override
+                                public void run(File file,
+                                        List<PairedDevice> devices)
+                                        throws Exception {
+                                    new PairingStore(file).load();
+                                }
+                            });
+                    run(print, "serialized list, save", serialized, devices,
+                            new Operation() {
+                                @Override
+                                public void run(File file,
+                                        List<PairedDevice> devices)
+                                        throws Exception {
+                                    writeSerialized(file, devices);
+                                }
+                            });
+                    final PairingStore loaded = new PairingStore(store);
+                    loaded.load();
+                    run(print, "pairing store, save", store, devices,
+                            new Operation() {
+                                @Override
+                                public void run(File file,
+                                        List<PairedDevice> devices)
+                                        throws Exception {
+                                    loaded.setInbound(devices);
+                                }
+                            });
+                    // what pairing a new device costs: read, add, write all
+                    // for the list, a single append for the store; both files
+                    // are put back as they were after each operation
+                    run(print, "serialized list, pair one more", serialized,
+                            devices, new Operation() {
+                                @Override
+                                public void run(File file,
+                                        List<PairedDevice> devices)
+                                        throws Exception {
+                                    List<PairedDevice> read = readSerialized(file);
+                                    read.add(newDevice(read.size()));
+                                    writeSerialized(file, read);
+                                }
+                            }, new Operation() {
+                                @Override
+                                public void run(File file,
+                                        List<PairedDevice> devices)
+                                        throws Exception {
+                                    writeSerialized(file, devices);
+                                }
+                            });
+                    run(print, "pairing store, pair one more", store, devices,
+                            new Operation() {
+                                @Override
+                                public void run(File file,
+                                        List<PairedDevice> devices)
+                                        throws Exception {
+                                    loaded.addInbound(newDevice(devices
+                                            .size()));
+                                }
+                            }, new Operation() {
+                                @Override
+                                public void run(File file,
+                                        List<PairedDevice> devices)
+                                        throws Exception {
+                                    loaded.setInbound(devices);
+                                }
+                            });
+                } finally {
+                    serialized.delete();
+                    store.delete();
+                }
+            }
+        }
+    }
+
+    private static void run(boolean print, String name, File file,
+            List<PairedDevice> devices, Operation operation) throws Exception {
+        run(print, name, file, devices, operation, null);
+    }
+
+    /**
+     * Runs <tt>operation</tt> enough times to take about a second, or at
+     * least 5 times, running <tt>reset</tt> (if not <code>null</code>) after
+     * each time without timing it.
+     */
+    private static void run(boolean print, String name, File file,
+            List<PairedDevice> devices, Operation operation, Operation reset)
+            throws Exception {
+        List<Long> times = new ArrayList<Long>();
+        long start = System.nanoTime();
+        long untimed = 0;
+        while (times.size() < 5
+                || System.nanoTime() - start - untimed < 1000000000L) {
+            long before = System.nanoTime();
+            operation.run(file, devices);
+            long after = System.nanoTime();
+            times.add(after - before);
+            if (reset != null) {
+                reset.run(file, devices);
+                untimed += System.nanoTime() - after;
+            }
+        }
+        long[] sorted = new long[times.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = times.get(i);
+        }
+        Arrays.sort(sorted);
+        if (print) {
+            System.out.println(String.format("%-34s %8d %12.1f %12.1f %12d",
+                    name, devices.size(), percentile(sorted, 50) / 1e3,
+                    percentile(sorted, 99) / 1e3, file.length()));
+        }
+    }
+
+    private static List<PairedDevice> newDevices(int count) {
+        List<PairedDevice> devices = new ArrayList<PairedDevice>(count);
+        for (int i = 0; i < count; i++) {
+            devices.add(newDevice(i));
+        }
+        return devices;
+    }
+
+    private static PairedDevice newDevice(int index) {
+        // IDs are timestamps, types what the Chrome extension sends
+        return new PairedDevice(String.valueOf(1383000000000L + index),
+                "Device " + index, "Chrome Whatshare Extension");
+    }
+
+    private static void writeSerialized(File file, List<PairedDevice> devices)
+            throws IOException {
+        FileOutputStream fos = new FileOutputStream(file);
+        try {
+            ObjectOutputStream oos = new ObjectOutputStream(fos);
+            oos.writeObject(devices);
+            oos.flush();
+        } finally {
+            fos.close();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<PairedDevice> readSerialized(File file)
+            throws IOException, ClassNotFoundException {
+        FileInputStream fis = new FileInputStream(file);
+        try {
+            return (ArrayList<PairedDevice>) new ObjectInputStream(fis)
+                    .readObject();
+        } finally {
+            fis.close();
+        }
+    }
+
+    private static long percentile(long[] sorted, int percentile) {
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2013 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.j2se;
+
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.Result;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Decodes the images named on the command line with a {@link BatchDecoder}, and prints one line
+ * per image, in the order given, followed by the batch's figures on standard error.
+ *
+ * Each line is the image's name, then either {@code FORMAT<tab>text} for each barcode found,
+ * {@code NOT_FOUND} or {@code ERROR<tab>message}, separated by tabs; tabs, newlines and
+ * backslashes in texts are escaped with backslashes.
+ *
+ * Usage: {@code BatchDecodeRunner [--threads n] [--in_flight n] [--try_harder] [--pure_barcode]
+ * [--multi] (file | directory | -)...}, where directories are decoded recursively, in name
+ * order, and {@code -} reads names of files from standard input, one per line, as the batch
+ * goes.
+ */
+public final class BatchDecodeRunner {
+
+  private BatchDecodeRunner() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    int threads = Runtime.getRuntime().availableProcessors();
+    int inFlight = -1;
+    boolean multiple = false;
+    Map<DecodeHintType,Object> hints = new EnumMap<DecodeHintType,Object>(DecodeHintType.class);
+    List<String> paths = new ArrayList<String>();
+    for (int i = 0; i < args.length; i++) {
+      if ("--threads".equals(args[i])) {
+        threads = Integer.parseInt(args[++i]);
+      } else if ("--in_flight".equals(args[i])) {
+        inFlight = Integer.parseInt(args[++i]);
+      } else if ("--try_harder".equals(args[i])) {
+        hints.put(DecodeHintType.TRY_HARDER, Boolean.TRUE);
+      } else if ("--pure_barcode".equals(args[i])) {
+        hints.put(DecodeHintType.PURE_BARCODE, Boolean.TRUE);
+      } else if ("--multi".equals(args[i])) {
+        multiple = true;
+      } else if (args[i].startsWith("--")) {
+        throw new IllegalArgumentException("Unknown argument " + args[i]);
+      } else {
+        paths.add(args[i]);
+      }
+    }
+    if (paths.isEmpty()) {
+      System.err.println("Usage: BatchDecodeRunner [--threads n] [--in_flight n] [--try_harder] " +
+          "[--pure_barcode] [--multi] (file | directory | -)...");
+      System.exit(1);
+    }
+    if (inFlight < 0) {
+      // Enough for every worker to have the next image ready while the oldest one is reported
+      inFlight = threads * 2;
+    }
+
+    final PrintStream out = new PrintStream(System.out, false, "UTF-8");
+    BatchDecoder decoder = new BatchDecoder(hints.isEmpty() ? null : hints, multiple, threads,
+        inFlight);
+    BatchDecoder.Summary summary = decoder.decode(new Inputs(paths), new BatchDecoder.Listener() {
+      @Override
+      public void decoded(BatchDecoder.Outcome outcome) {
+        out.println(format(outcome));
+      }
+    });
+    out.flush();
+    System.err.println(summary);
+  }
+
+  static String format(BatchDecoder.Outcome outcome) {
+    StringBuilder line = new StringBuilder(outcome.getName());
+    if (outcome.getError() != null) {
+      line.append("\tERROR\t").append(escape(String.valueOf(outcome.getError())));
+    } else if (outcome.getResults().length == 0) {
+      line.append("\tNOT_FOUND");
+    } else {
+      for (Result result : outcome.getResults()) {
+        line.append('\t').append(result.getBarcodeFormat()).append('\t')
+            .append(escape(result.getText()));
+      }
+    }
+    return line.toString();
+  }
+
+  private static String escape(String text) {
+    StringBuilder escaped = new StringBuilder(text.length());
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      switch (c) {
+        case '\\':
+          escaped.append("\\\\");
+          break;
+        case '\t':
+          escaped.append("\\t");
+          break;
+        case '\n':
+          escaped.append("\\n");
+          break;
+        case '\r':
+          escaped.append("\\r");
+          break;
+        default:
+          escaped.append(c);
+      }
+    }
+    return escaped.toString();
+  }
+
+  /**
+   * The files named on the command line, listed as the batch goes so that a long list from
+   * standard input starts decoding right away.
+   */
+  private static final class Inputs implements Iterator<ImageInput> {
+
+    private final LinkedList<String> paths;
+    private final LinkedList<File> files = new LinkedList<File>();
+    private BufferedReader stdin;
+
+    Inputs(List<String> paths) {
+      this.paths = new LinkedList<String>(paths);
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (files.isEmpty()) {
+        if (stdin != null) {
+          String line = readLine();
+          if (line == null) {
+            stdin = null;
+          } else if (!line.trim().isEmpty()) {
+            add(new File(line.trim()));
+          }
+        } else if (paths.isEmpty()) {
+          return false;
+        } else {
+          String path = paths.removeFirst();
+          if ("-".equals(path)) {
+            try {
+              stdin = new BufferedReader(new InputStreamReader(System.in, "UTF-8"));
+            } catch (UnsupportedEncodingException uee) {
+              throw new IllegalStateException(uee);
+            }
+          } else {
+            add(new File(path));
+          }
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public ImageInput next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return ImageInput.forFile(files.removeFirst());
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Adds a file, or the files of a directory and of its subdirectories in name order.
+     */
+    private void add(File file) {
+      if (!file.isDirectory()) {
+        files.add(file);
+        return;
+      }
+      File[] children = file.listFiles();
+      if (children == null) {
+        return;
+      }
+      Arrays.sort(children);
+      for (File child : children) {
+        if (!child.isHidden()) {
+          add(child);
+        }
+      }
+    }
+
+    private String readLine() {
+      try {
+        return stdin.readLine();
+      } catch (IOException ioe) {
+        throw new IllegalStateException(ioe);
+      }
+    }
+  }
+
+}
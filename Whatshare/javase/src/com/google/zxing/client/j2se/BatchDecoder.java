@@ -0,0 +1,364 @@
+/*
+ * Copyright 2013 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.j2se;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Reader;
+import com.google.zxing.Result;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.multi.GenericMultipleBarcodeReader;
+import com.google.zxing.multi.MultipleBarcodeReader;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Decodes still images in bulk, off the camera: each image is read, binarized with a
+ * {@link HybridBinarizer} and decoded with a {@link MultiFormatReader} on a fixed pool of worker
+ * threads.
+ *
+ * <ul>
+ *   <li>Every worker thread keeps its reader for the whole batch, configured with the hints
+ *   once.</li>
+ *   <li>At most a fixed number of images are in flight, read or waiting to be reported; taking
+ *   more images from the input waits for the oldest one to be done, so a batch of any size runs
+ *   in bounded memory and at the pace of the workers.</li>
+ *   <li>Outcomes are reported in input order, on the thread that called
+ *   {@link #decode(Iterator, Listener)}, whatever order the workers finish in.</li>
+ * </ul>
+ *
+ * An instance can run several batches, one after the other or at the same time.
+ */
+public final class BatchDecoder {
+
+  /**
+   * Receives the outcome of each image of a batch, in input order.
+   */
+  public interface Listener {
+    void decoded(Outcome outcome);
+  }
+
+  /**
+   * What became of one image.
+   */
+  public static final class Outcome {
+
+    private static final Result[] NO_RESULTS = new Result[0];
+
+    private final int index;
+    private final String name;
+    private final Result[] results;
+    private final Exception error;
+    private final long nanos;
+
+    Outcome(int index, String name, Result[] results, Exception error, long nanos) {
+      this.index = index;
+      this.name = name;
+      this.results = results == null ? NO_RESULTS : results;
+      this.error = error;
+      this.nanos = nanos;
+    }
+
+    /**
+     * @return position of the image in the input, from 0
+     */
+    public int getIndex() {
+      return index;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * @return the barcodes found, none if there are none or the image couldn't be read
+     */
+    public Result[] getResults() {
+      return results;
+    }
+
+    /**
+     * @return why the image couldn't be read or decoded, null if it was (whether or not it holds
+     *         a barcode)
+     */
+    public Exception getError() {
+      return error;
+    }
+
+    /**
+     * @return time spent on the image by its worker, reading it included
+     */
+    public long getNanos() {
+      return nanos;
+    }
+  }
+
+  /**
+   * Throughput and latency of a batch.
+   */
+  public static final class Summary {
+
+    private final int images;
+    private final int decoded;
+    private final int errors;
+    private final long wallNanos;
+    private final long[] sortedNanos;
+
+    Summary(int images, int decoded, int errors, long wallNanos, long[] nanos) {
+      this.images = images;
+      this.decoded = decoded;
+      this.errors = errors;
+      this.wallNanos = wallNanos;
+      sortedNanos = Arrays.copyOf(nanos, images);
+      Arrays.sort(sortedNanos);
+    }
+
+    public int getImages() {
+      return images;
+    }
+
+    /**
+     * @return images with at least one barcode
+     */
+    public int getDecoded() {
+      return decoded;
+    }
+
+    /**
+     * @return images that couldn't be read or decoded
+     */
+    public int getErrors() {
+      return errors;
+    }
+
+    public long getWallNanos() {
+      return wallNanos;
+    }
+
+    public double getImagesPerSecond() {
+      return wallNanos == 0 ? 0.0 : images * 1.0e9 / wallNanos;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return time a worker spent on an image, for that percentile of the images
+     */
+    public long getLatencyNanos(double percentile) {
+      if (images == 0) {
+        return 0L;
+      }
+      int index = (int) Math.ceil(percentile / 100.0 * images) - 1;
+      return sortedNanos[Math.max(0, Math.min(index, images - 1))];
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%d images, %d decoded, %d errors in %.2f s: %.1f images/s, " +
+          "latency p50 %.1f ms p90 %.1f ms p99 %.1f ms max %.1f ms",
+          images, decoded, errors, wallNanos / 1.0e9, getImagesPerSecond(),
+          getLatencyNanos(50) / 1.0e6, getLatencyNanos(90) / 1.0e6,
+          getLatencyNanos(99) / 1.0e6, getLatencyNanos(100) / 1.0e6);
+    }
+  }
+
+  private final Map<DecodeHintType,?> hints;
+  private final boolean multiple;
+  private final int threads;
+  private final int maxInFlight;
+
+  /**
+   * @param hints hints for every reader, may be null
+   * @param multiple whether to look for several barcodes per image, with a
+   *  {@link GenericMultipleBarcodeReader}, or to stop at the first one
+   * @param threads number of worker threads
+   * @param maxInFlight images read or waiting to be reported at most, at least threads
+   */
+  public BatchDecoder(Map<DecodeHintType,?> hints, boolean multiple, int threads, int maxInFlight) {
+    if (threads < 1 || maxInFlight < threads) {
+      throw new IllegalArgumentException("Need 1 thread or more and as many images in flight");
+    }
+    this.hints = hints;
+    this.multiple = multiple;
+    this.threads = threads;
+    this.maxInFlight = maxInFlight;
+  }
+
+  /**
+   * Decodes every image of inputs, taking them only as workers free up.
+   *
+   * @param inputs the images, only used on the calling thread
+   * @param listener told about each image in input order, on the calling thread
+   * @return figures for the whole batch
+   * @throws InterruptedException if the calling thread is interrupted; the images in flight are
+   *  abandoned
+   */
+  public Summary decode(Iterator<? extends ImageInput> inputs, Listener listener)
+      throws InterruptedException {
+    final ThreadLocal<Worker> workers = new ThreadLocal<Worker>() {
+      @Override
+      protected Worker initialValue() {
+        return new Worker();
+      }
+    };
+    ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+      private int count;
+
+      @Override
+      public synchronized Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "BatchDecoder-" + ++count);
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+
+    Queue<Future<Outcome>> inFlight = new LinkedList<Future<Outcome>>();
+    Tally tally = new Tally();
+    long start = System.nanoTime();
+    try {
+      int index = 0;
+      while (inputs.hasNext()) {
+        if (inFlight.size() >= maxInFlight) {
+          tally.report(inFlight.remove(), listener);
+        }
+        final ImageInput input = inputs.next();
+        final int inputIndex = index++;
+        inFlight.add(executor.submit(new Callable<Outcome>() {
+          @Override
+          public Outcome call() {
+            return workers.get().decode(inputIndex, input);
+          }
+        }));
+        // Report what's already done without waiting for it
+        while (!inFlight.isEmpty() && inFlight.peek().isDone()) {
+          tally.report(inFlight.remove(), listener);
+        }
+      }
+      while (!inFlight.isEmpty()) {
+        tally.report(inFlight.remove(), listener);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    return tally.summarize(System.nanoTime() - start);
+  }
+
+  /**
+   * A worker thread's readers, reused for every image it decodes.
+   */
+  private final class Worker {
+
+    private final MultiFormatReader reader;
+    private final MultipleBarcodeReader multipleReader;
+
+    Worker() {
+      reader = new MultiFormatReader();
+      reader.setHints(hints);
+      // GenericMultipleBarcodeReader passes the hints to the reader for every crop it tries,
+      // which MultiFormatReader.decode() would set up its readers again for.
+      multipleReader = multiple ? new GenericMultipleBarcodeReader(new Reader() {
+        @Override
+        public Result decode(BinaryBitmap image) throws NotFoundException {
+          return reader.decodeWithState(image);
+        }
+
+        @Override
+        public Result decode(BinaryBitmap image, Map<DecodeHintType,?> ignored)
+            throws NotFoundException {
+          return reader.decodeWithState(image);
+        }
+
+        @Override
+        public void reset() {
+          reader.reset();
+        }
+      }) : null;
+    }
+
+    Outcome decode(int index, ImageInput input) {
+      long start = System.nanoTime();
+      Result[] results = null;
+      Exception error = null;
+      try {
+        BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(input.readLuminanceSource()));
+        if (multipleReader != null) {
+          results = multipleReader.decodeMultiple(bitmap, hints);
+        } else {
+          results = new Result[] {reader.decodeWithState(bitmap)};
+        }
+      } catch (NotFoundException nfe) {
+        // no barcode
+      } catch (Exception e) {
+        error = e;
+      } finally {
+        reader.reset();
+      }
+      return new Outcome(index, input.getName(), results, error, System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * Counts outcomes as they're reported.
+   */
+  private static final class Tally {
+
+    private int images;
+    private int decoded;
+    private int errors;
+    private long[] nanos = new long[64];
+
+    void report(Future<Outcome> future, Listener listener) throws InterruptedException {
+      Outcome outcome;
+      try {
+        outcome = future.get();
+      } catch (ExecutionException ee) {
+        // Workers catch exceptions, only errors get here
+        Throwable cause = ee.getCause();
+        if (cause instanceof Error) {
+          throw (Error) cause;
+        }
+        throw new IllegalStateException(cause);
+      }
+      if (images == nanos.length) {
+        nanos = Arrays.copyOf(nanos, images * 2);
+      }
+      nanos[images++] = outcome.getNanos();
+      if (outcome.getError() != null) {
+        errors++;
+      } else if (outcome.getResults().length > 0) {
+        decoded++;
+      }
+      listener.decoded(outcome);
+    }
+
+    Summary summarize(long wallNanos) {
+      return new Summary(images, decoded, errors, wallNanos, nanos);
+    }
+  }
+
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2013 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.j2se;
+
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.RGBLuminanceSource;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import javax.imageio.ImageIO;
+
+/**
+ * One image to decode in a batch, read only when a worker gets to it so that a batch never holds
+ * more images in memory than it has in flight.
+ *
+ * {@link #readLuminanceSource()} takes the luminances straight from the raster of the usual
+ * opaque packed images (8 bit greyscale, BGR and RGB, the types {@link ImageIO} reads most files
+ * into) instead of asking {@link BufferedImage#getRGB} for an int per pixel.
+ */
+public abstract class ImageInput {
+
+  private final String name;
+
+  protected ImageInput(String name) {
+    this.name = name;
+  }
+
+  /**
+   * @return what the image is reported as, e.g. its path
+   */
+  public final String getName() {
+    return name;
+  }
+
+  /**
+   * @return the image, never null
+   * @throws IOException if it can't be read or isn't in a format {@link ImageIO} knows
+   */
+  protected abstract BufferedImage read() throws IOException;
+
+  public final LuminanceSource readLuminanceSource() throws IOException {
+    return toLuminanceSource(read());
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+
+  public static ImageInput forFile(final File file) {
+    return new ImageInput(file.getPath()) {
+      @Override
+      protected BufferedImage read() throws IOException {
+        return checkRead(ImageIO.read(file), file.getPath());
+      }
+    };
+  }
+
+  /**
+   * @param data an encoded image, e.g. a PNG file's contents
+   */
+  public static ImageInput forBytes(String name, final byte[] data) {
+    return new ImageInput(name) {
+      @Override
+      protected BufferedImage read() throws IOException {
+        InputStream in = new ByteArrayInputStream(data);
+        return checkRead(ImageIO.read(in), getName());
+      }
+    };
+  }
+
+  public static ImageInput forImage(String name, final BufferedImage image) {
+    return new ImageInput(name) {
+      @Override
+      protected BufferedImage read() {
+        return image;
+      }
+    };
+  }
+
+  private static BufferedImage checkRead(BufferedImage image, String name) throws IOException {
+    if (image == null) {
+      throw new IOException("Not an image in a known format: " + name);
+    }
+    return image;
+  }
+
+  static LuminanceSource toLuminanceSource(BufferedImage image) {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    Raster raster = image.getRaster();
+    boolean packed = raster.getSampleModelTranslateX() == 0 &&
+        raster.getSampleModelTranslateY() == 0 &&
+        raster.getDataBuffer().getNumBanks() == 1 &&
+        raster.getDataBuffer().getOffset() == 0 &&
+        !image.getColorModel().hasAlpha();
+    if (packed) {
+      switch (image.getType()) {
+        case BufferedImage.TYPE_BYTE_GRAY:
+          if (isInterleaved(raster, width, 1)) {
+            return RGBLuminanceSource.fromGreyscale(width, height, bytes(raster));
+          }
+          break;
+        case BufferedImage.TYPE_3BYTE_BGR:
+          if (isInterleaved(raster, width, 3)) {
+            int[] bandOffsets = ((ComponentSampleModel) raster.getSampleModel()).getBandOffsets();
+            return RGBLuminanceSource.fromInterleaved(width, height, bytes(raster), 3,
+                bandOffsets[0], bandOffsets[1], bandOffsets[2]);
+          }
+          break;
+        case BufferedImage.TYPE_INT_RGB:
+          if (raster.getSampleModel() instanceof SinglePixelPackedSampleModel &&
+              ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride() == width) {
+            return new RGBLuminanceSource(width, height,
+                ((DataBufferInt) raster.getDataBuffer()).getData());
+          }
+          break;
+      }
+    }
+
+    // Anything else goes through sRGB, with transparent pixels turned white as they would show
+    // on a page.
+    int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+    for (int i = 0; i < pixels.length; i++) {
+      if ((pixels[i] & 0xFF000000) == 0) {
+        pixels[i] = 0xFFFFFFFF;
+      }
+    }
+    return new RGBLuminanceSource(width, height, pixels);
+  }
+
+  private static boolean isInterleaved(Raster raster, int width, int samplesPerPixel) {
+    if (raster.getDataBuffer().getDataType() != DataBuffer.TYPE_BYTE ||
+        !(raster.getSampleModel() instanceof ComponentSampleModel)) {
+      return false;
+    }
+    ComponentSampleModel model = (ComponentSampleModel) raster.getSampleModel();
+    return model.getPixelStride() == samplesPerPixel &&
+        model.getScanlineStride() == width * samplesPerPixel;
+  }
+
+  private static byte[] bytes(Raster raster) {
+    return ((DataBufferByte) raster.getDataBuffer()).getData();
+  }
+
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2013 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing;
+
+import com.google.zxing.common.BitArray;
+import com.google.zxing.oned.MultiFormatOneDReader;
+import com.google.zxing.pdf417.PDF417Reader;
+import com.google.zxing.qrcode.QRCodeReader;
+
+/**
+ * Decides in which order {@link MultiFormatReader} tries its readers on an image, for
+ * {@link DecodeHintType#ADAPTIVE_READER_ORDER}.
+ *
+ * Readers are ranked by how often they have found something so far divided by how long they take,
+ * so that in a continuous scan the reader for whatever is being scanned ends up first and the
+ * slow readers that never find anything end up last. A reader that hasn't found anything in many
+ * attempts, while another one has, is only tried every few images.
+ *
+ * On top of that, a few rows of the image are sampled first: a run of modules in the 1:1:3:1:1
+ * ratio of a QR code finder pattern favors the QR code reader, while many bars that line up
+ * from one row to the next favor the readers of stacked and linear codes.
+ *
+ * Not thread safe, like MultiFormatReader itself.
+ */
+final class AdaptiveReaderOrder {
+
+  private static final int NO_HINT = 0;
+  private static final int FINDER_PATTERN = 1;
+  private static final int LINEAR = 2;
+
+  private static final int SAMPLED_ROWS = 3;
+  // Fewer transitions than this in a row can't be a 1D barcode.
+  private static final int MIN_LINEAR_TRANSITIONS = 20;
+  // How much more likely to succeed a reader the classifier points at is assumed to be.
+  private static final double HINT_BOOST = 8.0;
+  private static final int MIN_ATTEMPTS_BEFORE_PRUNING = 32;
+  private static final int PRUNED_RETRY_INTERVAL = 8;
+  // Statistics are halved past this many attempts, to keep following what is being scanned.
+  private static final int MAX_ATTEMPTS = 256;
+
+  private final Reader[] readers;
+  private final int[] hits;
+  private final int[] attempts;
+  private final long[] nanos;
+  private final int[] kinds;
+  private final double[] scores;
+  private final int[] runs = new int[5];
+  private int images;
+  private BitArray row;
+  private BitArray nextRow;
+
+  AdaptiveReaderOrder(Reader[] readers) {
+    this.readers = readers;
+    int count = readers.length;
+    hits = new int[count];
+    attempts = new int[count];
+    nanos = new long[count];
+    scores = new double[count];
+    kinds = new int[count];
+    for (int i = 0; i < count; i++) {
+      Reader reader = readers[i];
+      if (reader instanceof QRCodeReader) {
+        kinds[i] = FINDER_PATTERN;
+      } else if (reader instanceof MultiFormatOneDReader || reader instanceof PDF417Reader) {
+        kinds[i] = LINEAR;
+      } else {
+        kinds[i] = NO_HINT;
+      }
+    }
+  }
+
+  /**
+   * Fills {@code order} with the indices of the readers to try on {@code image}, best first.
+   *
+   * @return how many readers to try, which is less than the number of readers when some are pruned
+   */
+  int plan(BinaryBitmap image, int[] order) {
+    images++;
+    int hint = classify(image);
+    boolean retryPruned = images % PRUNED_RETRY_INTERVAL == 0;
+    boolean anyHits = false;
+    for (int i = 0; i < readers.length; i++) {
+      anyHits |= hits[i] > 0;
+    }
+
+    int count = 0;
+    for (int i = 0; i < readers.length; i++) {
+      boolean pruned = anyHits && hits[i] == 0 && attempts[i] >= MIN_ATTEMPTS_BEFORE_PRUNING;
+      if (pruned && !retryPruned && kinds[i] != hint) {
+        continue;
+      }
+      // Laplace-smoothed success rate per microsecond; untried readers come first.
+      double successRate = (hits[i] + 1.0) / (attempts[i] + 2.0);
+      double micros = attempts[i] == 0 ? 0.0 : nanos[i] / (attempts[i] * 1000.0);
+      double score = successRate / (micros + 1.0);
+      if (hint != NO_HINT && kinds[i] == hint) {
+        // Enough to go first while the statistics are even, not to beat a reader that has been
+        // finding codes while this one hasn't.
+        score *= HINT_BOOST;
+      }
+      // Insertion sort, there are only a handful of readers.
+      int j = count;
+      while (j > 0 && scores[j - 1] < score) {
+        order[j] = order[j - 1];
+        scores[j] = scores[j - 1];
+        j--;
+      }
+      order[j] = i;
+      scores[j] = score;
+      count++;
+    }
+    return count;
+  }
+
+  /**
+   * Records the outcome of trying reader {@code index} on an image.
+   */
+  void record(int index, boolean found, long elapsedNanos) {
+    if (attempts[index] >= MAX_ATTEMPTS) {
+      hits[index] >>= 1;
+      attempts[index] >>= 1;
+      nanos[index] >>= 1;
+    }
+    attempts[index]++;
+    nanos[index] += elapsedNanos;
+    if (found) {
+      hits[index]++;
+    }
+  }
+
+  /**
+   * Looks at a few rows of the image for a hint of what it contains, in far less time than any
+   * reader takes to decode it.
+   */
+  private int classify(BinaryBitmap image) {
+    int height = image.getHeight();
+    int rowStep = Math.max(height >> 4, 1);
+    int linearRows = 0;
+    int finderRows = 0;
+    for (int i = 1; i <= SAMPLED_ROWS; i++) {
+      int y = height * i / (SAMPLED_ROWS + 1);
+      try {
+        row = image.getBlackRow(y, row);
+        // Bars can happen to be in the finder pattern ratio too, so look for them first.
+        int transitions = countTransitions(row);
+        if (y + rowStep < height && transitions >= MIN_LINEAR_TRANSITIONS) {
+          nextRow = image.getBlackRow(y + rowStep, nextRow);
+          // Two rows of the same bars only differ where noise moves an edge by a pixel.
+          if (countMismatches(row, nextRow) <= transitions) {
+            linearRows++;
+            continue;
+          }
+        }
+      } catch (NotFoundException nfe) {
+        continue;
+      }
+      if (hasFinderPatternRun(row)) {
+        finderRows++;
+      }
+    }
+    if (linearRows > 0 && linearRows >= finderRows) {
+      return LINEAR;
+    }
+    return finderRows > 0 ? FINDER_PATTERN : NO_HINT;
+  }
+
+  /**
+   * @return whether the row crosses something in the 1:1:3:1:1 black/white ratio of a finder
+   *         pattern, with the same tolerance as the QR code finder pattern finder
+   */
+  private boolean hasFinderPatternRun(BitArray row) {
+    int size = row.getSize();
+    int start = row.getNextSet(0);
+    while (start < size) {
+      int end = start;
+      boolean black = true;
+      int i = 0;
+      for (; i < 5 && end < size; i++) {
+        int next = black ? row.getNextUnset(end) : row.getNextSet(end);
+        runs[i] = next - end;
+        end = next;
+        black = !black;
+      }
+      if (i == 5) {
+        int total = runs[0] + runs[1] + runs[2] + runs[3] + runs[4];
+        if (total >= 7) {
+          int moduleSize = (total << 8) / 7;
+          int maxVariance = moduleSize / 2;
+          if (Math.abs(moduleSize - (runs[0] << 8)) < maxVariance &&
+              Math.abs(moduleSize - (runs[1] << 8)) < maxVariance &&
+              Math.abs(3 * moduleSize - (runs[2] << 8)) < 3 * maxVariance &&
+              Math.abs(moduleSize - (runs[3] << 8)) < maxVariance &&
+              Math.abs(moduleSize - (runs[4] << 8)) < maxVariance) {
+            return true;
+          }
+        }
+      }
+      // Move on to the next black run.
+      start = row.getNextSet(start + runs[0]);
+    }
+    return false;
+  }
+
+  private static int countTransitions(BitArray row) {
+    int size = row.getSize();
+    int transitions = 0;
+    int position = row.getNextSet(0);
+    while (position < size) {
+      position = row.getNextUnset(position);
+      transitions++;
+      if (position < size) {
+        position = row.getNextSet(position);
+        transitions++;
+      }
+    }
+    return transitions;
+  }
+
+  private static int countMismatches(BitArray a, BitArray b) {
+    int[] aBits = a.getBitArray();
+    int[] bBits = b.getBitArray();
+    int mismatches = 0;
+    for (int i = 0; i < aBits.length; i++) {
+      mismatches += Integer.bitCount(aBits[i] ^ bBits[i]);
+    }
+    return mismatches;
+  }
+
+}
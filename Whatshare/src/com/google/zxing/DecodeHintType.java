@@ -71,4 +71,39 @@ public enum DecodeHintType {
    */
   NEED_RESULT_POINT_CALLBACK,
 
+  /**
+   * Binarize the image with a {@link com.google.zxing.common.IntegralImageBinarizer}, which copes
+   * better with uneven lighting, such as a code displayed on a screen. Only honored by callers
+   * that pick the {@link Binarizer} themselves, like the Android client's decode loop.
+   * Doesn't matter what it maps to; use {@link Boolean#TRUE}.
+   */
+  INTEGRAL_IMAGE_BINARIZER,
+
+  /**
+   * Try several binarizers on each frame concurrently, and keep whichever decodes first. Only
+   * honored by the Android client's decode loop, which sizes its thread pool to the device's cores.
+   * Doesn't matter what it maps to; use {@link Boolean#TRUE}.
+   */
+  PARALLEL_BINARIZERS,
+
+  /**
+   * Let {@link MultiFormatReader} reorder its readers from one image to the next, trying first
+   * those that have been finding barcodes quickly and those a quick look at the image points to,
+   * and trying those that never find anything only now and then. Meant for continuous scanning.
+   * Doesn't matter what it maps to; use {@link Boolean#TRUE}.
+   */
+  ADAPTIVE_READER_ORDER,
+
+  /**
+   * Scan the rows of an image for 1D barcodes on several threads at once, each taking the next
+   * band of rows in the usual order, from the middle out, and return what a scan on one thread
+   * would have found first. Worth it with {@link #TRY_HARDER} on large still images; RSS codes
+   * are only put together from rows scanned by the same thread, so they may differ from what a
+   * scan on one thread finds, and a {@link #NEED_RESULT_POINT_CALLBACK} is called from all the
+   * threads at once.
+   * Maps to the {@link java.util.concurrent.ExecutorService} running the other threads, which
+   * the caller keeps ownership of; the calling thread scans rows too.
+   */
+  ROW_SCAN_EXECUTOR,
+
 }
@@ -94,6 +94,14 @@ public abstract class LuminanceSource {
     throw new UnsupportedOperationException("This luminance source does not support cropping.");
   }
 
+  /**
+   * @return a wrapper of this {@code LuminanceSource} which inverts the luminances it returns -- black becomes
+   *  white and vice versa, and each value becomes (255-value).
+   */
+  public LuminanceSource invert() {
+    return new InvertedLuminanceSource(this);
+  }
+
   /**
    * @return Whether this subclass supports counter-clockwise rotation.
    */
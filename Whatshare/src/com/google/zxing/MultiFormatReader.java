@@ -39,6 +39,8 @@ public final class MultiFormatReader implements Reader {
 
   private Map<DecodeHintType,?> hints;
   private Reader[] readers;
+  private AdaptiveReaderOrder adaptiveOrder;
+  private int[] order;
 
   /**
    * This version of decode honors the intent of Reader.decode(BinaryBitmap) in that it
@@ -152,6 +154,13 @@ public final class MultiFormatReader implements Reader {
       }
     }
     this.readers = readers.toArray(new Reader[readers.size()]);
+    if (hints != null && hints.containsKey(DecodeHintType.ADAPTIVE_READER_ORDER)) {
+      adaptiveOrder = new AdaptiveReaderOrder(this.readers);
+      order = new int[this.readers.length];
+    } else {
+      adaptiveOrder = null;
+      order = null;
+    }
   }
 
   @Override
@@ -164,6 +173,9 @@ public final class MultiFormatReader implements Reader {
   }
 
   private Result decodeInternal(BinaryBitmap image) throws NotFoundException {
+    if (adaptiveOrder != null) {
+      return decodeAdaptively(image);
+    }
     if (readers != null) {
       for (Reader reader : readers) {
         try {
@@ -176,4 +188,20 @@ public final class MultiFormatReader implements Reader {
     throw NotFoundException.getNotFoundInstance();
   }
 
+  private Result decodeAdaptively(BinaryBitmap image) throws NotFoundException {
+    int count = adaptiveOrder.plan(image, order);
+    for (int i = 0; i < count; i++) {
+      int index = order[i];
+      long start = System.nanoTime();
+      try {
+        Result result = readers[index].decode(image, hints);
+        adaptiveOrder.record(index, true, System.nanoTime() - start);
+        return result;
+      } catch (ReaderException re) {
+        adaptiveOrder.record(index, false, System.nanoTime() - start);
+      }
+    }
+    throw NotFoundException.getNotFoundInstance();
+  }
+
 }
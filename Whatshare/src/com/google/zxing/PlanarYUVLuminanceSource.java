@@ -33,6 +33,7 @@ public final class PlanarYUVLuminanceSource extends LuminanceSource {
   private final int dataHeight;
   private final int left;
   private final int top;
+  private final byte[] matrixBuffer;
 
   public PlanarYUVLuminanceSource(byte[] yuvData,
                                   int dataWidth,
@@ -42,6 +43,25 @@ public final class PlanarYUVLuminanceSource extends LuminanceSource {
                                   int width,
                                   int height,
                                   boolean reverseHorizontal) {
+    this(yuvData, dataWidth, dataHeight, left, top, width, height, reverseHorizontal, null);
+  }
+
+  /**
+   * @param matrixBuffer An array of at least {@code width * height} bytes that {@link #getMatrix()}
+   *                     copies the cropped luminances into when it can't return the Y plane
+   *                     itself, so that a camera loop doesn't allocate a new one every frame; or
+   *                     null to allocate one on each call. The caller must not reuse it for
+   *                     another source while this one's matrix is still in use.
+   */
+  public PlanarYUVLuminanceSource(byte[] yuvData,
+                                  int dataWidth,
+                                  int dataHeight,
+                                  int left,
+                                  int top,
+                                  int width,
+                                  int height,
+                                  boolean reverseHorizontal,
+                                  byte[] matrixBuffer) {
     super(width, height);
 
     if (left + width > dataWidth || top + height > dataHeight) {
@@ -53,6 +73,8 @@ public final class PlanarYUVLuminanceSource extends LuminanceSource {
     this.dataHeight = dataHeight;
     this.left = left;
     this.top = top;
+    this.matrixBuffer = matrixBuffer != null && matrixBuffer.length >= width * height ?
+        matrixBuffer : null;
     if (reverseHorizontal) {
       reverseHorizontal(width, height);
     }
@@ -77,14 +99,15 @@ public final class PlanarYUVLuminanceSource extends LuminanceSource {
     int width = getWidth();
     int height = getHeight();
 
-    // If the caller asks for the entire underlying image, save the copy and give them the
-    // original data. The docs specifically warn that result.length must be ignored.
-    if (width == dataWidth && height == dataHeight) {
+    // If the caller asks for whole rows starting from the first one, which includes the entire
+    // underlying image, save the copy and give them the original data. The docs specifically warn
+    // that result.length must be ignored.
+    if (width == dataWidth && top == 0) {
       return yuvData;
     }
 
     int area = width * height;
-    byte[] matrix = new byte[area];
+    byte[] matrix = matrixBuffer == null ? new byte[area] : matrixBuffer;
     int inputOffset = top * dataWidth + left;
 
     // If the width matches the full width of the underlying data, perform a single copy.
@@ -46,19 +46,62 @@ public final class RGBLuminanceSource extends LuminanceSource {
       int offset = y * width;
       for (int x = 0; x < width; x++) {
         int pixel = pixels[offset + x];
-        int r = (pixel >> 16) & 0xff;
-        int g = (pixel >> 8) & 0xff;
-        int b = pixel & 0xff;
-        if (r == g && g == b) {
-          // Image is already greyscale, so pick any channel.
-          luminances[offset + x] = (byte) r;
-        } else {
-          // Calculate luminance cheaply, favoring green.
-          luminances[offset + x] = (byte) ((r + g + g + b) >> 2);
-        }
+        luminances[offset + x] = toLuminance((pixel >> 16) & 0xff, (pixel >> 8) & 0xff, pixel & 0xff);
       }
     }
   }
+
+  /**
+   * Wraps 8 bit greyscale samples, such as those of a packed greyscale raster, which are used as
+   * luminances as they are, without being copied.
+   *
+   * @param pixels one byte per pixel, row after row
+   */
+  public static RGBLuminanceSource fromGreyscale(int width, int height, byte[] pixels) {
+    if (pixels.length < width * height) {
+      throw new IllegalArgumentException("Too few pixels for " + width + 'x' + height);
+    }
+    return new RGBLuminanceSource(pixels, width, height, 0, 0, width, height);
+  }
+
+  /**
+   * Converts interleaved 8 bit samples, such as those of a packed RGB, BGR or ABGR raster,
+   * without going through an int per pixel. Alpha samples, if any, are ignored.
+   *
+   * @param samples samplesPerPixel bytes per pixel, row after row
+   * @param samplesPerPixel at least 3
+   * @param redOffset offset of the red sample in a pixel
+   * @param greenOffset offset of the green sample in a pixel
+   * @param blueOffset offset of the blue sample in a pixel
+   */
+  public static RGBLuminanceSource fromInterleaved(int width,
+                                                   int height,
+                                                   byte[] samples,
+                                                   int samplesPerPixel,
+                                                   int redOffset,
+                                                   int greenOffset,
+                                                   int blueOffset) {
+    int area = width * height;
+    if (samples.length < area * samplesPerPixel) {
+      throw new IllegalArgumentException("Too few samples for " + width + 'x' + height);
+    }
+    byte[] luminances = new byte[area];
+    for (int i = 0, offset = 0; i < area; i++, offset += samplesPerPixel) {
+      luminances[i] = toLuminance(samples[offset + redOffset] & 0xff,
+                                  samples[offset + greenOffset] & 0xff,
+                                  samples[offset + blueOffset] & 0xff);
+    }
+    return new RGBLuminanceSource(luminances, width, height, 0, 0, width, height);
+  }
+
+  private static byte toLuminance(int r, int g, int b) {
+    if (r == g && g == b) {
+      // Image is already greyscale, so pick any channel.
+      return (byte) r;
+    }
+    // Calculate luminance cheaply, favoring green.
+    return (byte) ((r + g + g + b) >> 2);
+  }
   
   private RGBLuminanceSource(byte[] pixels,
                              int dataWidth,
@@ -16,6 +16,7 @@
 
 package com.google.zxing.client.android;
 
+import it.mb.whatshare.MainActivity;
 import it.mb.whatshare.R;
 
 import java.io.IOException;
@@ -24,6 +25,7 @@ import java.net.URLEncoder;
 import java.text.DateFormat;
 import java.util.Collection;
 import java.util.Date;
+import java.util.EnumMap;
 import java.util.EnumSet;
 import java.util.Map;
 import java.util.Set;
@@ -42,6 +44,7 @@ import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import android.text.ClipboardManager;
 import android.util.Log;
@@ -60,6 +63,7 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import com.google.zxing.BarcodeFormat;
+import com.google.zxing.DecodeHintType;
 import com.google.zxing.Result;
 import com.google.zxing.ResultMetadataType;
 import com.google.zxing.ResultPoint;
@@ -118,7 +122,10 @@ public final class CaptureActivity extends Activity implements
     private String sourceUrl;
     private String returnUrlTemplate;
     private boolean returnRaw;
+    private boolean pairingMode;
+    private long cameraOpened;
     private Collection<BarcodeFormat> decodeFormats;
+    private Map<DecodeHintType, Object> decodeHints;
     private String characterSet;
     private HistoryManager historyManager;
     private InactivityTimer inactivityTimer;
@@ -136,6 +143,14 @@ public final class CaptureActivity extends Activity implements
         return cameraManager;
     }
 
+    /**
+     * @return whether decoded frames should be rendered for display, which is
+     *         pointless in {@link Intents.Scan#PAIRING_MODE}
+     */
+    boolean needsBarcodeBitmap() {
+        return !pairingMode;
+    }
+
     @Override
     public void onCreate(Bundle icicle) {
         super.onCreate(icicle);
@@ -207,7 +222,9 @@ public final class CaptureActivity extends Activity implements
                         Intents.Scan.SAVE_HISTORY, true));
 
         source = IntentSource.NONE;
+        pairingMode = false;
         decodeFormats = null;
+        decodeHints = new EnumMap<DecodeHintType, Object>(DecodeHintType.class);
         characterSet = null;
 
         if (intent != null) {
@@ -221,6 +238,22 @@ public final class CaptureActivity extends Activity implements
                 // to the calling activity.
                 source = IntentSource.NATIVE_APP_INTENT;
                 decodeFormats = DecodeFormatManager.parseDecodeFormats(intent);
+                pairingMode = intent.getBooleanExtra(Intents.Scan.PAIRING_MODE,
+                        false);
+                if (pairingMode) {
+                    // QRCodeReader alone, whatever else was requested
+                    decodeFormats = DecodeFormatManager.QR_CODE_FORMATS;
+                }
+                if (intent.getBooleanExtra(
+                        Intents.Scan.INTEGRAL_IMAGE_BINARIZER, false)) {
+                    decodeHints.put(DecodeHintType.INTEGRAL_IMAGE_BINARIZER,
+                            Boolean.TRUE);
+                }
+                if (intent.getBooleanExtra(Intents.Scan.PARALLEL_BINARIZERS,
+                        false)) {
+                    decodeHints.put(DecodeHintType.PARALLEL_BINARIZERS,
+                            Boolean.TRUE);
+                }
 
                 if (intent.hasExtra(Intents.Scan.WIDTH)
                         && intent.hasExtra(Intents.Scan.HEIGHT)) {
@@ -407,6 +440,10 @@ public final class CaptureActivity extends Activity implements
      */
     public void handleDecode(Result rawResult, Bitmap barcode) {
         inactivityTimer.onActivity();
+        if (pairingMode) {
+            handlePairingDecode(rawResult);
+            return;
+        }
         lastResult = rawResult;
         ResultHandler resultHandler = ResultHandlerFactory.makeResultHandler(
                 this, rawResult);
@@ -580,6 +617,24 @@ public final class CaptureActivity extends Activity implements
         }
     }
 
+    // Hand a pairing code straight back to WhatsHare, skipping the history and
+    // result parsing; any other QR code is ignored.
+    private void handlePairingDecode(Result rawResult) {
+        String text = rawResult.getText();
+        if (!MainActivity.isPairingCode(text)) {
+            restartPreviewAfterDelay(0L);
+            return;
+        }
+        beepManager.playBeepSoundAndVibrate();
+        Intent intent = new Intent(getIntent().getAction());
+        intent.addFlags(Intent.FLAG_ACTIVITY_CLEAR_WHEN_TASK_RESET);
+        intent.putExtra(Intents.Scan.RESULT, text);
+        intent.putExtra(Intents.Scan.RESULT_FORMAT, rawResult
+                .getBarcodeFormat().toString());
+        intent.putExtra(Intents.Scan.RESULT_CAMERA_OPENED, cameraOpened);
+        sendReplyMessage(R.id.return_scan_result, intent, 0L);
+    }
+
     // Briefly show the contents of the barcode, then handle the result outside
     // Barcode Scanner.
     private void handleDecodeExternally(Result rawResult,
@@ -753,11 +808,12 @@ public final class CaptureActivity extends Activity implements
         }
         try {
             cameraManager.openDriver(surfaceHolder);
+            cameraOpened = SystemClock.elapsedRealtime();
             // Creating the handler starts the preview, which can also throw a
             // RuntimeException.
             if (handler == null) {
                 handler = new CaptureActivityHandler(this, decodeFormats,
-                        characterSet, cameraManager);
+                        decodeHints, characterSet, cameraManager);
             }
             decodeOrStoreSavedBitmap(null, null);
         } catch (IOException ioe) {
@@ -19,6 +19,7 @@ package com.google.zxing.client.android;
 import it.mb.whatshare.R;
 
 import java.util.Collection;
+import java.util.Map;
 
 import android.app.Activity;
 import android.content.ActivityNotFoundException;
@@ -34,6 +35,7 @@ import android.provider.Browser;
 import android.util.Log;
 
 import com.google.zxing.BarcodeFormat;
+import com.google.zxing.DecodeHintType;
 import com.google.zxing.Result;
 import com.google.zxing.client.android.camera.CameraManager;
 
@@ -58,10 +60,12 @@ public final class CaptureActivityHandler extends Handler {
     }
 
     CaptureActivityHandler(CaptureActivity activity,
-            Collection<BarcodeFormat> decodeFormats, String characterSet,
+            Collection<BarcodeFormat> decodeFormats,
+            Map<DecodeHintType, ?> baseHints, String characterSet,
             CameraManager cameraManager) {
         this.activity = activity;
-        decodeThread = new DecodeThread(activity, decodeFormats, characterSet,
+        decodeThread = new DecodeThread(activity, decodeFormats, baseHints,
+                characterSet,
                 new ViewfinderResultPointCallback(activity.getViewfinderView()));
         decodeThread.start();
         state = State.SUCCESS;
@@ -81,18 +85,20 @@ public final class CaptureActivityHandler extends Handler {
             break;
         case R.id.decode_succeeded:
             Log.d(TAG, "Got decode succeeded message");
+            if (state != State.PREVIEW) {
+                // A frame that was already being decoded when we stopped.
+                break;
+            }
             state = State.SUCCESS;
+            cameraManager.stopPreviewFrames();
             Bundle bundle = message.getData();
             Bitmap barcode = bundle == null ? null : (Bitmap) bundle
                     .getParcelable(DecodeThread.BARCODE_BITMAP);
             activity.handleDecode((Result) message.obj, barcode);
             break;
         case R.id.decode_failed:
-            // We're decoding as fast as possible, so when one decode fails,
-            // start another.
-            state = State.PREVIEW;
-            cameraManager.requestPreviewFrame(decodeThread.getHandler(),
-                    R.id.decode);
+            // Frames keep coming while we're in preview, the decode thread
+            // moves on to the most recent one by itself.
             break;
         case R.id.return_scan_result:
             Log.d(TAG, "Got return scan result message");
@@ -135,6 +141,10 @@ public final class CaptureActivityHandler extends Handler {
     public void quitSynchronously() {
         state = State.DONE;
         cameraManager.stopPreview();
+        Log.d(TAG, "Preview frames captured: "
+                + cameraManager.getCapturedFrameCount() + ", decoded: "
+                + cameraManager.getDecodedFrameCount() + ", dropped: "
+                + cameraManager.getDroppedFrameCount());
         Message quit = Message.obtain(decodeThread.getHandler(), R.id.quit);
         quit.sendToTarget();
         try {
@@ -153,7 +163,7 @@ public final class CaptureActivityHandler extends Handler {
     private void restartPreviewAndDecode() {
         if (state == State.SUCCESS) {
             state = State.PREVIEW;
-            cameraManager.requestPreviewFrame(decodeThread.getHandler(),
+            cameraManager.requestPreviewFrames(decodeThread.getHandler(),
                     R.id.decode);
             activity.drawViewfinder();
         }
@@ -21,12 +21,14 @@ import it.mb.whatshare.R;
 import java.util.Map;
 
 import android.graphics.Bitmap;
+import android.graphics.Rect;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
 import android.util.Log;
 
+import com.google.zxing.Binarizer;
 import com.google.zxing.BinaryBitmap;
 import com.google.zxing.DecodeHintType;
 import com.google.zxing.LuminanceSource;
@@ -34,7 +36,10 @@ import com.google.zxing.MultiFormatReader;
 import com.google.zxing.PlanarYUVLuminanceSource;
 import com.google.zxing.ReaderException;
 import com.google.zxing.Result;
+import com.google.zxing.client.android.camera.CameraManager;
+import com.google.zxing.common.BinarizerWorkspace;
 import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.common.IntegralImageBinarizer;
 
 final class DecodeHandler extends Handler {
 
@@ -42,11 +47,33 @@ final class DecodeHandler extends Handler {
 
     private final CaptureActivity activity;
     private final MultiFormatReader multiFormatReader;
+    /**
+     * Binarization buffers recycled across frames; only ever touched from the
+     * decode thread this handler runs on.
+     */
+    private final BinarizerWorkspace workspace;
+    private final boolean integralImageBinarizer;
+    /**
+     * Set when {@link DecodeHintType#PARALLEL_BINARIZERS} was requested, in
+     * which case it replaces {@link #multiFormatReader}.
+     */
+    private final ParallelDecoder parallelDecoder;
+    private final RoiTracker roiTracker;
     private boolean running = true;
 
-    DecodeHandler(CaptureActivity activity, Map<DecodeHintType, Object> hints) {
+    DecodeHandler(CaptureActivity activity, Map<DecodeHintType, Object> hints,
+            RoiTracker roiTracker) {
         multiFormatReader = new MultiFormatReader();
         multiFormatReader.setHints(hints);
+        workspace = new BinarizerWorkspace();
+        integralImageBinarizer = hints
+                .containsKey(DecodeHintType.INTEGRAL_IMAGE_BINARIZER);
+        if (hints.containsKey(DecodeHintType.PARALLEL_BINARIZERS)) {
+            parallelDecoder = new ParallelDecoder(hints);
+        } else {
+            parallelDecoder = null;
+        }
+        this.roiTracker = roiTracker;
         this.activity = activity;
     }
 
@@ -57,19 +84,33 @@ final class DecodeHandler extends Handler {
         }
         switch (message.what) {
         case R.id.decode:
-            decode((byte[]) message.obj, message.arg1, message.arg2);
+            // Always decode the most recent frame, skipping any that
+            // arrived while the previous decode was running.
+            CameraManager cameraManager = activity.getCameraManager();
+            byte[] data = cameraManager.takePreviewFrame();
+            if (data != null) {
+                try {
+                    decode(data, message.arg1, message.arg2);
+                } finally {
+                    cameraManager.releasePreviewFrame(data);
+                }
+            }
             break;
         case R.id.quit:
             running = false;
+            if (parallelDecoder != null) {
+                parallelDecoder.shutdown();
+            }
             Looper.myLooper().quit();
             break;
         }
     }
 
     /**
-     * Decode the data within the viewfinder rectangle, and time how long it
-     * took. For efficiency, reuse the same reader objects from one decode to
-     * the next.
+     * Decode the data within the viewfinder rectangle, or the part of it where
+     * a barcode was last seen, and time how long it took. For efficiency,
+     * reuse the same reader objects and binarization buffers from one decode
+     * to the next.
      * 
      * @param data
      *            The YUV preview frame.
@@ -79,12 +120,31 @@ final class DecodeHandler extends Handler {
      *            The height of the preview frame.
      */
     private void decode(byte[] data, int width, int height) {
+        if (parallelDecoder != null && parallelDecoder.isBusy()) {
+            // the last frame was decoded but some strategies are still
+            // finishing it, skip this one rather than wait for them
+            Handler handler = activity.getHandler();
+            if (handler != null) {
+                Message.obtain(handler, R.id.decode_failed).sendToTarget();
+            }
+            return;
+        }
         long start = System.currentTimeMillis();
         Result rawResult = null;
-        PlanarYUVLuminanceSource source = activity.getCameraManager()
-                .buildLuminanceSource(data, width, height);
-        if (source != null) {
-            BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(source));
+        CameraManager cameraManager = activity.getCameraManager();
+        Rect framingRect = cameraManager.getFramingRectInPreview();
+        Rect window = framingRect == null ? null : roiTracker.nextWindow(
+                framingRect.width(), framingRect.height());
+        PlanarYUVLuminanceSource source = cameraManager.buildLuminanceSource(
+                data, width, height, window);
+        if (source != null && parallelDecoder != null) {
+            try {
+                rawResult = parallelDecoder.decode(source);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        } else if (source != null) {
+            BinaryBitmap bitmap = new BinaryBitmap(newBinarizer(source));
             try {
                 rawResult = multiFormatReader.decodeWithState(bitmap);
             } catch (ReaderException re) {
@@ -94,6 +154,8 @@ final class DecodeHandler extends Handler {
             }
         }
 
+        roiTracker.frameDecoded(rawResult != null);
+
         Handler handler = activity.getHandler();
         if (rawResult != null) {
             // Don't log the barcode contents for security.
@@ -102,12 +164,14 @@ final class DecodeHandler extends Handler {
             if (handler != null) {
                 Message message = Message.obtain(handler,
                         R.id.decode_succeeded, rawResult);
-                Bundle bundle = new Bundle();
-                Bitmap grayscaleBitmap = toBitmap(source,
-                        source.renderCroppedGreyscaleBitmap());
-                bundle.putParcelable(DecodeThread.BARCODE_BITMAP,
-                        grayscaleBitmap);
-                message.setData(bundle);
+                if (activity.needsBarcodeBitmap()) {
+                    Bundle bundle = new Bundle();
+                    Bitmap grayscaleBitmap = toBitmap(source,
+                            source.renderCroppedGreyscaleBitmap());
+                    bundle.putParcelable(DecodeThread.BARCODE_BITMAP,
+                            grayscaleBitmap);
+                    message.setData(bundle);
+                }
                 message.sendToTarget();
             }
         } else {
@@ -118,6 +182,13 @@ final class DecodeHandler extends Handler {
         }
     }
 
+    private Binarizer newBinarizer(LuminanceSource source) {
+        if (integralImageBinarizer) {
+            return new IntegralImageBinarizer(source, workspace);
+        }
+        return new HybridBinarizer(source, workspace);
+    }
+
     private static Bitmap toBitmap(LuminanceSource source, int[] pixels) {
         int width = source.getWidth();
         int height = source.getHeight();
@@ -42,11 +42,13 @@ final class DecodeThread extends Thread {
 
   private final CaptureActivity activity;
   private final Map<DecodeHintType,Object> hints;
+  private final RoiTracker roiTracker;
   private Handler handler;
   private final CountDownLatch handlerInitLatch;
 
   DecodeThread(CaptureActivity activity,
                Collection<BarcodeFormat> decodeFormats,
+               Map<DecodeHintType,?> baseHints,
                String characterSet,
                ResultPointCallback resultPointCallback) {
 
@@ -54,6 +56,9 @@ final class DecodeThread extends Thread {
     handlerInitLatch = new CountDownLatch(1);
 
     hints = new EnumMap<DecodeHintType,Object>(DecodeHintType.class);
+    if (baseHints != null) {
+      hints.putAll(baseHints);
+    }
 
     // The prefs can't change while the thread is running, so pick them up once here.
     if (decodeFormats == null || decodeFormats.isEmpty()) {
@@ -70,11 +75,15 @@ final class DecodeThread extends Thread {
       }
     }
     hints.put(DecodeHintType.POSSIBLE_FORMATS, decodeFormats);
+    // Consecutive frames tend to show the same kind of code, let the readers that find it go first.
+    hints.put(DecodeHintType.ADAPTIVE_READER_ORDER, Boolean.TRUE);
 
     if (characterSet != null) {
       hints.put(DecodeHintType.CHARACTER_SET, characterSet);
     }
-    hints.put(DecodeHintType.NEED_RESULT_POINT_CALLBACK, resultPointCallback);
+    // Points go through the tracker, which narrows the next frames down to where they were found.
+    roiTracker = new RoiTracker(resultPointCallback);
+    hints.put(DecodeHintType.NEED_RESULT_POINT_CALLBACK, roiTracker);
   }
 
   Handler getHandler() {
@@ -89,7 +98,7 @@ final class DecodeThread extends Thread {
   @Override
   public void run() {
     Looper.prepare();
-    handler = new DecodeHandler(activity, hints);
+    handler = new DecodeHandler(activity, hints, roiTracker);
     handlerInitLatch.countDown();
     Looper.loop();
   }
@@ -153,6 +153,38 @@ public final class Intents {
      */
     public static final String SAVE_HISTORY = "SAVE_HISTORY";
 
+    /**
+     * Setting this to true binarizes frames with a local threshold that follows uneven lighting
+     * more closely, at the cost of some speed. Useful when scanning codes shown on screens.
+     * Specified as a {@code boolean}.
+     *
+     * @see com.google.zxing.DecodeHintType#INTEGRAL_IMAGE_BINARIZER
+     */
+    public static final String INTEGRAL_IMAGE_BINARIZER = "INTEGRAL_IMAGE_BINARIZER";
+
+    /**
+     * Setting this to true decodes every frame with several binarizers at once, one per core, so
+     * that a frame with glare or inverted colors doesn't have to wait for the next one. Costs
+     * more CPU per frame. Specified as a {@code boolean}.
+     *
+     * @see com.google.zxing.DecodeHintType#PARALLEL_BINARIZERS
+     */
+    public static final String PARALLEL_BINARIZERS = "PARALLEL_BINARIZERS";
+
+    /**
+     * Setting this to true scans for a WhatsHare pairing code only: QR codes alone are decoded,
+     * anything that isn't a pairing code is ignored, and the first pairing code found is returned
+     * right away, without saving it in the history, parsing it or showing it. The reply carries
+     * {@link #RESULT_CAMERA_OPENED}. Specified as a {@code boolean}.
+     */
+    public static final String PAIRING_MODE = "PAIRING_MODE";
+
+    /**
+     * When scanning in {@link #PAIRING_MODE}, the {@link android.os.SystemClock#elapsedRealtime()}
+     * at which the camera was opened, so that the caller can tell how long pairing took.
+     */
+    public static final String RESULT_CAMERA_OPENED = "SCAN_RESULT_CAMERA_OPENED";
+
     private Scan() {
     }
   }
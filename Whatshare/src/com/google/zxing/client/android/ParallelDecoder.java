@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) 2013 ZXing authors
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.zxing.client.android;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.zxing.Binarizer;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.ResultPointCallback;
+import com.google.zxing.common.BinarizerWorkspace;
+import com.google.zxing.common.GlobalHistogramBinarizer;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.common.IntegralImageBinarizer;
+
+/**
+ * Decodes a single frame with several binarization strategies at once, on a
+ * small pool sized to the device's cores, and returns the first result found.
+ * A frame that defeats the default binarizer (shadows, glare, light codes on
+ * dark backgrounds) can then still be decoded instead of waiting for the next
+ * camera frame.
+ * 
+ * <p>
+ * Each strategy owns its {@link MultiFormatReader} and
+ * {@link BinarizerWorkspace}, as neither is thread safe. Strategies read a
+ * copy of the frame, made once per frame, so that the first result is
+ * returned, and the frame handed back to the camera, without waiting for the
+ * others. Those are cancelled: the ones that haven't started return as soon
+ * as they do, the ones that are running stop before their next step
+ * (binarizing, decoding) and stop reporting result points. Readers can't be
+ * interrupted, though, so a strategy in the middle of decoding finishes in
+ * the background, and no other frame can be decoded until it's done (see
+ * {@link #isBusy()}).
+ */
+final class ParallelDecoder {
+
+    private final ExecutorService executor;
+    private final List<Strategy> strategies;
+    /**
+     * Strategies that haven't returned yet from the last frame.
+     */
+    private final AtomicInteger running = new AtomicInteger();
+    /**
+     * The copy of the last frame the strategies read, reused across frames.
+     */
+    private byte[] frame = new byte[0];
+
+    /**
+     * @param hints
+     *            the hints for the readers; if
+     *            {@link DecodeHintType#INTEGRAL_IMAGE_BINARIZER} is present, it
+     *            replaces {@link HybridBinarizer} as the first strategy
+     */
+    ParallelDecoder(Map<DecodeHintType, ?> hints) {
+        final boolean integralImage = hints
+                .containsKey(DecodeHintType.INTEGRAL_IMAGE_BINARIZER);
+        strategies = new ArrayList<Strategy>(3);
+        strategies.add(new Strategy(hints) {
+            @Override
+            Binarizer binarize(LuminanceSource source) {
+                if (integralImage) {
+                    return new IntegralImageBinarizer(source, workspace);
+                }
+                return new HybridBinarizer(source, workspace);
+            }
+        });
+        strategies.add(new Strategy(hints) {
+            @Override
+            Binarizer binarize(LuminanceSource source) {
+                return new GlobalHistogramBinarizer(source);
+            }
+        });
+        strategies.add(new Strategy(hints) {
+            @Override
+            Binarizer binarize(LuminanceSource source) {
+                return new HybridBinarizer(source.invert(), workspace);
+            }
+        });
+        int threads = Math.min(strategies.size(), Runtime.getRuntime()
+                .availableProcessors());
+        executor = Executors.newFixedThreadPool(Math.max(threads, 1),
+                new ThreadFactory() {
+                    private int count;
+
+                    @Override
+                    public synchronized Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable,
+                                "ParallelDecoder-" + ++count);
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+    }
+
+    /**
+     * Runs every strategy on a copy of the given frame, and returns as soon as
+     * one of them decodes it, or once all of them failed to.
+     * 
+     * @param source
+     *            the frame, which can be reused as soon as this method returns
+     * @return the first result found, or <code>null</code> if no strategy
+     *         could decode the frame
+     * @throws InterruptedException
+     *             if the calling thread is interrupted while waiting
+     * @throws IllegalStateException
+     *             if strategies are still running on the previous frame
+     */
+    Result decode(LuminanceSource source) throws InterruptedException {
+        if (isBusy()) {
+            throw new IllegalStateException(
+                    "Still decoding the previous frame");
+        }
+        LuminanceSource copy = copyOf(source);
+        CompletionService<Result> completion = new ExecutorCompletionService<Result>(
+                executor);
+        running.set(strategies.size());
+        for (Strategy strategy : strategies) {
+            strategy.cancelled = false;
+            completion.submit(strategy.on(copy, running));
+        }
+        Result result = null;
+        try {
+            for (int i = 0; i < strategies.size() && result == null; i++) {
+                try {
+                    result = completion.take().get();
+                } catch (ExecutionException e) {
+                    // a strategy failed unexpectedly, try the others
+                }
+            }
+        } finally {
+            // the ones still running finish on the copy in the background
+            for (Strategy strategy : strategies) {
+                strategy.cancelled = true;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns whether strategies cancelled by the last call to
+     * {@link #decode(LuminanceSource)} are still finishing, in which case the
+     * next frame must be skipped.
+     * 
+     * @return <code>true</code> if a strategy is still running
+     */
+    boolean isBusy() {
+        return running.get() > 0;
+    }
+
+    private LuminanceSource copyOf(LuminanceSource source) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        int area = width * height;
+        if (frame.length < area) {
+            frame = new byte[area];
+        }
+        System.arraycopy(source.getMatrix(), 0, frame, 0, area);
+        return new PlanarYUVLuminanceSource(frame, width, height, 0, 0, width,
+                height, false);
+    }
+
+    /**
+     * Stops the pool's threads once they are done with the current frame.
+     */
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * A binarization strategy, together with the reader that decodes its
+     * output.
+     */
+    private abstract static class Strategy {
+
+        final BinarizerWorkspace workspace = new BinarizerWorkspace();
+        private final MultiFormatReader reader;
+        /**
+         * Set once another strategy decoded the current frame.
+         */
+        volatile boolean cancelled;
+
+        Strategy(Map<DecodeHintType, ?> hints) {
+            reader = new MultiFormatReader();
+            final ResultPointCallback callback = (ResultPointCallback) hints
+                    .get(DecodeHintType.NEED_RESULT_POINT_CALLBACK);
+            if (callback == null) {
+                reader.setHints(hints);
+            } else {
+                // points found after cancelling belong to a frame that was
+                // already decoded, they would only mislead the callback
+                Map<DecodeHintType, Object> own = new EnumMap<DecodeHintType, Object>(
+                        DecodeHintType.class);
+                own.putAll(hints);
+                own.put(DecodeHintType.NEED_RESULT_POINT_CALLBACK,
+                        new ResultPointCallback() {
+                            @Override
+                            public void foundPossibleResultPoint(
+                                    ResultPoint point) {
+                                if (!cancelled) {
+                                    callback.foundPossibleResultPoint(point);
+                                }
+                            }
+                        });
+                reader.setHints(own);
+            }
+        }
+
+        abstract Binarizer binarize(LuminanceSource source);
+
+        /**
+         * @param running
+         *            decremented once the strategy is done with the frame
+         */
+        Callable<Result> on(final LuminanceSource source,
+                final AtomicInteger running) {
+            return new Callable<Result>() {
+                @Override
+                public Result call() {
+                    try {
+                        if (cancelled) {
+                            return null;
+                        }
+                        Binarizer binarizer = binarize(source);
+                        if (cancelled) {
+                            return null;
+                        }
+                        return reader.decodeWithState(new BinaryBitmap(
+                                binarizer));
+                    } catch (ReaderException re) {
+                        return null;
+                    } finally {
+                        reader.reset();
+                        running.decrementAndGet();
+                    }
+                }
+            };
+        }
+    }
+
+}
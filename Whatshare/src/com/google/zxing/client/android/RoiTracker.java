@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2013 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.zxing.client.android;
+
+import android.graphics.Rect;
+
+import com.google.zxing.ResultPoint;
+import com.google.zxing.ResultPointCallback;
+
+/**
+ * Narrows the part of the framing rectangle that gets decoded down to where a
+ * barcode was last seen. The readers report the points they find (finder
+ * patterns, guard patterns) through this callback; the next frame is then
+ * cropped to the box around the most recent points, grown by a margin that
+ * leaves room for the rest of the code and for the hand moving. While a code
+ * is in view this typically decodes several times fewer pixels per frame.
+ *
+ * <p>
+ * After a few frames without new points, or a few failed decodes of the
+ * narrowed window, the whole framing rectangle is decoded again.
+ *
+ * <p>
+ * Points are forwarded to the wrapped callback in framing rectangle
+ * coordinates, whatever window they were found in. Readers may report points
+ * from several threads (see {@link ParallelDecoder}), hence the
+ * synchronization.
+ */
+final class RoiTracker implements ResultPointCallback {
+
+    /**
+     * How many of the most recent points the window is computed from.
+     */
+    private static final int MAX_POINTS = 12;
+    /**
+     * Points older than this many frames are ignored.
+     */
+    private static final int MAX_POINT_AGE = 3;
+    /**
+     * How many times in a row a narrowed window may fail to decode before the
+     * whole framing rectangle is tried again.
+     */
+    private static final int MAX_WINDOW_MISSES = 3;
+    /**
+     * The smallest margin around the points, as a fraction of the framing
+     * rectangle's smaller side.
+     */
+    private static final int MIN_MARGIN_DIVISOR = 6;
+
+    private final ResultPointCallback delegate;
+    private final float[] pointsX = new float[MAX_POINTS];
+    private final float[] pointsY = new float[MAX_POINTS];
+    private final int[] pointFrames = new int[MAX_POINTS];
+    private int pointCount;
+    private int nextPoint;
+    private int frame;
+    private int windowMisses;
+    private Rect window;
+
+    /**
+     * @param delegate
+     *            where to forward the points found, may be <code>null</code>
+     */
+    RoiTracker(ResultPointCallback delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void foundPossibleResultPoint(ResultPoint point) {
+        ResultPoint translated;
+        synchronized (this) {
+            float x = point.getX();
+            float y = point.getY();
+            if (window != null) {
+                x += window.left;
+                y += window.top;
+            }
+            pointsX[nextPoint] = x;
+            pointsY[nextPoint] = y;
+            pointFrames[nextPoint] = frame;
+            nextPoint = (nextPoint + 1) % MAX_POINTS;
+            if (pointCount < MAX_POINTS) {
+                pointCount++;
+            }
+            translated = window == null ? point : new ResultPoint(x, y);
+        }
+        if (delegate != null) {
+            delegate.foundPossibleResultPoint(translated);
+        }
+    }
+
+    /**
+     * Starts a new frame.
+     *
+     * @param width
+     *            the width of the framing rectangle in the preview frame
+     * @param height
+     *            the height of the framing rectangle in the preview frame
+     * @return the part of the framing rectangle to decode, relative to its top
+     *         left corner, or <code>null</code> to decode all of it
+     */
+    synchronized Rect nextWindow(int width, int height) {
+        frame++;
+        window = null;
+        if (windowMisses >= MAX_WINDOW_MISSES) {
+            windowMisses = 0;
+            return null;
+        }
+        float minX = Float.MAX_VALUE;
+        float minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE;
+        float maxY = -Float.MAX_VALUE;
+        boolean found = false;
+        for (int i = 0; i < pointCount; i++) {
+            if (frame - pointFrames[i] <= MAX_POINT_AGE) {
+                minX = Math.min(minX, pointsX[i]);
+                minY = Math.min(minY, pointsY[i]);
+                maxX = Math.max(maxX, pointsX[i]);
+                maxY = Math.max(maxY, pointsY[i]);
+                found = true;
+            }
+        }
+        if (!found) {
+            windowMisses = 0;
+            return null;
+        }
+        // Finder patterns sit inside the code's corners, and the code may
+        // have moved since: grow the box by half its larger side all around.
+        float margin = Math.max(Math.max(maxX - minX, maxY - minY) / 2,
+                Math.min(width, height) / MIN_MARGIN_DIVISOR);
+        int left = Math.max((int) (minX - margin), 0);
+        int top = Math.max((int) (minY - margin), 0);
+        int right = Math.min((int) (maxX + margin) + 1, width);
+        int bottom = Math.min((int) (maxY + margin) + 1, height);
+        if (left >= right || top >= bottom) {
+            return null;
+        }
+        if (left == 0 && top == 0 && right == width && bottom == height) {
+            return null;
+        }
+        window = new Rect(left, top, right, bottom);
+        return window;
+    }
+
+    /**
+     * Reports the outcome of decoding the window last returned by
+     * {@link #nextWindow(int, int)}.
+     *
+     * @param success
+     *            whether a barcode was found
+     */
+    synchronized void frameDecoded(boolean success) {
+        if (window == null) {
+            return;
+        }
+        if (success) {
+            windowMisses = 0;
+        } else {
+            windowMisses++;
+        }
+    }
+
+}
@@ -17,6 +17,7 @@
 package com.google.zxing.client.android.camera;
 
 import android.content.Context;
+import android.graphics.ImageFormat;
 import android.graphics.Point;
 import android.graphics.Rect;
 import android.hardware.Camera;
@@ -43,6 +44,10 @@ public final class CameraManager {
   private static final int MIN_FRAME_HEIGHT = 240;
   private static final int MAX_FRAME_WIDTH = 600;
   private static final int MAX_FRAME_HEIGHT = 400;
+  /**
+   * One frame being decoded, one waiting in the mailbox and one being filled by the camera.
+   */
+  private static final int PREVIEW_BUFFERS = 3;
 
   private final Context context;
   private final CameraConfigurationManager configManager;
@@ -55,15 +60,25 @@ public final class CameraManager {
   private int requestedFramingRectWidth;
   private int requestedFramingRectHeight;
   /**
-   * Preview frames are delivered here, which we pass on to the registered handler. Make sure to
-   * clear the handler so it will only receive one message.
+   * The buffers the camera fills with preview frames, and the one frames are cropped into.
+   */
+  private final PreviewBufferPool bufferPool;
+  /**
+   * The preview buffer the decode thread is working on, if any.
+   */
+  private byte[] decodingFrame;
+  /**
+   * Preview frames are delivered here, which we pass on to the mailbox and the registered handler.
    */
   private final PreviewCallback previewCallback;
+  private final FrameMailbox frameMailbox;
 
   public CameraManager(Context context) {
     this.context = context;
     this.configManager = new CameraConfigurationManager(context);
-    previewCallback = new PreviewCallback(configManager);
+    bufferPool = new PreviewBufferPool(PREVIEW_BUFFERS);
+    frameMailbox = new FrameMailbox();
+    previewCallback = new PreviewCallback(configManager, frameMailbox);
   }
 
   /**
@@ -141,6 +156,20 @@ public final class CameraManager {
   public synchronized void startPreview() {
     Camera theCamera = camera;
     if (theCamera != null && !previewing) {
+      Point cameraResolution = configManager.getCameraResolution();
+      int bitsPerPixel = ImageFormat.getBitsPerPixel(theCamera.getParameters().getPreviewFormat());
+      if (bitsPerPixel <= 0) {
+        // Go ahead and assume it's NV21, like buildLuminanceSource() does.
+        bitsPerPixel = ImageFormat.getBitsPerPixel(ImageFormat.NV21);
+      }
+      int bufferSize = cameraResolution.x * cameraResolution.y * bitsPerPixel / 8;
+      theCamera.setPreviewCallbackWithBuffer(previewCallback);
+      for (byte[] buffer : bufferPool.getPreviewBuffers(bufferSize)) {
+        // The one being decoded goes back to the camera once the decode thread is done with it.
+        if (buffer != decodingFrame) {
+          theCamera.addCallbackBuffer(buffer);
+        }
+      }
       theCamera.startPreview();
       previewing = true;
       autoFocusManager = new AutoFocusManager(context, camera);
@@ -156,8 +185,10 @@ public final class CameraManager {
       autoFocusManager = null;
     }
     if (camera != null && previewing) {
+      camera.setPreviewCallbackWithBuffer(null);
       camera.stopPreview();
       previewCallback.setHandler(null, 0);
+      frameMailbox.clear();
       previewing = false;
     }
   }
@@ -178,21 +209,78 @@ public final class CameraManager {
   }
 
   /**
-   * A single preview frame will be returned to the handler supplied. The data will arrive as byte[]
-   * in the message.obj field, with width and height encoded as message.arg1 and message.arg2,
-   * respectively.
+   * Starts delivering preview frames to the handler supplied, until {@link #stopPreviewFrames()}
+   * is called. The handler is sent a message, with width and height encoded as message.arg1 and
+   * message.arg2 respectively, whenever a frame is waiting; it must then get the frame from
+   * {@link #takePreviewFrame()}. Frames that arrive while the handler is still busy replace the
+   * waiting one, so it always gets the most recent frame.
    *
    * @param handler The handler to send the message to.
    * @param message The what field of the message to be sent.
    */
-  public synchronized void requestPreviewFrame(Handler handler, int message) {
-    Camera theCamera = camera;
-    if (theCamera != null && previewing) {
+  public synchronized void requestPreviewFrames(Handler handler, int message) {
+    if (camera != null && previewing) {
       previewCallback.setHandler(handler, message);
-      theCamera.setOneShotPreviewCallback(previewCallback);
     }
   }
 
+  /**
+   * Stops delivering preview frames; the camera keeps previewing.
+   */
+  public synchronized void stopPreviewFrames() {
+    previewCallback.setHandler(null, 0);
+    byte[] waiting = frameMailbox.clear();
+    if (waiting != null) {
+      releaseBuffer(waiting);
+    }
+  }
+
+  /**
+   * @return the most recent preview frame, or null if there is none; it must be handed back with
+   *         {@link #releasePreviewFrame(byte[])} once decoded
+   */
+  public synchronized byte[] takePreviewFrame() {
+    decodingFrame = frameMailbox.take();
+    return decodingFrame;
+  }
+
+  /**
+   * Gives a frame returned by {@link #takePreviewFrame()} back to the camera, to be filled again.
+   */
+  public synchronized void releasePreviewFrame(byte[] frame) {
+    decodingFrame = null;
+    frameMailbox.decoded();
+    releaseBuffer(frame);
+  }
+
+  private void releaseBuffer(byte[] frame) {
+    // Buffers allocated for a different preview size don't belong to the camera anymore.
+    if (camera != null && previewing && bufferPool.contains(frame)) {
+      camera.addCallbackBuffer(frame);
+    }
+  }
+
+  /**
+   * @return how many preview frames reached the mailbox since this object was created
+   */
+  public long getCapturedFrameCount() {
+    return frameMailbox.getCaptured();
+  }
+
+  /**
+   * @return how many preview frames were taken and decoded
+   */
+  public long getDecodedFrameCount() {
+    return frameMailbox.getDecoded();
+  }
+
+  /**
+   * @return how many preview frames were replaced by a newer one before being decoded
+   */
+  public long getDroppedFrameCount() {
+    return frameMailbox.getDropped();
+  }
+
   /**
    * Calculates the framing rect which the UI should draw to show the user where to place the
    * barcode. This target helps with alignment as well as forces the user to hold the device
@@ -285,7 +373,8 @@ public final class CameraManager {
 
   /**
    * A factory method to build the appropriate LuminanceSource object based on the format
-   * of the preview buffers, as described by Camera.Parameters.
+   * of the preview buffers, as described by Camera.Parameters. Only meant to be called from the
+   * decode thread: the source crops the frame into a buffer that is recycled on the next call.
    *
    * @param data A preview frame.
    * @param width The width of the image.
@@ -293,13 +382,39 @@ public final class CameraManager {
    * @return A PlanarYUVLuminanceSource instance.
    */
   public PlanarYUVLuminanceSource buildLuminanceSource(byte[] data, int width, int height) {
+    return buildLuminanceSource(data, width, height, null);
+  }
+
+  /**
+   * Like {@link #buildLuminanceSource(byte[], int, int)}, but only covers part of the framing
+   * rectangle.
+   *
+   * @param data A preview frame.
+   * @param width The width of the image.
+   * @param height The height of the image.
+   * @param window The part of {@link #getFramingRectInPreview()} to cover, relative to its top
+   *               left corner, or null for all of it.
+   * @return A PlanarYUVLuminanceSource instance.
+   */
+  public PlanarYUVLuminanceSource buildLuminanceSource(byte[] data, int width, int height,
+                                                       Rect window) {
     Rect rect = getFramingRectInPreview();
     if (rect == null) {
       return null;
     }
+    int left = rect.left;
+    int top = rect.top;
+    int cropWidth = rect.width();
+    int cropHeight = rect.height();
+    if (window != null) {
+      left += window.left;
+      top += window.top;
+      cropWidth = window.width();
+      cropHeight = window.height();
+    }
     // Go ahead and assume it's YUV rather than die.
-    return new PlanarYUVLuminanceSource(data, width, height, rect.left, rect.top,
-                                        rect.width(), rect.height(), false);
+    return new PlanarYUVLuminanceSource(data, width, height, left, top, cropWidth, cropHeight,
+                                        false, bufferPool.getMatrixBuffer(cropWidth * cropHeight));
   }
 
 }
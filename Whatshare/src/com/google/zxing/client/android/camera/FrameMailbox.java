@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2013 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.camera;
+
+/**
+ * A single slot holding the most recent preview frame that hasn't been decoded yet. The camera
+ * thread posts frames as they arrive, the decode thread takes whatever is newest when it becomes
+ * idle; a frame that is replaced before it's taken is stale and gets dropped, so the decoder never
+ * works through a backlog of old frames.
+ *
+ * Also counts frames for profiling. All methods are safe to call from any thread.
+ */
+final class FrameMailbox {
+
+  private byte[] latest;
+  private long captured;
+  private long decoded;
+  private long dropped;
+
+  /**
+   * @param frame a new preview frame
+   * @return the frame it replaces, which the caller must give back to the camera, or null if the
+   *         slot was empty, in which case the decode thread must be told a frame is waiting
+   */
+  synchronized byte[] post(byte[] frame) {
+    captured++;
+    byte[] stale = latest;
+    latest = frame;
+    if (stale != null) {
+      dropped++;
+    }
+    return stale;
+  }
+
+  /**
+   * @return the newest frame, or null if there is none; the slot is empty afterwards
+   */
+  synchronized byte[] take() {
+    byte[] frame = latest;
+    latest = null;
+    return frame;
+  }
+
+  /**
+   * Records that a frame returned by {@link #take()} has been decoded.
+   */
+  synchronized void decoded() {
+    decoded++;
+  }
+
+  /**
+   * Empties the slot, e.g. because the preview stopped.
+   *
+   * @return the frame that was waiting, or null
+   */
+  synchronized byte[] clear() {
+    byte[] frame = take();
+    if (frame != null) {
+      dropped++;
+    }
+    return frame;
+  }
+
+  synchronized long getCaptured() {
+    return captured;
+  }
+
+  synchronized long getDecoded() {
+    return decoded;
+  }
+
+  synchronized long getDropped() {
+    return dropped;
+  }
+
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2013 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.client.android.camera;
+
+/**
+ * The memory the preview loop needs: a small ring of buffers for the camera to fill with preview
+ * frames, and a buffer the cropped luminances of the frame being decoded are copied into. Both
+ * are kept across preview restarts and only reallocated when the preview size changes, so
+ * scanning allocates nothing per frame.
+ *
+ * Not thread safe; {@link CameraManager} guards the preview buffers, and the matrix buffer is
+ * only ever used by the decode thread.
+ */
+final class PreviewBufferPool {
+
+  private static final byte[][] NO_BUFFERS = new byte[0][];
+
+  private final int count;
+  private byte[][] previewBuffers;
+  private byte[] matrixBuffer;
+
+  /**
+   * @param count how many preview buffers to hand to the camera
+   */
+  PreviewBufferPool(int count) {
+    this.count = count;
+    previewBuffers = NO_BUFFERS;
+  }
+
+  /**
+   * @param size the size of a preview frame in bytes
+   * @return the preview buffers, reallocated if they were of a different size
+   */
+  byte[][] getPreviewBuffers(int size) {
+    if (previewBuffers.length == 0 || previewBuffers[0].length != size) {
+      previewBuffers = new byte[count][size];
+    }
+    return previewBuffers;
+  }
+
+  /**
+   * @return whether {@code buffer} is one of the current preview buffers
+   */
+  boolean contains(byte[] buffer) {
+    for (byte[] previewBuffer : previewBuffers) {
+      if (previewBuffer == buffer) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @param area the number of pixels in the decoded rectangle
+   * @return a buffer of at least {@code area} bytes
+   */
+  byte[] getMatrixBuffer(int area) {
+    if (matrixBuffer == null || matrixBuffer.length < area) {
+      matrixBuffer = new byte[area];
+    }
+    return matrixBuffer;
+  }
+
+}
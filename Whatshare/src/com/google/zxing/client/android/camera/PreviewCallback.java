@@ -20,18 +20,23 @@ import android.graphics.Point;
 import android.hardware.Camera;
 import android.os.Handler;
 import android.os.Message;
-import android.util.Log;
 
+/**
+ * Receives preview frames in buffers owned by {@link CameraManager} and posts them to the
+ * {@link FrameMailbox}, telling the decode handler only when the mailbox was empty. Frames that
+ * arrive while nobody is decoding, or that are superseded before being decoded, go straight back
+ * to the camera.
+ */
 final class PreviewCallback implements Camera.PreviewCallback {
 
-  private static final String TAG = PreviewCallback.class.getSimpleName();
-
   private final CameraConfigurationManager configManager;
+  private final FrameMailbox mailbox;
   private Handler previewHandler;
   private int previewMessage;
 
-  PreviewCallback(CameraConfigurationManager configManager) {
+  PreviewCallback(CameraConfigurationManager configManager, FrameMailbox mailbox) {
     this.configManager = configManager;
+    this.mailbox = mailbox;
   }
 
   void setHandler(Handler previewHandler, int previewMessage) {
@@ -44,12 +49,18 @@ final class PreviewCallback implements Camera.PreviewCallback {
     Point cameraResolution = configManager.getCameraResolution();
     Handler thePreviewHandler = previewHandler;
     if (cameraResolution != null && thePreviewHandler != null) {
-      Message message = thePreviewHandler.obtainMessage(previewMessage, cameraResolution.x,
-          cameraResolution.y, data);
-      message.sendToTarget();
-      previewHandler = null;
+      byte[] stale = mailbox.post(data);
+      if (stale == null) {
+        Message message = thePreviewHandler.obtainMessage(previewMessage, cameraResolution.x,
+            cameraResolution.y);
+        message.sendToTarget();
+      } else {
+        // The decoder is still busy and a newer frame is waiting, recycle the older one.
+        camera.addCallbackBuffer(stale);
+      }
     } else {
-      Log.d(TAG, "Got preview callback, but no handler or resolution available");
+      // Not decoding right now, e.g. while a result is shown.
+      camera.addCallbackBuffer(data);
     }
   }
 
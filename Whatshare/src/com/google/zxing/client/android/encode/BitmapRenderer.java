@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2013 ZXing authors
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.zxing.client.android.encode;
+
+import android.graphics.Bitmap;
+
+import com.google.zxing.common.BitMatrixRenderer;
+
+/**
+ * Draws what a {@link BitMatrixRenderer} renders into Android bitmaps, which
+ * the renderer itself can't depend on.
+ */
+public final class BitmapRenderer {
+
+    private BitmapRenderer() {
+    }
+
+    /**
+     * Renders a matrix into a new bitmap, one band of rows at a time.
+     * 
+     * @param renderer
+     *            a renderer that hasn't rendered any band yet
+     * @return a new bitmap of the renderer's size
+     */
+    public static Bitmap toBitmap(BitMatrixRenderer renderer) {
+        int width = renderer.getWidth();
+        Bitmap bitmap = Bitmap.createBitmap(width, renderer.getHeight(),
+                Bitmap.Config.ARGB_8888);
+        int[] band = renderer.createBandBuffer();
+        int rows;
+        while ((rows = renderer.nextBand(band)) > 0) {
+            bitmap.setPixels(band, 0, width, 0, renderer.getBandTop(), width,
+                    rows);
+        }
+        return bitmap;
+    }
+
+}
@@ -48,6 +48,7 @@ import com.google.zxing.client.result.AddressBookParsedResult;
 import com.google.zxing.client.result.ParsedResult;
 import com.google.zxing.client.result.ResultParser;
 import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.BitMatrixRenderer;
 
 /**
  * This class does the work of decoding the user's request and extracting all
@@ -59,9 +60,6 @@ final class QRCodeEncoder {
 
     private static final String TAG = QRCodeEncoder.class.getSimpleName();
 
-    private static final int WHITE = 0xFFFFFFFF;
-    private static final int BLACK = 0xFF000000;
-
     private final Activity activity;
     private String contents;
     private String displayContents;
@@ -341,28 +339,18 @@ final class QRCodeEncoder {
             hints.put(EncodeHintType.CHARACTER_SET, encoding);
         }
         MultiFormatWriter writer = new MultiFormatWriter();
+        // QR codes are encoded one pixel per module and scaled up while
+        // rendering, which draws exactly the same pixels
+        int size = format == BarcodeFormat.QR_CODE ? 0 : dimension;
         BitMatrix result;
         try {
-            result = writer.encode(contentsToEncode, format, dimension,
-                    dimension, hints);
+            result = writer.encode(contentsToEncode, format, size, size, hints);
         } catch (IllegalArgumentException iae) {
             // Unsupported format
             return null;
         }
-        int width = result.getWidth();
-        int height = result.getHeight();
-        int[] pixels = new int[width * height];
-        for (int y = 0; y < height; y++) {
-            int offset = y * width;
-            for (int x = 0; x < width; x++) {
-                pixels[offset + x] = result.get(x, y) ? BLACK : WHITE;
-            }
-        }
-
-        Bitmap bitmap = Bitmap.createBitmap(width, height,
-                Bitmap.Config.ARGB_8888);
-        bitmap.setPixels(pixels, 0, width, 0, 0, width, height);
-        return bitmap;
+        return BitmapRenderer.toBitmap(new BitMatrixRenderer(result,
+                dimension, dimension));
     }
 
     private static String guessAppropriateEncoding(CharSequence contents) {
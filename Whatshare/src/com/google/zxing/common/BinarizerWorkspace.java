@@ -0,0 +1,79 @@
+/*
+ * Copyright 2013 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.common;
+
+/**
+ * Scratch memory that a local thresholding Binarizer can recycle from one frame to the next, so
+ * that continuous scanning of equally sized frames does not allocate a new black point table and
+ * a new BitMatrix every time.
+ *
+ * A workspace is not thread safe and is meant to be owned by a single decode thread. Since the
+ * BitMatrix it hands out is overwritten by the next binarization, callers must be done with the
+ * previous frame's matrix before binarizing the next one, which is the natural order for a
+ * camera preview loop.
+ *
+ * @see HybridBinarizer#HybridBinarizer(com.google.zxing.LuminanceSource, BinarizerWorkspace)
+ * @see IntegralImageBinarizer#IntegralImageBinarizer(com.google.zxing.LuminanceSource, BinarizerWorkspace)
+ */
+public final class BinarizerWorkspace {
+
+  private static final int[] EMPTY = new int[0];
+
+  private int[] blackPoints;
+  private int[] integralImage;
+  private BitMatrix matrix;
+
+  public BinarizerWorkspace() {
+    blackPoints = EMPTY;
+    integralImage = EMPTY;
+  }
+
+  /**
+   * @param size the number of entries needed
+   * @return a buffer with at least {@code size} entries, whose contents are undefined
+   */
+  int[] getBlackPoints(int size) {
+    if (blackPoints.length < size) {
+      blackPoints = new int[size];
+    }
+    return blackPoints;
+  }
+
+  /**
+   * @param size the number of entries needed
+   * @return a buffer with at least {@code size} entries, whose contents are undefined
+   */
+  int[] getIntegralImage(int size) {
+    if (integralImage.length < size) {
+      integralImage = new int[size];
+    }
+    return integralImage;
+  }
+
+  /**
+   * @return a cleared BitMatrix of the requested size, reused when the size hasn't changed
+   */
+  BitMatrix getMatrix(int width, int height) {
+    if (matrix == null || matrix.getWidth() != width || matrix.getHeight() != height) {
+      matrix = new BitMatrix(width, height);
+    } else {
+      matrix.clear();
+    }
+    return matrix;
+  }
+
+}
@@ -25,6 +25,10 @@ public final class BitArray {
 
   private int[] bits;
   private int size;
+  // Where the bits change value, computed when first needed; any change to the bits makes them
+  // stale, which a negative count stands for.
+  private int[] transitions;
+  private int transitionCount = -1;
 
   public BitArray() {
     this.size = 0;
@@ -67,6 +71,7 @@ public final class BitArray {
    */
   public void set(int i) {
     bits[i >> 5] |= 1 << (i & 0x1F);
+    transitionCount = -1;
   }
 
   /**
@@ -76,6 +81,7 @@ public final class BitArray {
    */
   public void flip(int i) {
     bits[i >> 5] ^= 1 << (i & 0x1F);
+    transitionCount = -1;
   }
 
   /**
@@ -123,6 +129,53 @@ public final class BitArray {
     return result > size ? size : result;
   }
 
+  /**
+   * Lists the positions where the bits change value, a word at a time. The bit before the first
+   * one counts as unset, so {@code transitions[0]} is the first set bit, {@code transitions[1]}
+   * the first unset bit after it, and so on: set bits come in runs from {@code transitions[2k]}
+   * to {@code transitions[2k + 1]}, or to the end of the array for the last run if the number
+   * of transitions is odd.
+   *
+   * @param transitions where to write the positions, must hold {@link #getSize()} entries
+   * @return number of transitions written
+   */
+  public int getTransitions(int[] transitions) {
+    return getTransitions(bits, 0, 0, size, transitions);
+  }
+
+  /**
+   * Lists the transitions between bits {@code from} (inclusive) and {@code to} (exclusive) of
+   * the bits starting at {@code bits[offset]}, like {@link #getTransitions(int[])}, with bit
+   * {@code from - 1} counting as unset.
+   */
+  static int getTransitions(int[] bits, int offset, int from, int to, int[] transitions) {
+    if (from >= to) {
+      return 0;
+    }
+    int count = 0;
+    int firstWord = from >> 5;
+    int lastWord = (to - 1) >> 5;
+    int previous = 0;
+    for (int i = firstWord; i <= lastWord; i++) {
+      int currentBits = bits[offset + i];
+      if (i == firstWord) {
+        currentBits &= -1 << (from & 0x1F);
+      }
+      // Bit j of changes is set where bit j differs from bit j - 1
+      int changes = currentBits ^ ((currentBits << 1) | previous);
+      if (i == lastWord) {
+        changes &= -1 >>> (31 - ((to - 1) & 0x1F));
+      }
+      previous = currentBits >>> 31;
+      int base = i << 5;
+      while (changes != 0) {
+        transitions[count++] = base + Integer.numberOfTrailingZeros(changes);
+        changes &= changes - 1;
+      }
+    }
+    return count;
+  }
+
   /**
    * Sets a block of 32 bits, starting at bit i.
    *
@@ -132,6 +185,7 @@ public final class BitArray {
    */
   public void setBulk(int i, int newBits) {
     bits[i >> 5] = newBits;
+    transitionCount = -1;
   }
 
   /**
@@ -164,6 +218,7 @@ public final class BitArray {
       }
       bits[i] |= mask;
     }
+    transitionCount = -1;
   }
 
   /**
@@ -174,6 +229,7 @@ public final class BitArray {
     for (int i = 0; i < max; i++) {
       bits[i] = 0;
     }
+    transitionCount = -1;
   }
 
   /**
@@ -223,6 +279,7 @@ public final class BitArray {
       bits[size >> 5] |= 1 << (size & 0x1F);
     }
     size++;
+    transitionCount = -1;
   }
 
   /**
@@ -257,6 +314,7 @@ public final class BitArray {
       // it) but there is no problem since 0 XOR 0 == 0.
       bits[i] ^= other.bits[i];
     }
+    transitionCount = -1;
   }
 
   /**
@@ -282,9 +340,11 @@ public final class BitArray {
 
   /**
    * @return underlying array of ints. The first element holds the first 32 bits, and the least
-   *         significant bit is bit 0.
+   *         significant bit is bit 0. The caller may change them, so the runs are computed again
+   *         when next needed.
    */
   public int[] getBitArray() {
+    transitionCount = -1;
     return bits;
   }
 
@@ -300,6 +360,95 @@ public final class BitArray {
       }
     }
     bits = newBits;
+    if (transitionCount >= 0) {
+      reverseTransitions();
+    }
+  }
+
+  /**
+   * Turns the transitions of the bits into those of the reversed bits: a change between bits
+   * t - 1 and t becomes one at size - t. The first set bit at 0, if any, has no counterpart,
+   * while a last run of set bits becomes a first one starting at 0.
+   */
+  private void reverseTransitions() {
+    int[] transitions = this.transitions;
+    int count = transitionCount;
+    boolean endsSet = (count & 0x01) == 1;
+    for (int i = 0, j = count - 1; i <= j; i++, j--) {
+      int t = transitions[i];
+      transitions[i] = size - transitions[j];
+      transitions[j] = size - t;
+    }
+    if (count > 0 && transitions[count - 1] == size) {
+      count--;
+    }
+    if (endsSet) {
+      System.arraycopy(transitions, 0, transitions, 1, count);
+      transitions[0] = 0;
+      count++;
+    }
+    transitionCount = count;
+  }
+
+  /**
+   * The bits as runs of equal values: run 0 is the unset bits at the start of the array, which
+   * may be empty, and runs alternate from there, so runs of set bits have odd indices. The runs
+   * are computed once, a word at a time, and kept until the bits change, so that all the readers
+   * looking at the same row share them.
+   *
+   * @return number of runs, the last of which ends at {@link #getSize()}
+   */
+  public int getRunCount() {
+    updateRuns();
+    return transitionCount + 1;
+  }
+
+  /**
+   * @param i bit to look for; bits from {@link #getSize()} on count as part of the last run
+   * @return index of the run holding bit i, odd iff bit i is set
+   */
+  public int getRun(int i) {
+    updateRuns();
+    int[] transitions = this.transitions;
+    // Runs begin after each transition: count the transitions up to bit i.
+    int low = 0;
+    int high = transitionCount;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (transitions[middle] <= i) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * @param run index of a run, less than {@link #getRunCount()}
+   * @return first bit of the run
+   */
+  public int getRunStart(int run) {
+    updateRuns();
+    return run == 0 ? 0 : transitions[run - 1];
+  }
+
+  /**
+   * @param run index of a run, less than {@link #getRunCount()}
+   * @return the bit after the last one of the run
+   */
+  public int getRunEnd(int run) {
+    updateRuns();
+    return run < transitionCount ? transitions[run] : size;
+  }
+
+  private void updateRuns() {
+    if (transitionCount < 0) {
+      if (transitions == null || transitions.length < size) {
+        transitions = new int[size];
+      }
+      transitionCount = getTransitions(bits, 0, 0, size, transitions);
+    }
   }
 
   private static int[] makeArray(int size) {
@@ -76,6 +76,29 @@ public final class BitMatrix {
     bits[offset] |= 1 << (x & 0x1f);
   }
 
+  /**
+   * <p>Sets up to eight consecutive bits of a row at once: bit i of {@code rowBits} (counting from
+   * the least significant one) is ORed into column {@code x + i}. Bits already set stay set.</p>
+   *
+   * @param x The column of the first bit
+   * @param y The row
+   * @param rowBits The bits to set, only the lowest 8 are used; columns past the end of the row
+   *                must not be set
+   */
+  public void setByte(int x, int y, int rowBits) {
+    rowBits &= 0xFF;
+    int offset = y * rowSize + (x >> 5);
+    int shift = x & 0x1f;
+    bits[offset] |= rowBits << shift;
+    if (shift > 24) {
+      // The byte straddles two ints.
+      int highBits = rowBits >>> (32 - shift);
+      if (highBits != 0) {
+        bits[offset + 1] |= highBits;
+      }
+    }
+  }
+
   /**
    * <p>Flips the given bit.</p>
    *
@@ -144,6 +167,22 @@ public final class BitMatrix {
     return row;
   }
 
+  /**
+   * Lists the positions where the bits of a row change value between {@code left} (inclusive)
+   * and {@code right} (exclusive), without copying the row, like
+   * {@link BitArray#getTransitions(int[])}: the bit at {@code left - 1} counts as unset, so the
+   * transitions at even indices start runs of set bits and those at odd indices end them.
+   *
+   * @param y The row to read
+   * @param left The first column to read
+   * @param right The column after the last one to read
+   * @param transitions where to write the positions, must hold {@code right - left} entries
+   * @return number of transitions written
+   */
+  public int getRowTransitions(int y, int left, int right, int[] transitions) {
+    return BitArray.getTransitions(bits, y * rowSize, left, right, transitions);
+  }
+
   /**
    * @param y row to set
    * @param row {@link BitArray} to copy from
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2013 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.common;
+
+import java.util.Arrays;
+
+/**
+ * Renders a {@link BitMatrix} as ARGB pixels, set bits black and the rest white, one band of
+ * identical rows at a time.
+ *
+ * Each bit becomes a square of pixels as large as fits in the requested size, centered like the
+ * writers center their output, so a matrix encoded at module resolution (a size of 0 for
+ * {@code QRCodeWriter}) renders to the same pixels as the matrix encoded at full size. Only the
+ * first row of a band is rendered, one run of bits at a time; the others are copies of it, and
+ * the pixels never need to be held all at once.
+ *
+ * Not thread safe.
+ */
+public final class BitMatrixRenderer {
+
+  public static final int BLACK = 0xFF000000;
+  public static final int WHITE = 0xFFFFFFFF;
+
+  // Rows in a band buffer at least, for matrices that are already at full size.
+  private static final int MIN_BAND_ROWS = 16;
+
+  private final BitMatrix matrix;
+  private final int width;
+  private final int height;
+  private final int scale;
+  private final int left;
+  private final int top;
+  private BitArray row;
+  private BitArray nextRow;
+  private int bandTop;
+  private int nextY;
+
+  /**
+   * @param matrix the bits to render
+   * @param width requested width in pixels, grown to the matrix's width if smaller
+   * @param height requested height in pixels, grown to the matrix's height if smaller
+   */
+  public BitMatrixRenderer(BitMatrix matrix, int width, int height) {
+    this.matrix = matrix;
+    int matrixWidth = matrix.getWidth();
+    int matrixHeight = matrix.getHeight();
+    this.width = Math.max(width, matrixWidth);
+    this.height = Math.max(height, matrixHeight);
+    scale = Math.min(this.width / matrixWidth, this.height / matrixHeight);
+    left = (this.width - matrixWidth * scale) / 2;
+    top = (this.height - matrixHeight * scale) / 2;
+    row = new BitArray(matrixWidth);
+    nextRow = new BitArray(matrixWidth);
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  /**
+   * @return how many pixels wide and high each bit of the matrix is rendered
+   */
+  public int getScale() {
+    return scale;
+  }
+
+  /**
+   * @return the first row of the band last returned by {@link #nextBand(int[])}
+   */
+  public int getBandTop() {
+    return bandTop;
+  }
+
+  /**
+   * @return a buffer for {@link #nextBand(int[])} large enough for a row of the matrix to be
+   *         rendered in one band
+   */
+  public int[] createBandBuffer() {
+    return new int[width * Math.min(Math.max(scale, MIN_BAND_ROWS), height)];
+  }
+
+  /**
+   * Renders the next band of identical rows, at most as many as fit in {@code pixels}.
+   *
+   * @param pixels where to write the band, {@link #getWidth()} pixels per row
+   * @return the number of rows rendered, starting at {@link #getBandTop()}, or 0 when all rows
+   *         have been rendered
+   */
+  public int nextBand(int[] pixels) {
+    int maxRows = pixels.length / width;
+    if (maxRows == 0) {
+      throw new IllegalArgumentException("Buffer can't hold a row of " + width + " pixels");
+    }
+    if (nextY >= height) {
+      return 0;
+    }
+    bandTop = nextY;
+    int matrixY = toMatrixY(nextY);
+    if (matrixY < 0) {
+      Arrays.fill(pixels, 0, width, WHITE);
+    } else {
+      row = matrix.getRow(matrixY, row);
+      renderRow(row, pixels);
+    }
+
+    // Extend the band as long as the rows below show the same bits.
+    int end = nextY + 1;
+    int limit = Math.min(nextY + maxRows, height);
+    while (end < limit) {
+      int y = toMatrixY(end);
+      if (y != matrixY) {
+        if (y < 0 || matrixY < 0) {
+          break;
+        }
+        nextRow = matrix.getRow(y, nextRow);
+        if (!Arrays.equals(row.getBitArray(), nextRow.getBitArray())) {
+          break;
+        }
+        matrixY = y;
+      }
+      end++;
+    }
+    int rows = end - nextY;
+    for (int copied = 1; copied < rows; copied <<= 1) {
+      int length = Math.min(copied, rows - copied) * width;
+      System.arraycopy(pixels, 0, pixels, copied * width, length);
+    }
+    nextY = end;
+    return rows;
+  }
+
+  /**
+   * Renders all rows.
+   *
+   * @return {@link #getWidth()} times {@link #getHeight()} pixels, row after row
+   */
+  public int[] render() {
+    int[] pixels = new int[width * height];
+    int[] band = createBandBuffer();
+    int rows;
+    while ((rows = nextBand(band)) > 0) {
+      System.arraycopy(band, 0, pixels, bandTop * width, rows * width);
+    }
+    return pixels;
+  }
+
+  /**
+   * @return the row of the matrix shown by row y of the pixels, or -1 in the margins
+   */
+  private int toMatrixY(int y) {
+    int offset = y - top;
+    if (offset < 0 || offset >= matrix.getHeight() * scale) {
+      return -1;
+    }
+    return offset / scale;
+  }
+
+  private void renderRow(BitArray bits, int[] pixels) {
+    int size = bits.getSize();
+    int x = 0;
+    int pixelX = 0;
+    while (x < size) {
+      int nextSet = bits.getNextSet(x);
+      int start = left + nextSet * scale;
+      Arrays.fill(pixels, pixelX, start, WHITE);
+      if (nextSet == size) {
+        pixelX = start;
+        break;
+      }
+      x = bits.getNextUnset(nextSet);
+      pixelX = left + x * scale;
+      Arrays.fill(pixels, start, pixelX, BLACK);
+    }
+    Arrays.fill(pixels, pixelX, width, WHITE);
+  }
+
+}
@@ -35,6 +35,9 @@ import com.google.zxing.NotFoundException;
  *
  * This Binarizer is the default for the unit tests and the recommended class for library users.
  *
+ * Continuous scan clients can pass a {@link BinarizerWorkspace} to recycle the black point table
+ * and the resulting BitMatrix across frames instead of allocating them for every frame.
+ *
  * @author dswitkin@google.com (Daniel Switkin)
  */
 public final class HybridBinarizer extends GlobalHistogramBinarizer {
@@ -47,10 +50,22 @@ public final class HybridBinarizer extends GlobalHistogramBinarizer {
   private static final int MINIMUM_DIMENSION = BLOCK_SIZE * 5;
   private static final int MIN_DYNAMIC_RANGE = 24;
 
+  private final BinarizerWorkspace workspace;
   private BitMatrix matrix;
 
   public HybridBinarizer(LuminanceSource source) {
+    this(source, null);
+  }
+
+  /**
+   * @param source The LuminanceSource this Binarizer will operate on.
+   * @param workspace Buffers to reuse, or null to allocate new ones. The BitMatrix returned by
+   *                  {@link #getBlackMatrix()} belongs to the workspace and is overwritten the
+   *                  next time a binarizer sharing it computes its matrix.
+   */
+  public HybridBinarizer(LuminanceSource source, BinarizerWorkspace workspace) {
     super(source);
+    this.workspace = workspace;
   }
 
   /**
@@ -76,10 +91,29 @@ public final class HybridBinarizer extends GlobalHistogramBinarizer {
       if ((height & BLOCK_SIZE_MASK) != 0) {
         subHeight++;
       }
-      int[][] blackPoints = calculateBlackPoints(luminances, subWidth, subHeight, width, height);
-
-      BitMatrix newMatrix = new BitMatrix(width, height);
-      calculateThresholdForBlock(luminances, subWidth, subHeight, width, height, blackPoints, newMatrix);
+      // The black points table is followed by the luminance range of each block, see
+      // calculateBlackPoints().
+      int[] blackPoints;
+      BitMatrix newMatrix;
+      if (workspace == null) {
+        blackPoints = new int[2 * subWidth * subHeight];
+        newMatrix = new BitMatrix(width, height);
+      } else {
+        blackPoints = workspace.getBlackPoints(2 * subWidth * subHeight);
+        newMatrix = workspace.getMatrix(width, height);
+      }
+      // Threshold each row of blocks as soon as the black points of its 5x5 neighborhood are known,
+      // i.e. two block rows behind the black point computation, while its luminances are still in
+      // the cache, instead of making a second pass over the whole image.
+      int thresholdRow = 0;
+      for (int y = 0; y < subHeight; y++) {
+        calculateBlackPoints(luminances, y, subWidth, subHeight, width, height, blackPoints);
+        while (thresholdRow < subHeight && cap(thresholdRow, 2, subHeight - 3) + 2 <= y) {
+          calculateThresholdForBlock(luminances, thresholdRow, subWidth, subHeight, width, height,
+              blackPoints, newMatrix);
+          thresholdRow++;
+        }
+      }
       matrix = newMatrix;
     } else {
       // If the image is too small, fall back to the global histogram approach.
@@ -88,45 +122,62 @@ public final class HybridBinarizer extends GlobalHistogramBinarizer {
     return matrix;
   }
 
+  /**
+   * The new Binarizer never shares this one's workspace, since callers typically keep using the
+   * original matrix while working on a cropped or rotated copy.
+   */
   @Override
   public Binarizer createBinarizer(LuminanceSource source) {
     return new HybridBinarizer(source);
   }
 
   /**
-   * For each block in the image, calculate the average black point using a 5x5 grid
+   * For each block in the given row of blocks, calculate the average black point using a 5x5 grid
    * of the blocks around it. Also handles the corner cases (fractional blocks are computed based
    * on the last pixels in the row/column which are also used in the previous block).
    */
   private static void calculateThresholdForBlock(byte[] luminances,
+                                                 int y,
                                                  int subWidth,
                                                  int subHeight,
                                                  int width,
                                                  int height,
-                                                 int[][] blackPoints,
+                                                 int[] blackPoints,
                                                  BitMatrix matrix) {
-    for (int y = 0; y < subHeight; y++) {
-      int yoffset = y << BLOCK_SIZE_POWER;
-      int maxYOffset = height - BLOCK_SIZE;
-      if (yoffset > maxYOffset) {
-        yoffset = maxYOffset;
+    int yoffset = y << BLOCK_SIZE_POWER;
+    int maxYOffset = height - BLOCK_SIZE;
+    if (yoffset > maxYOffset) {
+      yoffset = maxYOffset;
+    }
+    int top = cap(y, 2, subHeight - 3);
+    for (int x = 0; x < subWidth; x++) {
+      int xoffset = x << BLOCK_SIZE_POWER;
+      int maxXOffset = width - BLOCK_SIZE;
+      if (xoffset > maxXOffset) {
+        xoffset = maxXOffset;
+      }
+      int left = cap(x, 2, subWidth - 3);
+      int sum = 0;
+      for (int z = -2; z <= 2; z++) {
+        int blackRow = (top + z) * subWidth + left;
+        sum += blackPoints[blackRow - 2] + blackPoints[blackRow - 1] + blackPoints[blackRow] +
+            blackPoints[blackRow + 1] + blackPoints[blackRow + 2];
       }
-      for (int x = 0; x < subWidth; x++) {
-        int xoffset = x << BLOCK_SIZE_POWER;
-        int maxXOffset = width - BLOCK_SIZE;
-        if (xoffset > maxXOffset) {
-          xoffset = maxXOffset;
+      int average = sum / 25;
+      int range = blackPoints[(subHeight + y) * subWidth + x];
+      if (range >= 0) {
+        // A low contrast block lying entirely on one side of the threshold needs no per-pixel work.
+        if ((range & 0xFF) > average) {
+          continue;
         }
-        int left = cap(x, 2, subWidth - 3);
-        int top = cap(y, 2, subHeight - 3);
-        int sum = 0;
-        for (int z = -2; z <= 2; z++) {
-          int[] blackRow = blackPoints[top + z];
-          sum += blackRow[left - 2] + blackRow[left - 1] + blackRow[left] + blackRow[left + 1] + blackRow[left + 2];
+        if ((range >> 8) <= average) {
+          for (int yy = 0; yy < BLOCK_SIZE; yy++) {
+            matrix.setByte(xoffset, yoffset + yy, 0xFF);
+          }
+          continue;
         }
-        int average = sum / 25;
-        thresholdBlock(luminances, xoffset, yoffset, average, width, matrix);
       }
+      thresholdBlock(luminances, xoffset, yoffset, average, width, matrix);
     }
   }
 
@@ -135,7 +186,8 @@ public final class HybridBinarizer extends GlobalHistogramBinarizer {
   }
 
   /**
-   * Applies a single threshold to a block of pixels.
+   * Applies a single threshold to a block of pixels. Each row of the block is packed into a byte
+   * and stored into the matrix at once rather than setting its bits one at a time.
    */
   private static void thresholdBlock(byte[] luminances,
                                      int xoffset,
@@ -144,94 +196,101 @@ public final class HybridBinarizer extends GlobalHistogramBinarizer {
                                      int stride,
                                      BitMatrix matrix) {
     for (int y = 0, offset = yoffset * stride + xoffset; y < BLOCK_SIZE; y++, offset += stride) {
+      int rowBits = 0;
       for (int x = 0; x < BLOCK_SIZE; x++) {
         // Comparison needs to be <= so that black == 0 pixels are black even if the threshold is 0.
-        if ((luminances[offset + x] & 0xFF) <= threshold) {
-          matrix.set(xoffset + x, yoffset + y);
-        }
+        // threshold - luminance is non-negative exactly when the pixel is black, so the inverted
+        // sign bit is the pixel's bit, without a branch.
+        rowBits |= (~(threshold - (luminances[offset + x] & 0xFF)) >>> 31) << x;
       }
+      matrix.setByte(xoffset, yoffset + y, rowBits);
     }
   }
 
   /**
-   * Calculates a single black point for each block of pixels and saves it away.
+   * Calculates a single black point for each block of pixels in the given row of blocks and saves
+   * it away in {@code blackPoints}, in row-major order with {@code subWidth} entries per row. Rows
+   * must be calculated in order, since each one looks at the row above it.
+   *
+   * The second half of {@code blackPoints} receives, for each block, {@code (max << 8) | min} of its
+   * luminances if the block was fully scanned because of its low dynamic range, or -1 otherwise.
    * See the following thread for a discussion of this algorithm:
    *  http://groups.google.com/group/zxing/browse_thread/thread/d06efa2c35a7ddc0
    */
-  private static int[][] calculateBlackPoints(byte[] luminances,
-                                              int subWidth,
-                                              int subHeight,
-                                              int width,
-                                              int height) {
-    int[][] blackPoints = new int[subHeight][subWidth];
-    for (int y = 0; y < subHeight; y++) {
-      int yoffset = y << BLOCK_SIZE_POWER;
-      int maxYOffset = height - BLOCK_SIZE;
-      if (yoffset > maxYOffset) {
-        yoffset = maxYOffset;
+  private static void calculateBlackPoints(byte[] luminances,
+                                           int y,
+                                           int subWidth,
+                                           int subHeight,
+                                           int width,
+                                           int height,
+                                           int[] blackPoints) {
+    int yoffset = y << BLOCK_SIZE_POWER;
+    int maxYOffset = height - BLOCK_SIZE;
+    if (yoffset > maxYOffset) {
+      yoffset = maxYOffset;
+    }
+    for (int x = 0; x < subWidth; x++) {
+      int xoffset = x << BLOCK_SIZE_POWER;
+      int maxXOffset = width - BLOCK_SIZE;
+      if (xoffset > maxXOffset) {
+        xoffset = maxXOffset;
       }
-      for (int x = 0; x < subWidth; x++) {
-        int xoffset = x << BLOCK_SIZE_POWER;
-        int maxXOffset = width - BLOCK_SIZE;
-        if (xoffset > maxXOffset) {
-          xoffset = maxXOffset;
-        }
-        int sum = 0;
-        int min = 0xFF;
-        int max = 0;
-        for (int yy = 0, offset = yoffset * width + xoffset; yy < BLOCK_SIZE; yy++, offset += width) {
-          for (int xx = 0; xx < BLOCK_SIZE; xx++) {
-            int pixel = luminances[offset + xx] & 0xFF;
-            sum += pixel;
-            // still looking for good contrast
-            if (pixel < min) {
-              min = pixel;
-            }
-            if (pixel > max) {
-              max = pixel;
-            }
+      int sum = 0;
+      int min = 0xFF;
+      int max = 0;
+      for (int yy = 0, offset = yoffset * width + xoffset; yy < BLOCK_SIZE; yy++, offset += width) {
+        for (int xx = 0; xx < BLOCK_SIZE; xx++) {
+          int pixel = luminances[offset + xx] & 0xFF;
+          sum += pixel;
+          // still looking for good contrast
+          if (pixel < min) {
+            min = pixel;
           }
-          // short-circuit min/max tests once dynamic range is met
-          if (max - min > MIN_DYNAMIC_RANGE) {
-            // finish the rest of the rows quickly
-            for (yy++, offset += width; yy < BLOCK_SIZE; yy++, offset += width) {
-              for (int xx = 0; xx < BLOCK_SIZE; xx++) {
-                sum += luminances[offset + xx] & 0xFF;
-              }
+          if (pixel > max) {
+            max = pixel;
+          }
+        }
+        // short-circuit min/max tests once dynamic range is met
+        if (max - min > MIN_DYNAMIC_RANGE) {
+          // finish the rest of the rows quickly
+          for (yy++, offset += width; yy < BLOCK_SIZE; yy++, offset += width) {
+            for (int xx = 0; xx < BLOCK_SIZE; xx++) {
+              sum += luminances[offset + xx] & 0xFF;
             }
           }
         }
+      }
 
-        // The default estimate is the average of the values in the block.
-        int average = sum >> (BLOCK_SIZE_POWER * 2);
-        if (max - min <= MIN_DYNAMIC_RANGE) {
-          // If variation within the block is low, assume this is a block with only light or only
-          // dark pixels. In that case we do not want to use the average, as it would divide this
-          // low contrast area into black and white pixels, essentially creating data out of noise.
-          //
-          // The default assumption is that the block is light/background. Since no estimate for
-          // the level of dark pixels exists locally, use half the min for the block.
-          average = min >> 1;
-
-          if (y > 0 && x > 0) {
-            // Correct the "white background" assumption for blocks that have neighbors by comparing
-            // the pixels in this block to the previously calculated black points. This is based on
-            // the fact that dark barcode symbology is always surrounded by some amount of light
-            // background for which reasonable black point estimates were made. The bp estimated at
-            // the boundaries is used for the interior.
-
-            // The (min < bp) is arbitrary but works better than other heuristics that were tried.
-            int averageNeighborBlackPoint = (blackPoints[y - 1][x] + (2 * blackPoints[y][x - 1]) +
-                blackPoints[y - 1][x - 1]) >> 2;
-            if (min < averageNeighborBlackPoint) {
-              average = averageNeighborBlackPoint;
-            }
+      // The default estimate is the average of the values in the block.
+      int average = sum >> (BLOCK_SIZE_POWER * 2);
+      if (max - min <= MIN_DYNAMIC_RANGE) {
+        // If variation within the block is low, assume this is a block with only light or only
+        // dark pixels. In that case we do not want to use the average, as it would divide this
+        // low contrast area into black and white pixels, essentially creating data out of noise.
+        //
+        // The default assumption is that the block is light/background. Since no estimate for
+        // the level of dark pixels exists locally, use half the min for the block.
+        average = min >> 1;
+
+        if (y > 0 && x > 0) {
+          // Correct the "white background" assumption for blocks that have neighbors by comparing
+          // the pixels in this block to the previously calculated black points. This is based on
+          // the fact that dark barcode symbology is always surrounded by some amount of light
+          // background for which reasonable black point estimates were made. The bp estimated at
+          // the boundaries is used for the interior.
+
+          // The (min < bp) is arbitrary but works better than other heuristics that were tried.
+          int above = (y - 1) * subWidth + x;
+          int averageNeighborBlackPoint = (blackPoints[above] + (2 * blackPoints[above + subWidth - 1]) +
+              blackPoints[above - 1]) >> 2;
+          if (min < averageNeighborBlackPoint) {
+            average = averageNeighborBlackPoint;
           }
         }
-        blackPoints[y][x] = average;
       }
+      blackPoints[y * subWidth + x] = average;
+      blackPoints[(y + subHeight) * subWidth + x] = max - min <= MIN_DYNAMIC_RANGE ? (max << 8) | min : -1;
     }
-    return blackPoints;
   }
 
 }
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2013 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.common;
+
+import com.google.zxing.Binarizer;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+
+/**
+ * This class implements Bradley and Roth's adaptive thresholding: a pixel is black when it is
+ * darker than the mean of a square window centered on it by more than a fixed fraction. The window
+ * means come from a summed-area table (integral image), so every pixel gets its own threshold
+ * at a constant cost regardless of the window size.
+ *
+ * Compared to HybridBinarizer, which shares one threshold between the 64 pixels of a block and
+ * averages it over a 5x5 block neighborhood, the threshold follows the lighting smoothly, which
+ * helps with unevenly lit screens such as a QR code displayed on a monitor or a phone.
+ *
+ * Like HybridBinarizer, this class extends GlobalHistogramBinarizer and only replaces the 2D
+ * approach; 1D readers keep using the per-row histogram.
+ *
+ * See D. Bradley, G. Roth, "Adaptive Thresholding Using the Integral Image", Journal of Graphics
+ * Tools 12(2), 2007.
+ */
+public final class IntegralImageBinarizer extends GlobalHistogramBinarizer {
+
+  // The window is 1/8 of the larger image dimension, as suggested by Bradley and Roth.
+  private static final int WINDOW_FRACTION_POWER = 3;
+  private static final int MINIMUM_HALF_WINDOW = 4;
+  private static final int MINIMUM_DIMENSION = 2 * MINIMUM_HALF_WINDOW + 1;
+  // A pixel is black if it is at most 7/8 of its window's mean, i.e. darker by 12.5% or more.
+  private static final int THRESHOLD_NUMERATOR = 7;
+  private static final int THRESHOLD_DENOMINATOR_POWER = 3;
+
+  private final BinarizerWorkspace workspace;
+  private BitMatrix matrix;
+
+  public IntegralImageBinarizer(LuminanceSource source) {
+    this(source, null);
+  }
+
+  /**
+   * @param source The LuminanceSource this Binarizer will operate on.
+   * @param workspace Buffers to reuse, or null to allocate new ones. The BitMatrix returned by
+   *                  {@link #getBlackMatrix()} belongs to the workspace and is overwritten the
+   *                  next time a binarizer sharing it computes its matrix.
+   */
+  public IntegralImageBinarizer(LuminanceSource source, BinarizerWorkspace workspace) {
+    super(source);
+    this.workspace = workspace;
+  }
+
+  @Override
+  public BitMatrix getBlackMatrix() throws NotFoundException {
+    if (matrix != null) {
+      return matrix;
+    }
+    LuminanceSource source = getLuminanceSource();
+    int width = source.getWidth();
+    int height = source.getHeight();
+    if (width >= MINIMUM_DIMENSION && height >= MINIMUM_DIMENSION) {
+      byte[] luminances = source.getMatrix();
+      int integralSize = (width + 1) * (height + 1);
+      int[] integral;
+      BitMatrix newMatrix;
+      if (workspace == null) {
+        integral = new int[integralSize];
+        newMatrix = new BitMatrix(width, height);
+      } else {
+        integral = workspace.getIntegralImage(integralSize);
+        newMatrix = workspace.getMatrix(width, height);
+      }
+      calculateIntegralImage(luminances, width, height, integral);
+      int halfWindow = Math.max(width, height) >> (WINDOW_FRACTION_POWER + 1);
+      if (halfWindow < MINIMUM_HALF_WINDOW) {
+        halfWindow = MINIMUM_HALF_WINDOW;
+      }
+      threshold(luminances, width, height, halfWindow, integral, newMatrix);
+      matrix = newMatrix;
+    } else {
+      // If the image is too small, fall back to the global histogram approach.
+      matrix = super.getBlackMatrix();
+    }
+    return matrix;
+  }
+
+  /**
+   * The new Binarizer never shares this one's workspace, since callers typically keep using the
+   * original matrix while working on a cropped or rotated copy.
+   */
+  @Override
+  public Binarizer createBinarizer(LuminanceSource source) {
+    return new IntegralImageBinarizer(source);
+  }
+
+  /**
+   * Fills {@code integral}, a {@code (width + 1) x (height + 1)} row-major table, so that entry
+   * {@code (x, y)} holds the sum of all luminances above and to the left of pixel {@code (x, y)}.
+   * The first row and column are zero, which spares the lookups any bounds checks.
+   *
+   * The sums of large images overflow an int, but the arithmetic wraps around consistently, so
+   * the difference taken for a window is still exact as long as the window's own sum fits.
+   */
+  private static void calculateIntegralImage(byte[] luminances, int width, int height, int[] integral) {
+    int stride = width + 1;
+    for (int x = 0; x < stride; x++) {
+      integral[x] = 0;
+    }
+    for (int y = 0; y < height; y++) {
+      int offset = y * width;
+      int above = y * stride;
+      int current = above + stride;
+      integral[current] = 0;
+      int rowSum = 0;
+      for (int x = 0; x < width; x++) {
+        rowSum += luminances[offset + x] & 0xFF;
+        integral[current + x + 1] = integral[above + x + 1] + rowSum;
+      }
+    }
+  }
+
+  /**
+   * Compares each pixel with the mean of the window around it, clipped to the image, and writes
+   * the result 32 pixels at a time.
+   */
+  private static void threshold(byte[] luminances,
+                                int width,
+                                int height,
+                                int halfWindow,
+                                int[] integral,
+                                BitMatrix matrix) {
+    int stride = width + 1;
+    BitArray row = new BitArray(width);
+    int[] rowWords = row.getBitArray();
+    for (int y = 0; y < height; y++) {
+      int top = Math.max(y - halfWindow, 0);
+      int bottom = Math.min(y + halfWindow + 1, height);
+      int topOffset = top * stride;
+      int bottomOffset = bottom * stride;
+      int windowHeight = bottom - top;
+      int offset = y * width;
+      for (int x32 = 0; x32 < rowWords.length; x32++) {
+        int word = 0;
+        int start = x32 << 5;
+        int end = Math.min(start + 32, width);
+        for (int x = start; x < end; x++) {
+          int left = Math.max(x - halfWindow, 0);
+          int right = Math.min(x + halfWindow + 1, width);
+          int count = (right - left) * windowHeight;
+          int sum = integral[bottomOffset + right] - integral[bottomOffset + left] -
+              integral[topOffset + right] + integral[topOffset + left];
+          int pixel = luminances[offset + x] & 0xFF;
+          // pixel <= 7/8 * sum / count, without the division; <= keeps black == 0 pixels black.
+          // Both products overflow an int once the window passes about a million pixels.
+          if (((long) pixel * count) << THRESHOLD_DENOMINATOR_POWER <= (long) sum * THRESHOLD_NUMERATOR) {
+            word |= 1 << (x - start);
+          }
+        }
+        rowWords[x32] = word;
+      }
+      matrix.setRow(y, row);
+    }
+  }
+
+}
@@ -24,6 +24,11 @@ package com.google.zxing.common.reedsolomon;
  * for convenience and speed (but at the cost of memory).
  * </p>
  *
+ * <p>The 256-element fields, which QR codes and Data Matrix use, also keep the full table of
+ * products (64KB each), so that multiplying is a single lookup. The bulk operations on rows
+ * of codewords look up their products in the row of that table for their coefficient.
+ * </p>
+ *
  * @author Sean Owen
  * @author David Olivier
  */
@@ -38,15 +43,18 @@ public final class GenericGF {
   public static final GenericGF AZTEC_DATA_8 = DATA_MATRIX_FIELD_256;
   public static final GenericGF MAXICODE_FIELD_64 = AZTEC_DATA_6;
 
-  private static final int INITIALIZATION_THRESHOLD = 0;
+  // The only field size that gets a product table, which takes size * size bytes.
+  private static final int PRODUCT_TABLE_SIZE = 256;
+  // Largest field whose elements fit in a byte.
+  private static final int MAX_BYTE_FIELD_SIZE = 256;
 
-  private int[] expTable;
-  private int[] logTable;
-  private GenericGFPoly zero;
-  private GenericGFPoly one;
+  private final int[] expTable;
+  private final int[] logTable;
+  // Product of a and b at index (a << 8) | b, as an unsigned byte; null for other field sizes.
+  private final byte[] productTable;
+  private final GenericGFPoly zero;
+  private final GenericGFPoly one;
   private final int size;
-  private final int primitive;
-  private boolean initialized = false;
 
   /**
    * Create a representation of GF(size) using the given primitive polynomial.
@@ -56,15 +64,8 @@ public final class GenericGF {
    *  coefficient
    */
   public GenericGF(int primitive, int size) {
-  	this.primitive = primitive;
     this.size = size;
-    
-    if (size <= INITIALIZATION_THRESHOLD){
-    	initialize();
-    }
-  }
 
-  private void initialize(){
     expTable = new int[size];
     logTable = new int[size];
     int x = 1;
@@ -80,26 +81,27 @@ public final class GenericGF {
       logTable[expTable[i]] = i;
     }
     // logTable[0] == 0 but this should never be used
+    productTable = size == PRODUCT_TABLE_SIZE ? buildProductTable() : null;
     zero = new GenericGFPoly(this, new int[]{0});
     one = new GenericGFPoly(this, new int[]{1});
-    initialized = true;
   }
-  
-  private void checkInit(){
-  	if (!initialized) {
-      initialize();
+
+  private byte[] buildProductTable() {
+    byte[] table = new byte[size * size];
+    for (int a = 1; a < size; a++) {
+      int logA = logTable[a];
+      for (int b = 1; b < size; b++) {
+        table[(a << 8) | b] = (byte) expTable[(logA + logTable[b]) % (size - 1)];
+      }
     }
+    return table;
   }
-  
+
   GenericGFPoly getZero() {
-  	checkInit();
-  	
     return zero;
   }
 
   GenericGFPoly getOne() {
-  	checkInit();
-  	
     return one;
   }
 
@@ -107,8 +109,6 @@ public final class GenericGF {
    * @return the monomial representing coefficient * x^degree
    */
   GenericGFPoly buildMonomial(int degree, int coefficient) {
-  	checkInit();
-  	
     if (degree < 0) {
       throw new IllegalArgumentException();
     }
@@ -133,8 +133,6 @@ public final class GenericGF {
    * @return 2 to the power of a in GF(size)
    */
   int exp(int a) {
-  	checkInit();
-  	
     return expTable[a];
   }
 
@@ -142,8 +140,6 @@ public final class GenericGF {
    * @return base 2 log of a in GF(size)
    */
   int log(int a) {
-  	checkInit();
-  	
     if (a == 0) {
       throw new IllegalArgumentException();
     }
@@ -154,8 +150,6 @@ public final class GenericGF {
    * @return multiplicative inverse of a
    */
   int inverse(int a) {
-  	checkInit();
-  	
     if (a == 0) {
       throw new ArithmeticException();
     }
@@ -166,16 +160,104 @@ public final class GenericGF {
    * @return product of a and b in GF(size)
    */
   int multiply(int a, int b) {
-  	checkInit();
-
+    if (productTable != null) {
+      return productTable[(a << 8) | b] & 0xFF;
+    }
     if (a == 0 || b == 0) {
       return 0;
     }
     return expTable[(logTable[a] + logTable[b]) % (size - 1)];
   }
 
+  /**
+   * Adds coefficient times each of the length elements of source from sourceOffset to the
+   * elements of target from targetOffset.
+   */
+  void multiplyAndAdd(int coefficient, int[] source, int sourceOffset,
+                      int[] target, int targetOffset, int length) {
+    if (coefficient == 0) {
+      return;
+    }
+    if (productTable != null) {
+      int row = coefficient << 8;
+      for (int i = 0; i < length; i++) {
+        target[targetOffset + i] ^= productTable[row | source[sourceOffset + i]] & 0xFF;
+      }
+      return;
+    }
+    int logCoefficient = logTable[coefficient];
+    int order = size - 1;
+    for (int i = 0; i < length; i++) {
+      int value = source[sourceOffset + i];
+      if (value != 0) {
+        int logProduct = logTable[value] + logCoefficient;
+        target[targetOffset + i] ^= expTable[logProduct >= order ? logProduct - order : logProduct];
+      }
+    }
+  }
+
+  /**
+   * Same as {@link #multiplyAndAdd(int, int[], int, int[], int, int)} into elements stored as
+   * unsigned bytes, for fields of up to 256 elements.
+   */
+  void multiplyAndAdd(int coefficient, int[] source, int sourceOffset,
+                      byte[] target, int targetOffset, int length) {
+    if (size > MAX_BYTE_FIELD_SIZE) {
+      throw new IllegalArgumentException("Field elements don't fit in a byte");
+    }
+    if (coefficient == 0) {
+      return;
+    }
+    if (productTable != null) {
+      int row = coefficient << 8;
+      for (int i = 0; i < length; i++) {
+        target[targetOffset + i] ^= productTable[row | source[sourceOffset + i]];
+      }
+      return;
+    }
+    int logCoefficient = logTable[coefficient];
+    int order = size - 1;
+    for (int i = 0; i < length; i++) {
+      int value = source[sourceOffset + i];
+      if (value != 0) {
+        int logProduct = logTable[value] + logCoefficient;
+        target[targetOffset + i] ^= expTable[logProduct >= order ? logProduct - order : logProduct];
+      }
+    }
+  }
+
+  /**
+   * Evaluates, by Horner's rule, the polynomial whose coefficients are the length elements of
+   * coefficients from offset, highest degree first.
+   *
+   * @return the value of that polynomial at a
+   */
+  int evaluateAt(int[] coefficients, int offset, int length, int a) {
+    int result = 0;
+    if (productTable != null) {
+      int row = a << 8;
+      for (int i = offset; i < offset + length; i++) {
+        result = (productTable[row | result] & 0xFF) ^ coefficients[i];
+      }
+      return result;
+    }
+    if (a == 0) {
+      return length == 0 ? 0 : coefficients[offset + length - 1];
+    }
+    int logA = logTable[a];
+    int order = size - 1;
+    for (int i = offset; i < offset + length; i++) {
+      if (result != 0) {
+        int logProduct = logTable[result] + logA;
+        result = expTable[logProduct >= order ? logProduct - order : logProduct];
+      }
+      result ^= coefficients[i];
+    }
+    return result;
+  }
+
   public int getSize() {
-  	return size;
+    return size;
   }
-  
+
 }
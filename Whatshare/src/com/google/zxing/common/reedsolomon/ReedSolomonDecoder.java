@@ -16,6 +16,8 @@
 
 package com.google.zxing.common.reedsolomon;
 
+import java.util.Arrays;
+
 /**
  * <p>Implements Reed-Solomon decoding, as the name implies.</p>
  *
@@ -34,16 +36,30 @@ package com.google.zxing.common.reedsolomon;
  * <p>Much credit is due to William Rucklidge since portions of this code are an indirect
  * port of his C++ Reed-Solomon implementation.</p>
  *
+ * <p>Polynomials are worked on as arrays of coefficients indexed by degree, in buffers kept
+ * per thread, rather than as {@link GenericGFPoly} instances: checking a block that has no
+ * errors, which is what nearly every block is, allocates nothing, and correcting one only
+ * allocates the first time a thread sees that many error-correction codewords.</p>
+ *
  * @author Sean Owen
  * @author William Rucklidge
  * @author sanfordsquires
  */
 public final class ReedSolomonDecoder {
 
+  private static final ThreadLocal<Scratch> SCRATCH = new ThreadLocal<Scratch>() {
+    @Override
+    protected Scratch initialValue() {
+      return new Scratch();
+    }
+  };
+
   private final GenericGF field;
+  private final boolean dataMatrix;
 
   public ReedSolomonDecoder(GenericGF field) {
     this.field = field;
+    this.dataMatrix = field.equals(GenericGF.DATA_MATRIX_FIELD_256);
   }
 
   /**
@@ -56,29 +72,17 @@ public final class ReedSolomonDecoder {
    * @throws ReedSolomonException if decoding fails for any reason
    */
   public void decode(int[] received, int twoS) throws ReedSolomonException {
-    GenericGFPoly poly = new GenericGFPoly(field, received);
-    int[] syndromeCoefficients = new int[twoS];
-    boolean dataMatrix = field.equals(GenericGF.DATA_MATRIX_FIELD_256);
-    boolean noError = true;
-    for (int i = 0; i < twoS; i++) {
-      // Thanks to sanfordsquires for this fix:
-      int eval = poly.evaluateAt(field.exp(dataMatrix ? i + 1 : i));
-      syndromeCoefficients[syndromeCoefficients.length - 1 - i] = eval;
-      if (eval != 0) {
-        noError = false;
-      }
-    }
-    if (noError) {
+    Scratch scratch = SCRATCH.get();
+    scratch.ensureCapacity(twoS);
+    if (computeSyndromes(received, twoS, scratch.syndromes)) {
       return;
     }
-    GenericGFPoly syndrome = new GenericGFPoly(field, syndromeCoefficients);
-    GenericGFPoly[] sigmaOmega =
-        runEuclideanAlgorithm(field.buildMonomial(twoS, 1), syndrome, twoS);
-    GenericGFPoly sigma = sigmaOmega[0];
-    GenericGFPoly omega = sigmaOmega[1];
-    int[] errorLocations = findErrorLocations(sigma);
-    int[] errorMagnitudes = findErrorMagnitudes(omega, errorLocations, dataMatrix);
-    for (int i = 0; i < errorLocations.length; i++) {
+    runEuclideanAlgorithm(twoS, scratch);
+    int numErrors = findErrorLocations(scratch);
+    findErrorMagnitudes(numErrors, scratch);
+    int[] errorLocations = scratch.errorLocations;
+    int[] errorMagnitudes = scratch.errorMagnitudes;
+    for (int i = 0; i < numErrors; i++) {
       int position = received.length - 1 - field.log(errorLocations[i]);
       if (position < 0) {
         throw new ReedSolomonException("Bad error location");
@@ -87,67 +91,110 @@ public final class ReedSolomonDecoder {
     }
   }
 
-  private GenericGFPoly[] runEuclideanAlgorithm(GenericGFPoly a, GenericGFPoly b, int R)
-      throws ReedSolomonException {
-    // Assume a's degree is >= b's
-    if (a.getDegree() < b.getDegree()) {
-      GenericGFPoly temp = a;
-      a = b;
-      b = temp;
+  /**
+   * Evaluates the received word at each of the twoS roots of the generator polynomial.
+   *
+   * @param syndromes where to store the syndrome polynomial, indexed by degree
+   * @return whether all syndromes are zero, i.e. there is no error to correct
+   */
+  private boolean computeSyndromes(int[] received, int twoS, int[] syndromes) {
+    boolean noError = true;
+    for (int i = 0; i < twoS; i++) {
+      // Thanks to sanfordsquires for this fix:
+      int eval = field.evaluateAt(received, 0, received.length, field.exp(dataMatrix ? i + 1 : i));
+      syndromes[i] = eval;
+      if (eval != 0) {
+        noError = false;
+      }
     }
+    return noError;
+  }
+
+  /**
+   * Runs the Euclidean algorithm on x^R and the syndrome polynomial, leaving the error locator
+   * in {@link Scratch#sigma} and the error evaluator in {@link Scratch#omega}.
+   */
+  private void runEuclideanAlgorithm(int R, Scratch scratch) throws ReedSolomonException {
+    int[] rLast = scratch.rLast;
+    int[] r = scratch.r;
+    int[] tLast = scratch.tLast;
+    int[] t = scratch.t;
 
-    GenericGFPoly rLast = a;
-    GenericGFPoly r = b;
-    GenericGFPoly tLast = field.getZero();
-    GenericGFPoly t = field.getOne();
+    Arrays.fill(rLast, 0, R + 1, 0);
+    rLast[R] = 1;
+    int rLastDegree = R;
+    System.arraycopy(scratch.syndromes, 0, r, 0, R);
+    r[R] = 0;
+    int rDegree = getDegree(r, R - 1);
+    Arrays.fill(tLast, 0, R + 1, 0);
+    int tLastDegree = 0;
+    Arrays.fill(t, 0, R + 1, 0);
+    t[0] = 1;
+    int tDegree = 0;
 
     // Run Euclidean algorithm until r's degree is less than R/2
-    while (r.getDegree() >= R / 2) {
-      GenericGFPoly rLastLast = rLast;
-      GenericGFPoly tLastLast = tLast;
+    while (rDegree >= R / 2) {
+      // r and t become rLast and tLast, while the buffers of rLastLast and tLastLast, which are
+      // only needed as the starting points of the new r and t, are reused for them.
+      int[] temp = rLast;
       rLast = r;
+      r = temp;
+      int tempDegree = rLastDegree;
+      rLastDegree = rDegree;
+      rDegree = tempDegree;
+      temp = tLast;
       tLast = t;
+      t = temp;
+      tempDegree = tLastDegree;
+      tLastDegree = tDegree;
+      tDegree = tempDegree;
 
-      // Divide rLastLast by rLast, with quotient in q and remainder in r
-      if (rLast.isZero()) {
+      // Divide rLastLast by rLast, with remainder in r, and add the quotient times tLast to
+      // tLastLast as it's found, which leaves t = q * tLast + tLastLast.
+      if (rLastDegree == 0 && rLast[0] == 0) {
         // Oops, Euclidean algorithm already terminated?
         throw new ReedSolomonException("r_{i-1} was zero");
       }
-      r = rLastLast;
-      GenericGFPoly q = field.getZero();
-      int denominatorLeadingTerm = rLast.getCoefficient(rLast.getDegree());
-      int dltInverse = field.inverse(denominatorLeadingTerm);
-      while (r.getDegree() >= rLast.getDegree() && !r.isZero()) {
-        int degreeDiff = r.getDegree() - rLast.getDegree();
-        int scale = field.multiply(r.getCoefficient(r.getDegree()), dltInverse);
-        q = q.addOrSubtract(field.buildMonomial(degreeDiff, scale));
-        r = r.addOrSubtract(rLast.multiplyByMonomial(degreeDiff, scale));
+      int dltInverse = field.inverse(rLast[rLastDegree]);
+      while (rDegree >= rLastDegree && (rDegree != 0 || r[0] != 0)) {
+        int degreeDiff = rDegree - rLastDegree;
+        int scale = field.multiply(r[rDegree], dltInverse);
+        field.multiplyAndAdd(scale, rLast, 0, r, degreeDiff, rLastDegree + 1);
+        rDegree = getDegree(r, rDegree);
+        field.multiplyAndAdd(scale, tLast, 0, t, degreeDiff, tLastDegree + 1);
+        tDegree = getDegree(t, Math.max(tDegree, tLastDegree + degreeDiff));
       }
-
-      t = q.multiply(tLast).addOrSubtract(tLastLast);
     }
 
-    int sigmaTildeAtZero = t.getCoefficient(0);
+    int sigmaTildeAtZero = t[0];
     if (sigmaTildeAtZero == 0) {
       throw new ReedSolomonException("sigmaTilde(0) was zero");
     }
 
     int inverse = field.inverse(sigmaTildeAtZero);
-    GenericGFPoly sigma = t.multiply(inverse);
-    GenericGFPoly omega = r.multiply(inverse);
-    return new GenericGFPoly[]{sigma, omega};
+    multiply(t, tDegree, inverse);
+    multiply(r, rDegree, inverse);
+    scratch.sigma = t;
+    scratch.sigmaDegree = tDegree;
+    scratch.omega = r;
+    scratch.omegaDegree = rDegree;
   }
 
-  private int[] findErrorLocations(GenericGFPoly errorLocator) throws ReedSolomonException {
+  /**
+   * @return the number of errors, whose locations are left in {@link Scratch#errorLocations}
+   */
+  private int findErrorLocations(Scratch scratch) throws ReedSolomonException {
     // This is a direct application of Chien's search
-    int numErrors = errorLocator.getDegree();
+    int[] errorLocator = scratch.sigma;
+    int numErrors = scratch.sigmaDegree;
+    int[] result = scratch.errorLocations;
     if (numErrors == 1) { // shortcut
-      return new int[] { errorLocator.getCoefficient(1) };
+      result[0] = errorLocator[1];
+      return 1;
     }
-    int[] result = new int[numErrors];
     int e = 0;
     for (int i = 1; i < field.getSize() && e < numErrors; i++) {
-      if (errorLocator.evaluateAt(i) == 0) {
+      if (evaluateAt(errorLocator, numErrors, i) == 0) {
         result[e] = field.inverse(i);
         e++;
       }
@@ -155,19 +202,20 @@ public final class ReedSolomonDecoder {
     if (e != numErrors) {
       throw new ReedSolomonException("Error locator degree does not match number of roots");
     }
-    return result;
+    return numErrors;
   }
 
-  private int[] findErrorMagnitudes(GenericGFPoly errorEvaluator,
-                                    int[] errorLocations,
-                                    boolean dataMatrix) {
+  /**
+   * Leaves the magnitudes of the errors in {@link Scratch#errorMagnitudes}.
+   */
+  private void findErrorMagnitudes(int numErrors, Scratch scratch) {
     // This is directly applying Forney's Formula
-    int s = errorLocations.length;
-    int[] result = new int[s];
-    for (int i = 0; i < s; i++) {
+    int[] errorLocations = scratch.errorLocations;
+    int[] result = scratch.errorMagnitudes;
+    for (int i = 0; i < numErrors; i++) {
       int xiInverse = field.inverse(errorLocations[i]);
       int denominator = 1;
-      for (int j = 0; j < s; j++) {
+      for (int j = 0; j < numErrors; j++) {
         if (i != j) {
           //denominator = field.multiply(denominator,
           //    GenericGF.addOrSubtract(1, field.multiply(errorLocations[j], xiInverse)));
@@ -178,14 +226,75 @@ public final class ReedSolomonDecoder {
           denominator = field.multiply(denominator, termPlus1);
         }
       }
-      result[i] = field.multiply(errorEvaluator.evaluateAt(xiInverse),
+      result[i] = field.multiply(evaluateAt(scratch.omega, scratch.omegaDegree, xiInverse),
           field.inverse(denominator));
       // Thanks to sanfordsquires for this fix:
       if (dataMatrix) {
         result[i] = field.multiply(result[i], xiInverse);
       }
     }
+  }
+
+  /**
+   * @return the polynomial with the given coefficients, indexed by degree, evaluated at a
+   */
+  private int evaluateAt(int[] coefficients, int degree, int a) {
+    int result = coefficients[degree];
+    for (int i = degree - 1; i >= 0; i--) {
+      result = GenericGF.addOrSubtract(field.multiply(a, result), coefficients[i]);
+    }
     return result;
   }
 
+  private void multiply(int[] coefficients, int degree, int scalar) {
+    for (int i = 0; i <= degree; i++) {
+      coefficients[i] = field.multiply(coefficients[i], scalar);
+    }
+  }
+
+  /**
+   * @return the degree of the polynomial whose coefficients past maxDegree are all zero, 0 for
+   *         the zero polynomial
+   */
+  private static int getDegree(int[] coefficients, int maxDegree) {
+    int degree = maxDegree;
+    while (degree > 0 && coefficients[degree] == 0) {
+      degree--;
+    }
+    return degree;
+  }
+
+  /**
+   * The buffers a thread decodes in, grown to the largest number of error-correction codewords
+   * it has decoded so far. Polynomials are indexed by degree, and their coefficients past their
+   * degree are kept at zero.
+   */
+  private static final class Scratch {
+
+    int[] syndromes;
+    int[] rLast;
+    int[] r;
+    int[] tLast;
+    int[] t;
+    int[] errorLocations;
+    int[] errorMagnitudes;
+    int[] sigma;
+    int sigmaDegree;
+    int[] omega;
+    int omegaDegree;
+
+    void ensureCapacity(int twoS) {
+      if (syndromes == null || syndromes.length <= twoS) {
+        int length = twoS + 1;
+        syndromes = new int[length];
+        rLast = new int[length];
+        r = new int[length];
+        tLast = new int[length];
+        t = new int[length];
+        errorLocations = new int[length];
+        errorMagnitudes = new int[length];
+      }
+    }
+  }
+
 }
@@ -59,18 +59,46 @@ public final class ReedSolomonEncoder {
     if (dataBytes <= 0) {
       throw new IllegalArgumentException("No data bytes provided");
     }
-    GenericGFPoly generator = buildGenerator(ecBytes);
-    int[] infoCoefficients = new int[dataBytes];
-    System.arraycopy(toEncode, 0, infoCoefficients, 0, dataBytes);
-    GenericGFPoly info = new GenericGFPoly(field, infoCoefficients);
-    info = info.multiplyByMonomial(ecBytes, 1);
-    GenericGFPoly remainder = info.divide(generator)[1];
-    int[] coefficients = remainder.getCoefficients();
-    int numZeroCoefficients = ecBytes - coefficients.length;
-    for (int i = 0; i < numZeroCoefficients; i++) {
-      toEncode[dataBytes + i] = 0;
+    int[] generator = buildGenerator(ecBytes).getCoefficients();
+    // Divides the data times x^ecBytes by the generator one data byte at a time, keeping the
+    // remainder in the error correction bytes: shift it by one term, and subtract the generator
+    // times whatever leading term that leaves. The generator's own leading term is 1.
+    for (int i = dataBytes; i < toEncode.length; i++) {
+      toEncode[i] = 0;
+    }
+    for (int i = 0; i < dataBytes; i++) {
+      int factor = GenericGF.addOrSubtract(toEncode[i], toEncode[dataBytes]);
+      System.arraycopy(toEncode, dataBytes + 1, toEncode, dataBytes, ecBytes - 1);
+      toEncode[toEncode.length - 1] = 0;
+      field.multiplyAndAdd(factor, generator, 1, toEncode, dataBytes, ecBytes);
+    }
+  }
+
+  /**
+   * Same as {@link #encode(int[], int)}, on codewords stored as bytes.
+   *
+   * @param dataBytes data codewords
+   * @param ecBytes where to store the error correction codewords, as many as it has room for
+   */
+  public void encode(byte[] dataBytes, byte[] ecBytes) {
+    int numEcBytes = ecBytes.length;
+    if (numEcBytes == 0) {
+      throw new IllegalArgumentException("No error correction bytes");
+    }
+    if (dataBytes.length == 0) {
+      throw new IllegalArgumentException("No data bytes provided");
+    }
+    int[] generator = buildGenerator(numEcBytes).getCoefficients();
+    // Same division as above.
+    for (int i = 0; i < numEcBytes; i++) {
+      ecBytes[i] = 0;
+    }
+    for (byte dataByte : dataBytes) {
+      int factor = (dataByte ^ ecBytes[0]) & 0xFF;
+      System.arraycopy(ecBytes, 1, ecBytes, 0, numEcBytes - 1);
+      ecBytes[numEcBytes - 1] = 0;
+      field.multiplyAndAdd(factor, generator, 1, ecBytes, 0, numEcBytes);
     }
-    System.arraycopy(coefficients, 0, toEncode, dataBytes + numZeroCoefficients, coefficients.length);
   }
 
 }
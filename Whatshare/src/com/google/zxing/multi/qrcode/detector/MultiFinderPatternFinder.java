@@ -246,59 +246,26 @@ final class MultiFinderPatternFinder extends FinderPatternFinder {
     }
 
     int[] stateCount = new int[5];
+    int[] transitions = new int[maxJ];
     for (int i = iSkip - 1; i < maxI; i += iSkip) {
-      // Get a row of black/white values
-      stateCount[0] = 0;
-      stateCount[1] = 0;
-      stateCount[2] = 0;
-      stateCount[3] = 0;
-      stateCount[4] = 0;
-      int currentState = 0;
-      for (int j = 0; j < maxJ; j++) {
-        if (image.get(j, i)) {
-          // Black pixel
-          if ((currentState & 1) == 1) { // Counting white pixels
-            currentState++;
-          }
-          stateCount[currentState]++;
-        } else { // White pixel
-          if ((currentState & 1) == 0) { // Counting black pixels
-            if (currentState == 4) { // A winner?
-              if (foundPatternCross(stateCount)) { // Yes
-                boolean confirmed = handlePossibleCenter(stateCount, i, j);
-                if (!confirmed) {
-                  do { // Advance to next black pixel
-                    j++;
-                  } while (j < maxJ && !image.get(j, i));
-                  j--; // back up to that last white pixel
-                }
-                // Clear state to start looking again
-                currentState = 0;
-                stateCount[0] = 0;
-                stateCount[1] = 0;
-                stateCount[2] = 0;
-                stateCount[3] = 0;
-                stateCount[4] = 0;
-              } else { // No, shift counts back by two
-                stateCount[0] = stateCount[2];
-                stateCount[1] = stateCount[3];
-                stateCount[2] = stateCount[4];
-                stateCount[3] = 1;
-                stateCount[4] = 0;
-                currentState = 3;
-              }
-            } else {
-              stateCount[++currentState]++;
-            }
-          } else { // Counting white pixels
-            stateCount[currentState]++;
-          }
+      // Get a row as runs of black/white pixels
+      int count = image.getRowTransitions(i, 0, maxJ, transitions);
+      int first = 0;
+      for (; first + 5 < count; first += 2) {
+        int end = getStateCount(transitions, count, first, maxJ, stateCount);
+        if (foundPatternCross(stateCount)) {
+          handlePossibleCenter(stateCount, i, end);
+          // Confirmed or not, start looking again after the white run that follows
+          first += 4;
         }
-      } // for j=...
+      } // for first=...
 
-      if (foundPatternCross(stateCount)) {
-        handlePossibleCenter(stateCount, i, maxJ);
-      } // end if foundPatternCross
+      if (first + 5 == count) {
+        getStateCount(transitions, count, first, maxJ, stateCount);
+        if (foundPatternCross(stateCount)) {
+          handlePossibleCenter(stateCount, i, maxJ);
+        } // end if foundPatternCross
+      }
     } // for i=iSkip-1 ...
     FinderPattern[][] patternInfo = selectMutipleBestPatterns();
     List<FinderPatternInfo> result = new ArrayList<FinderPatternInfo>();
@@ -232,18 +232,10 @@ public final class CodaBarReader extends OneDReader {
     if (i >= end) {
       throw NotFoundException.getNotFoundInstance();
     }
-    boolean isWhite = true;
-    int count = 0;
-    for (; i < end; i++) {
-      if (row.get(i) ^ isWhite) { // that is, exactly one is true
-        count++;
-      } else {
-        counterAppend(count);
-        count = 1;
-        isWhite = !isWhite;
-      }
+    int runCount = row.getRunCount();
+    for (int run = row.getRun(i); run < runCount; run++) {
+      counterAppend(row.getRunEnd(run) - row.getRunStart(run));
     }
-    counterAppend(count);
   }
 
   private void counterAppend(int e) {
@@ -326,4 +318,9 @@ public final class CodaBarReader extends OneDReader {
     return -1;
   }
 
+  @Override
+  protected OneDReader copy() {
+    return new CodaBarReader();
+  }
+
 }
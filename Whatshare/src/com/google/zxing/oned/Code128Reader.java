@@ -167,45 +167,29 @@ public final class Code128Reader extends OneDReader {
   private static final int CODE_STOP = 106;
 
   private static int[] findStartPattern(BitArray row) throws NotFoundException {
-    int width = row.getSize();
-    int rowOffset = row.getNextSet(0);
-
-    int counterPosition = 0;
     int[] counters = new int[6];
-    int patternStart = rowOffset;
-    boolean isWhite = false;
     int patternLength = counters.length;
-
-    for (int i = rowOffset; i < width; i++) {
-      if (row.get(i) ^ isWhite) {
-        counters[counterPosition]++;
-      } else {
-        if (counterPosition == patternLength - 1) {
-          int bestVariance = MAX_AVG_VARIANCE;
-          int bestMatch = -1;
-          for (int startCode = CODE_START_A; startCode <= CODE_START_C; startCode++) {
-            int variance = patternMatchVariance(counters, CODE_PATTERNS[startCode],
-                MAX_INDIVIDUAL_VARIANCE);
-            if (variance < bestVariance) {
-              bestVariance = variance;
-              bestMatch = startCode;
-            }
-          }
-          // Look for whitespace before start pattern, >= 50% of width of start pattern
-          if (bestMatch >= 0 &&
-              row.isRange(Math.max(0, patternStart - (i - patternStart) / 2), patternStart, false)) {
-            return new int[]{patternStart, i, bestMatch};
-          }
-          patternStart += counters[0] + counters[1];
-          System.arraycopy(counters, 2, counters, 0, patternLength - 2);
-          counters[patternLength - 2] = 0;
-          counters[patternLength - 1] = 0;
-          counterPosition--;
-        } else {
-          counterPosition++;
+    int runCount = row.getRunCount();
+
+    // Try every window of runs starting with a black one, as long as a run follows it
+    for (int run = row.getRun(row.getNextSet(0)); run + patternLength < runCount; run += 2) {
+      int patternStart = row.getRunStart(run);
+      int i = row.getRunEnd(run + patternLength - 1);
+      recordRuns(row, run, patternStart, counters);
+      int bestVariance = MAX_AVG_VARIANCE;
+      int bestMatch = -1;
+      for (int startCode = CODE_START_A; startCode <= CODE_START_C; startCode++) {
+        int variance = patternMatchVariance(counters, CODE_PATTERNS[startCode],
+            MAX_INDIVIDUAL_VARIANCE);
+        if (variance < bestVariance) {
+          bestVariance = variance;
+          bestMatch = startCode;
         }
-        counters[counterPosition] = 1;
-        isWhite = !isWhite;
+      }
+      // Look for whitespace before start pattern, >= 50% of width of start pattern
+      if (bestMatch >= 0 &&
+          row.isRange(Math.max(0, patternStart - (i - patternStart) / 2), patternStart, false)) {
+        return new int[]{patternStart, i, bestMatch};
       }
     }
     throw NotFoundException.getNotFoundInstance();
@@ -461,4 +445,9 @@ public final class Code128Reader extends OneDReader {
 
   }
 
+  @Override
+  protected OneDReader copy() {
+    return new Code128Reader();
+  }
+
 }
@@ -171,34 +171,18 @@ public final class Code39Reader extends OneDReader {
   }
 
   private static int[] findAsteriskPattern(BitArray row, int[] counters) throws NotFoundException {
-    int width = row.getSize();
-    int rowOffset = row.getNextSet(0);
-
-    int counterPosition = 0;
-    int patternStart = rowOffset;
-    boolean isWhite = false;
     int patternLength = counters.length;
+    int runCount = row.getRunCount();
 
-    for (int i = rowOffset; i < width; i++) {
-      if (row.get(i) ^ isWhite) {
-        counters[counterPosition]++;
-      } else {
-        if (counterPosition == patternLength - 1) {
-          // Look for whitespace before start pattern, >= 50% of width of start pattern
-          if (toNarrowWidePattern(counters) == ASTERISK_ENCODING &&
-              row.isRange(Math.max(0, patternStart - ((i - patternStart) >> 1)), patternStart, false)) {
-            return new int[]{patternStart, i};
-          }
-          patternStart += counters[0] + counters[1];
-          System.arraycopy(counters, 2, counters, 0, patternLength - 2);
-          counters[patternLength - 2] = 0;
-          counters[patternLength - 1] = 0;
-          counterPosition--;
-        } else {
-          counterPosition++;
-        }
-        counters[counterPosition] = 1;
-        isWhite = !isWhite;
+    // Try every window of runs starting with a black one, as long as a run follows it
+    for (int run = row.getRun(row.getNextSet(0)); run + patternLength < runCount; run += 2) {
+      int patternStart = row.getRunStart(run);
+      int i = row.getRunEnd(run + patternLength - 1);
+      recordRuns(row, run, patternStart, counters);
+      // Look for whitespace before start pattern, >= 50% of width of start pattern
+      if (toNarrowWidePattern(counters) == ASTERISK_ENCODING &&
+          row.isRange(Math.max(0, patternStart - ((i - patternStart) >> 1)), patternStart, false)) {
+        return new int[]{patternStart, i};
       }
     }
     throw NotFoundException.getNotFoundInstance();
@@ -314,4 +298,9 @@ public final class Code39Reader extends OneDReader {
     return decoded.toString();
   }
 
+  @Override
+  protected OneDReader copy() {
+    return new Code39Reader(usingCheckDigit, extendedMode);
+  }
+
 }
@@ -112,33 +112,15 @@ public final class Code93Reader extends OneDReader {
   }
 
   private static int[] findAsteriskPattern(BitArray row) throws NotFoundException {
-    int width = row.getSize();
-    int rowOffset = row.getNextSet(0);
-
-    int counterPosition = 0;
     int[] counters = new int[6];
-    int patternStart = rowOffset;
-    boolean isWhite = false;
     int patternLength = counters.length;
+    int runCount = row.getRunCount();
 
-    for (int i = rowOffset; i < width; i++) {
-      if (row.get(i) ^ isWhite) {
-        counters[counterPosition]++;
-      } else {
-        if (counterPosition == patternLength - 1) {
-          if (toPattern(counters) == ASTERISK_ENCODING) {
-            return new int[]{patternStart, i};
-          }
-          patternStart += counters[0] + counters[1];
-          System.arraycopy(counters, 2, counters, 0, patternLength - 2);
-          counters[patternLength - 2] = 0;
-          counters[patternLength - 1] = 0;
-          counterPosition--;
-        } else {
-          counterPosition++;
-        }
-        counters[counterPosition] = 1;
-        isWhite = !isWhite;
+    // Try every window of runs starting with a black one, as long as a run follows it
+    for (int run = row.getRun(row.getNextSet(0)); run + patternLength < runCount; run += 2) {
+      recordRuns(row, run, row.getRunStart(run), counters);
+      if (toPattern(counters) == ASTERISK_ENCODING) {
+        return new int[]{row.getRunStart(run), row.getRunEnd(run + patternLength - 1)};
       }
     }
     throw NotFoundException.getNotFoundInstance();
@@ -260,4 +242,9 @@ public final class Code93Reader extends OneDReader {
     }
   }
 
+  @Override
+  protected OneDReader copy() {
+    return new Code93Reader();
+  }
+
 }
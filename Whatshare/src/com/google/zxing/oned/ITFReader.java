@@ -288,30 +288,17 @@ public final class ITFReader extends OneDReader {
     // merged to a single method.
     int patternLength = pattern.length;
     int[] counters = new int[patternLength];
-    int width = row.getSize();
-    boolean isWhite = false;
+    int runCount = row.getRunCount();
 
-    int counterPosition = 0;
+    // rowOffset is black, try every window of runs starting there or at a later black run, as
+    // long as a run follows it
     int patternStart = rowOffset;
-    for (int x = rowOffset; x < width; x++) {
-      if (row.get(x) ^ isWhite) {
-        counters[counterPosition]++;
-      } else {
-        if (counterPosition == patternLength - 1) {
-          if (patternMatchVariance(counters, pattern, MAX_INDIVIDUAL_VARIANCE) < MAX_AVG_VARIANCE) {
-            return new int[]{patternStart, x};
-          }
-          patternStart += counters[0] + counters[1];
-          System.arraycopy(counters, 2, counters, 0, patternLength - 2);
-          counters[patternLength - 2] = 0;
-          counters[patternLength - 1] = 0;
-          counterPosition--;
-        } else {
-          counterPosition++;
-        }
-        counters[counterPosition] = 1;
-        isWhite = !isWhite;
+    for (int run = row.getRun(rowOffset); run + patternLength < runCount; run += 2) {
+      recordRuns(row, run, patternStart, counters);
+      if (patternMatchVariance(counters, pattern, MAX_INDIVIDUAL_VARIANCE) < MAX_AVG_VARIANCE) {
+        return new int[]{patternStart, row.getRunEnd(run + patternLength - 1)};
       }
+      patternStart = row.getRunStart(run + 2);
     }
     throw NotFoundException.getNotFoundInstance();
   }
@@ -344,4 +331,9 @@ public final class ITFReader extends OneDReader {
     }
   }
 
+  @Override
+  protected OneDReader copy() {
+    return new ITFReader();
+  }
+
 }
@@ -86,6 +86,10 @@ public final class MultiFormatOneDReader extends OneDReader {
     this.readers = readers.toArray(new OneDReader[readers.size()]);
   }
 
+  private MultiFormatOneDReader(OneDReader[] readers) {
+    this.readers = readers;
+  }
+
   @Override
   public Result decodeRow(int rowNumber,
                           BitArray row,
@@ -108,4 +112,16 @@ public final class MultiFormatOneDReader extends OneDReader {
     }
   }
 
+  @Override
+  protected OneDReader copy() {
+    OneDReader[] copies = new OneDReader[readers.length];
+    for (int i = 0; i < readers.length; i++) {
+      copies[i] = readers[i].copy();
+      if (copies[i] == null) {
+        return null;
+      }
+    }
+    return new MultiFormatOneDReader(copies);
+  }
+
 }
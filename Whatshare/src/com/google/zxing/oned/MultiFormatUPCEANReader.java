@@ -65,6 +65,10 @@ public final class MultiFormatUPCEANReader extends OneDReader {
     this.readers = readers.toArray(new UPCEANReader[readers.size()]);
   }
 
+  private MultiFormatUPCEANReader(UPCEANReader[] readers) {
+    this.readers = readers;
+  }
+
   @Override
   public Result decodeRow(int rowNumber,
                           BitArray row,
@@ -119,4 +123,16 @@ public final class MultiFormatUPCEANReader extends OneDReader {
     }
   }
 
+  @Override
+  protected OneDReader copy() {
+    UPCEANReader[] copies = new UPCEANReader[readers.length];
+    for (int i = 0; i < readers.length; i++) {
+      copies[i] = (UPCEANReader) readers[i].copy();
+      if (copies[i] == null) {
+        return null;
+      }
+    }
+    return new MultiFormatUPCEANReader(copies);
+  }
+
 }
@@ -28,9 +28,9 @@ import com.google.zxing.ResultMetadataType;
 import com.google.zxing.ResultPoint;
 import com.google.zxing.common.BitArray;
 
-import java.util.Arrays;
 import java.util.EnumMap;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Encapsulates functionality and implementation that is common to all families
@@ -89,6 +89,17 @@ public abstract class OneDReader implements Reader {
     // do nothing
   }
 
+  /**
+   * Creates a reader that decodes rows like this one, for another thread to scan rows with at the
+   * same time as this one, see {@link DecodeHintType#ROW_SCAN_EXECUTOR}. Readers that don't
+   * override this method always scan rows on the calling thread.
+   *
+   * @return a new reader configured like this one, or null if there's none
+   */
+  protected OneDReader copy() {
+    return null;
+  }
+
   /**
    * We're going to examine rows from the middle outward, searching alternately above and below the
    * middle, and farther out each time. rowStep is the number of rows between each successive
@@ -119,12 +130,32 @@ public abstract class OneDReader implements Reader {
       maxLines = 15; // 15 rows spaced 1/32 apart is roughly the middle half of the image
     }
 
+    // This means we will only ever draw result points *once* in the life of this method
+    // since we want to avoid drawing the wrong points after flipping the row, and,
+    // don't want to clutter with noise from every single row scan -- just the scans
+    // that start on the center line.
+    Map<DecodeHintType,?> reversedHints = hints;
+    if (hints != null && hints.containsKey(DecodeHintType.NEED_RESULT_POINT_CALLBACK)) {
+      Map<DecodeHintType,Object> newHints = new EnumMap<DecodeHintType,Object>(DecodeHintType.class);
+      newHints.putAll(hints);
+      newHints.remove(DecodeHintType.NEED_RESULT_POINT_CALLBACK);
+      reversedHints = newHints;
+    }
+
+    ExecutorService executor = hints == null ? null :
+        (ExecutorService) hints.get(DecodeHintType.ROW_SCAN_EXECUTOR);
+    if (executor != null) {
+      ParallelRowScan scan =
+          ParallelRowScan.create(this, image, middle, rowStep, maxLines, hints, reversedHints);
+      if (scan != null) {
+        return scan.run(executor);
+      }
+    }
+
     for (int x = 0; x < maxLines; x++) {
 
       // Scanning from the middle out. Determine which row we're looking at next:
-      int rowStepsAboveOrBelow = (x + 1) >> 1;
-      boolean isAbove = (x & 0x01) == 0; // i.e. is x even?
-      int rowNumber = middle + rowStep * (isAbove ? rowStepsAboveOrBelow : -rowStepsAboveOrBelow);
+      int rowNumber = getRowNumber(x, middle, rowStep);
       if (rowNumber < 0 || rowNumber >= height) {
         // Oops, if we run off the top or bottom, stop
         break;
@@ -137,46 +168,66 @@ public abstract class OneDReader implements Reader {
         continue;
       }
 
-      // While we have the image data in a BitArray, it's fairly cheap to reverse it in place to
-      // handle decoding upside down barcodes.
-      for (int attempt = 0; attempt < 2; attempt++) {
-        if (attempt == 1) { // trying again?
-          row.reverse(); // reverse the row and continue
-          // This means we will only ever draw result points *once* in the life of this method
-          // since we want to avoid drawing the wrong points after flipping the row, and,
-          // don't want to clutter with noise from every single row scan -- just the scans
-          // that start on the center line.
-          if (hints != null && hints.containsKey(DecodeHintType.NEED_RESULT_POINT_CALLBACK)) {
-            Map<DecodeHintType,Object> newHints = new EnumMap<DecodeHintType,Object>(DecodeHintType.class);
-            newHints.putAll(hints);
-            newHints.remove(DecodeHintType.NEED_RESULT_POINT_CALLBACK);
-            hints = newHints;
-          }
-        }
-        try {
-          // Look for a barcode
-          Result result = decodeRow(rowNumber, row, hints);
-          // We found our barcode
-          if (attempt == 1) {
-            // But it was upside down, so note that
-            result.putMetadata(ResultMetadataType.ORIENTATION, 180);
-            // And remember to flip the result points horizontally.
-            ResultPoint[] points = result.getResultPoints();
-            if (points != null) {
-              points[0] = new ResultPoint(width - points[0].getX() - 1, points[0].getY());
-              points[1] = new ResultPoint(width - points[1].getX() - 1, points[1].getY());
-            }
-          }
-          return result;
-        } catch (ReaderException re) {
-          // continue -- just couldn't decode this row
-        }
+      Result result = decodeRowEitherWay(rowNumber, row, hints, reversedHints);
+      if (result != null) {
+        return result;
       }
+      hints = reversedHints;
     }
 
     throw NotFoundException.getNotFoundInstance();
   }
 
+  /**
+   * @return the row scanned at step x of the scan from the middle out, alternately above and
+   *         below middle; it may be outside of the image
+   */
+  static int getRowNumber(int x, int middle, int rowStep) {
+    int rowStepsAboveOrBelow = (x + 1) >> 1;
+    boolean isAbove = (x & 0x01) == 0; // i.e. is x even?
+    return middle + rowStep * (isAbove ? rowStepsAboveOrBelow : -rowStepsAboveOrBelow);
+  }
+
+  /**
+   * Decodes a row, and the row reversed if that fails, to handle upside down barcodes: while we
+   * have the image data in a BitArray, it's fairly cheap to reverse it in place.
+   *
+   * @param hints hints for the row as it is
+   * @param reversedHints hints for the reversed row
+   * @return the barcode found, or null; the row is left reversed if the first attempt failed
+   */
+  final Result decodeRowEitherWay(int rowNumber,
+                                  BitArray row,
+                                  Map<DecodeHintType,?> hints,
+                                  Map<DecodeHintType,?> reversedHints) {
+    for (int attempt = 0; attempt < 2; attempt++) {
+      if (attempt == 1) { // trying again?
+        row.reverse(); // reverse the row and continue
+        hints = reversedHints;
+      }
+      try {
+        // Look for a barcode
+        Result result = decodeRow(rowNumber, row, hints);
+        // We found our barcode
+        if (attempt == 1) {
+          // But it was upside down, so note that
+          result.putMetadata(ResultMetadataType.ORIENTATION, 180);
+          // And remember to flip the result points horizontally.
+          ResultPoint[] points = result.getResultPoints();
+          if (points != null) {
+            int width = row.getSize();
+            points[0] = new ResultPoint(width - points[0].getX() - 1, points[0].getY());
+            points[1] = new ResultPoint(width - points[1].getX() - 1, points[1].getY());
+          }
+        }
+        return result;
+      } catch (ReaderException re) {
+        // continue -- just couldn't decode this row
+      }
+    }
+    return null;
+  }
+
   /**
    * Records the size of successive runs of white and black pixels in a row, starting at a given point.
    * The values are recorded in the given array, and the number of runs recorded is equal to the size
@@ -194,50 +245,45 @@ public abstract class OneDReader implements Reader {
                                       int start,
                                       int[] counters) throws NotFoundException {
     int numCounters = counters.length;
-    Arrays.fill(counters, 0, numCounters, 0);
     int end = row.getSize();
     if (start >= end) {
       throw NotFoundException.getNotFoundInstance();
     }
-    boolean isWhite = !row.get(start);
-    int counterPosition = 0;
-    int i = start;
-    while (i < end) {
-      if (row.get(i) ^ isWhite) { // that is, exactly one is true
-        counters[counterPosition]++;
-      } else {
-        counterPosition++;
-        if (counterPosition == numCounters) {
-          break;
-        } else {
-          counters[counterPosition] = 1;
-          isWhite = !isWhite;
-        }
-      }
-      i++;
-    }
-    // If we read fully the last section of pixels and filled up our counters -- or filled
-    // the last counter but ran off the side of the image, OK. Otherwise, a problem.
-    if (!(counterPosition == numCounters || (counterPosition == numCounters - 1 && i == end))) {
+    // Each counter is one run of the row, the first counted from start; the last one may run
+    // off the side of the image.
+    int run = row.getRun(start);
+    if (run + numCounters > row.getRunCount()) {
       throw NotFoundException.getNotFoundInstance();
     }
+    recordRuns(row, run, start, counters);
   }
 
   protected static void recordPatternInReverse(BitArray row, int start, int[] counters)
       throws NotFoundException {
-    // This could be more efficient I guess
-    int numTransitionsLeft = counters.length;
-    boolean last = row.get(start);
-    while (start > 0 && numTransitionsLeft >= 0) {
-      if (row.get(--start) != last) {
-        numTransitionsLeft--;
-        last = !last;
-      }
-    }
-    if (numTransitionsLeft >= 0) {
+    // The pattern starts right after the color changes counters.length + 1 times going left from
+    // start, that is where the run before the first one of the pattern ends.
+    int run = row.getRun(start) - counters.length - 1;
+    if (run < 0 || row.getRunEnd(run) == 0) {
       throw NotFoundException.getNotFoundInstance();
     }
-    recordPattern(row, start + 1, counters);
+    recordPattern(row, row.getRunEnd(run), counters);
+  }
+
+  /**
+   * Records the lengths of successive runs of a row, like
+   * {@link #recordPattern(BitArray, int, int[])} but without any check: the row must have as many
+   * runs as counters from {@code run} on.
+   *
+   * @param row row to count from
+   * @param run index of the first run to record, see {@link BitArray#getRun(int)}
+   * @param start where to start counting the first run from, inside it
+   * @param counters array into which to record counts
+   */
+  protected static void recordRuns(BitArray row, int run, int start, int[] counters) {
+    counters[0] = row.getRunEnd(run) - start;
+    for (int i = 1; i < counters.length; i++) {
+      counters[i] = row.getRunEnd(run + i) - row.getRunStart(run + i);
+    }
   }
 
   /**
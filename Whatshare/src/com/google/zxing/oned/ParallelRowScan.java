@@ -0,0 +1,260 @@
+/*
+ * Copyright 2013 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.oned;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Result;
+import com.google.zxing.common.BitArray;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Scans the rows {@link OneDReader} would scan on several threads, for
+ * {@link DecodeHintType#ROW_SCAN_EXECUTOR}.
+ *
+ * The rows, in the order they would be scanned on one thread, are split into bands of a few
+ * consecutive rows; each thread takes the next band not taken yet, so the rows closest to the
+ * middle are still scanned first. Once a barcode is found no thread starts on a row that comes
+ * after it, but rows that come before it are still scanned, and the barcode of the first row
+ * wins: for barcodes decoded from a single row, the result is the one a scan on one thread would
+ * have returned. RSS-14 and RSS Expanded put a barcode together from pairs found on several rows,
+ * and each copy of their readers only sees the rows its thread scanned, so they may find a
+ * different barcode than a scan on one thread, on a later row, or none at all.
+ *
+ * Each thread decodes with its own copy of the reader, as readers aren't thread safe, and the
+ * calling thread takes part with the original reader. Rows are binarized one at a time, as
+ * binarizers aren't thread safe either. The {@link DecodeHintType#NEED_RESULT_POINT_CALLBACK}
+ * hint is shared, though, so the callback is called from several threads at once and must be
+ * thread safe.
+ */
+final class ParallelRowScan {
+
+  private static final int ROWS_PER_BAND = 4;
+
+  private final BinaryBitmap image;
+  private final int[] rowNumbers;
+  private final int bands;
+  private final Map<DecodeHintType,?> hints;
+  private final Map<DecodeHintType,?> reversedHints;
+  private final OneDReader[] readers;
+  // The calling thread scans the first band itself, other threads take the following ones.
+  private int nextBand = 1;
+  private int bandsScanning = 1;
+  // Index in rowNumbers of the first row a barcode was found in so far.
+  private volatile int foundAt = Integer.MAX_VALUE;
+  private Result found;
+  private Throwable failure;
+
+  private ParallelRowScan(BinaryBitmap image,
+                          int[] rowNumbers,
+                          Map<DecodeHintType,?> hints,
+                          Map<DecodeHintType,?> reversedHints,
+                          OneDReader[] readers) {
+    this.image = image;
+    this.rowNumbers = rowNumbers;
+    bands = (rowNumbers.length + ROWS_PER_BAND - 1) / ROWS_PER_BAND;
+    this.hints = hints;
+    this.reversedHints = reversedHints;
+    this.readers = readers;
+  }
+
+  /**
+   * @param reader reader the calling thread decodes with, and copies of which the others do
+   * @param hints hints for the first row, see {@link OneDReader#decodeRowEitherWay}
+   * @param reversedHints hints for the other rows and for the first one reversed
+   * @return a scan of the rows {@link OneDReader#getRowNumber(int, int, int)} gives from the
+   *         middle out, or null if it's not worth it (a single core or very few rows) or the reader
+   *         can't be copied
+   */
+  static ParallelRowScan create(OneDReader reader,
+                                BinaryBitmap image,
+                                int middle,
+                                int rowStep,
+                                int maxLines,
+                                Map<DecodeHintType,?> hints,
+                                Map<DecodeHintType,?> reversedHints) {
+    int height = image.getHeight();
+    int[] rowNumbers = new int[maxLines];
+    int lines = 0;
+    while (lines < maxLines) {
+      int rowNumber = OneDReader.getRowNumber(lines, middle, rowStep);
+      if (rowNumber < 0 || rowNumber >= height) {
+        break;
+      }
+      rowNumbers[lines++] = rowNumber;
+    }
+    int bands = (lines + ROWS_PER_BAND - 1) / ROWS_PER_BAND;
+    int threads = Math.min(Runtime.getRuntime().availableProcessors(), bands);
+    if (threads < 2) {
+      return null;
+    }
+    OneDReader[] readers = new OneDReader[threads];
+    readers[0] = reader;
+    for (int i = 1; i < threads; i++) {
+      readers[i] = reader.copy();
+      if (readers[i] == null) {
+        return null;
+      }
+    }
+    int[] scanned = new int[lines];
+    System.arraycopy(rowNumbers, 0, scanned, 0, lines);
+    return new ParallelRowScan(image, scanned, hints, reversedHints, readers);
+  }
+
+  /**
+   * Scans the rows, on the calling thread and on as many threads of executor as there are cores
+   * minus one, and waits for the threads to be done.
+   *
+   * @return the barcode found in the first row that has one
+   * @throws NotFoundException if no row has a barcode
+   */
+  Result run(ExecutorService executor) throws NotFoundException {
+    List<Future<?>> futures = new ArrayList<Future<?>>(readers.length - 1);
+    try {
+      for (int i = 1; i < readers.length; i++) {
+        final OneDReader reader = readers[i];
+        futures.add(executor.submit(new Runnable() {
+          @Override
+          public void run() {
+            scan(reader, claimBand());
+          }
+        }));
+      }
+    } catch (RejectedExecutionException ree) {
+      // Shut down or saturated, do with the threads we got
+    }
+    scan(readers[0], 0);
+
+    // Every band that needs scanning has been taken, threads that haven't started yet have
+    // nothing left to do; wait for those still scanning one.
+    for (Future<?> future : futures) {
+      future.cancel(false);
+    }
+    boolean interrupted = false;
+    synchronized (this) {
+      while (bandsScanning > 0) {
+        try {
+          wait();
+        } catch (InterruptedException ie) {
+          // They're almost done, and a scan on one thread couldn't be interrupted either
+          interrupted = true;
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+
+    synchronized (this) {
+      if (failure instanceof RuntimeException) {
+        throw (RuntimeException) failure;
+      }
+      if (failure instanceof Error) {
+        throw (Error) failure;
+      }
+      if (found == null) {
+        throw NotFoundException.getNotFoundInstance();
+      }
+      return found;
+    }
+  }
+
+  private void scan(OneDReader reader, int band) {
+    BitArray row = new BitArray(image.getWidth());
+    while (band < bands) {
+      boolean scanNext = false;
+      try {
+        scanNext = scanBand(reader, row, band);
+      } catch (RuntimeException re) {
+        failed(re);
+      } catch (Error e) {
+        failed(e);
+      } finally {
+        bandDone();
+      }
+      if (!scanNext) {
+        return;
+      }
+      band = claimBand();
+    }
+  }
+
+  private synchronized int claimBand() {
+    int band = nextBand++;
+    if (band < bands) {
+      bandsScanning++;
+    }
+    return band;
+  }
+
+  private synchronized void bandDone() {
+    if (--bandsScanning == 0) {
+      notifyAll();
+    }
+  }
+
+  private synchronized void failed(Throwable t) {
+    if (failure == null) {
+      failure = t;
+    }
+    // Stop every thread, the scan won't return anything
+    foundAt = -1;
+  }
+
+  /**
+   * @return false if there's no need to scan any further band
+   */
+  private boolean scanBand(OneDReader reader, BitArray row, int band) {
+    int end = Math.min((band + 1) * ROWS_PER_BAND, rowNumbers.length);
+    for (int i = band * ROWS_PER_BAND; i < end; i++) {
+      if (i > foundAt) {
+        // A row scanned before this one has a barcode, or the scan failed
+        return false;
+      }
+      int rowNumber = rowNumbers[i];
+      try {
+        synchronized (image) {
+          row = image.getBlackRow(rowNumber, row);
+        }
+      } catch (NotFoundException nfe) {
+        continue;
+      }
+      Result result =
+          reader.decodeRowEitherWay(rowNumber, row, i == 0 ? hints : reversedHints, reversedHints);
+      if (result != null) {
+        found(i, result);
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private synchronized void found(int index, Result result) {
+    if (index < foundAt && failure == null) {
+      foundAt = index;
+      found = result;
+    }
+  }
+
+}
@@ -83,4 +83,9 @@ public final class UPCAReader extends UPCEANReader {
     }
   }
 
+  @Override
+  protected OneDReader copy() {
+    return new UPCAReader();
+  }
+
 }
@@ -277,30 +277,17 @@ public abstract class UPCEANReader extends OneDReader {
                                         int[] pattern,
                                         int[] counters) throws NotFoundException {
     int patternLength = pattern.length;
-    int width = row.getSize();
-    boolean isWhite = whiteFirst;
     rowOffset = whiteFirst ? row.getNextUnset(rowOffset) : row.getNextSet(rowOffset);
-    int counterPosition = 0;
+    int runCount = row.getRunCount();
+    // Try every window of runs starting with the right color, as long as a run follows it; the
+    // first run of the first window is only counted from rowOffset.
     int patternStart = rowOffset;
-    for (int x = rowOffset; x < width; x++) {
-      if (row.get(x) ^ isWhite) {
-        counters[counterPosition]++;
-      } else {
-        if (counterPosition == patternLength - 1) {
-          if (patternMatchVariance(counters, pattern, MAX_INDIVIDUAL_VARIANCE) < MAX_AVG_VARIANCE) {
-            return new int[]{patternStart, x};
-          }
-          patternStart += counters[0] + counters[1];
-          System.arraycopy(counters, 2, counters, 0, patternLength - 2);
-          counters[patternLength - 2] = 0;
-          counters[patternLength - 1] = 0;
-          counterPosition--;
-        } else {
-          counterPosition++;
-        }
-        counters[counterPosition] = 1;
-        isWhite = !isWhite;
+    for (int run = row.getRun(rowOffset); run + patternLength < runCount; run += 2) {
+      recordRuns(row, run, patternStart, counters);
+      if (patternMatchVariance(counters, pattern, MAX_INDIVIDUAL_VARIANCE) < MAX_AVG_VARIANCE) {
+        return new int[]{patternStart, row.getRunEnd(run + patternLength - 1)};
       }
+      patternStart = row.getRunStart(run + 2);
     }
     throw NotFoundException.getNotFoundInstance();
   }
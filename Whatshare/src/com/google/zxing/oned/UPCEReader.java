@@ -154,4 +154,9 @@ public final class UPCEReader extends UPCEANReader {
     return result.toString();
   }
 
+  @Override
+  protected OneDReader copy() {
+    return new UPCEReader();
+  }
+
 }
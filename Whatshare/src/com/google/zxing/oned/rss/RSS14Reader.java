@@ -23,6 +23,7 @@ import com.google.zxing.Result;
 import com.google.zxing.ResultPoint;
 import com.google.zxing.ResultPointCallback;
 import com.google.zxing.common.BitArray;
+import com.google.zxing.oned.OneDReader;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -284,44 +285,20 @@ public final class RSS14Reader extends AbstractRSSReader {
       throws NotFoundException {
 
     int[] counters = getDecodeFinderCounters();
-    counters[0] = 0;
-    counters[1] = 0;
-    counters[2] = 0;
-    counters[3] = 0;
 
-    int width = row.getSize();
-    boolean isWhite = false;
-    while (rowOffset < width) {
-      isWhite = !row.get(rowOffset);
-      if (rightFinderPattern == isWhite) {
-        // Will encounter white first when searching for right finder pattern
-        break;
-      }
-      rowOffset++;
-    }
+    // Will encounter white first when searching for right finder pattern
+    rowOffset = rightFinderPattern ? row.getNextUnset(rowOffset) : row.getNextSet(rowOffset);
 
-    int counterPosition = 0;
+    // Try every window of runs from there, as long as a run follows it; the counters are left
+    // holding the window found
+    int runCount = row.getRunCount();
     int patternStart = rowOffset;
-    for (int x = rowOffset; x < width; x++) {
-      if (row.get(x) ^ isWhite) {
-        counters[counterPosition]++;
-      } else {
-        if (counterPosition == 3) {
-          if (isFinderPattern(counters)) {
-            return new int[]{patternStart, x};
-          }
-          patternStart += counters[0] + counters[1];
-          counters[0] = counters[2];
-          counters[1] = counters[3];
-          counters[2] = 0;
-          counters[3] = 0;
-          counterPosition--;
-        } else {
-          counterPosition++;
-        }
-        counters[counterPosition] = 1;
-        isWhite = !isWhite;
+    for (int run = row.getRun(rowOffset); run + counters.length < runCount; run += 2) {
+      recordRuns(row, run, patternStart, counters);
+      if (isFinderPattern(counters)) {
+        return new int[]{patternStart, row.getRunEnd(run + counters.length - 1)};
       }
+      patternStart = row.getRunStart(run + 2);
     }
     throw NotFoundException.getNotFoundInstance();
 
@@ -470,4 +447,9 @@ public final class RSS14Reader extends AbstractRSSReader {
 
   }
 
+  @Override
+  protected OneDReader copy() {
+    return new RSS14Reader();
+  }
+
 }
@@ -32,6 +32,7 @@ import com.google.zxing.NotFoundException;
 import com.google.zxing.Result;
 import com.google.zxing.ResultPoint;
 import com.google.zxing.common.BitArray;
+import com.google.zxing.oned.OneDReader;
 import com.google.zxing.oned.rss.AbstractRSSReader;
 import com.google.zxing.oned.rss.DataCharacter;
 import com.google.zxing.oned.rss.FinderPattern;
@@ -271,12 +272,6 @@ public final class RSSExpandedReader extends AbstractRSSReader {
   private void findNextPair(BitArray row, List<ExpandedPair> previousPairs, int forcedOffset)
       throws NotFoundException {
     int[] counters = this.getDecodeFinderCounters();
-    counters[0] = 0;
-    counters[1] = 0;
-    counters[2] = 0;
-    counters[3] = 0;
-
-    int width = row.getSize();
 
     int rowOffset;
     if (forcedOffset >= 0) {
@@ -289,48 +284,23 @@ public final class RSSExpandedReader extends AbstractRSSReader {
     }
     boolean searchingEvenPair = previousPairs.size() % 2 != 0;
 
-    boolean isWhite = false;
-    while (rowOffset < width) {
-      isWhite = !row.get(rowOffset);
-      if (!isWhite) {
-        break;
-      }
-      rowOffset++;
-    }
+    rowOffset = row.getNextSet(rowOffset);
 
-    int counterPosition = 0;
+    // Try every window of runs starting with a black one from there, as long as a run follows it
+    int runCount = row.getRunCount();
     int patternStart = rowOffset;
-    for (int x = rowOffset; x < width; x++) {
-      if (row.get(x) ^ isWhite) {
-        counters[counterPosition]++;
-      } else {
-        if (counterPosition == 3) {
-          if (searchingEvenPair) {
-            reverseCounters(counters);
-          }
-
-          if (isFinderPattern(counters)){
-            this.startEnd[0] = patternStart;
-            this.startEnd[1] = x;
-            return;
-          }
-
-          if (searchingEvenPair) {
-            reverseCounters(counters);
-          }
+    for (int run = row.getRun(rowOffset); run + counters.length < runCount; run += 2) {
+      recordRuns(row, run, patternStart, counters);
+      if (searchingEvenPair) {
+        reverseCounters(counters);
+      }
 
-          patternStart += counters[0] + counters[1];
-          counters[0] = counters[2];
-          counters[1] = counters[3];
-          counters[2] = 0;
-          counters[3] = 0;
-          counterPosition--;
-        } else {
-          counterPosition++;
-        }
-        counters[counterPosition] = 1;
-        isWhite = !isWhite;
+      if (isFinderPattern(counters)){
+        this.startEnd[0] = patternStart;
+        this.startEnd[1] = row.getRunEnd(run + counters.length - 1);
+        return;
       }
+      patternStart = row.getRunStart(run + 2);
     }
     throw NotFoundException.getNotFoundInstance();
   }
@@ -574,4 +544,9 @@ public final class RSSExpandedReader extends AbstractRSSReader {
       decrement(this.getEvenCounts(), this.getEvenRoundingErrors());
     }
   }
+
+  @Override
+  protected OneDReader copy() {
+    return new RSSExpandedReader();
+  }
 }
@@ -20,6 +20,7 @@ import com.google.zxing.BarcodeFormat;
 import com.google.zxing.EncodeHintType;
 import com.google.zxing.Writer;
 import com.google.zxing.WriterException;
+import com.google.zxing.common.BitArray;
 import com.google.zxing.common.BitMatrix;
 import com.google.zxing.qrcode.encoder.ByteMatrix;
 import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
@@ -105,12 +106,21 @@ public final class QRCodeWriter implements Writer {
 
     BitMatrix output = new BitMatrix(outputWidth, outputHeight);
 
+    BitArray inputRow = new BitArray(inputWidth);
+    BitArray outputRow = new BitArray(outputWidth);
     for (int inputY = 0, outputY = topPadding; inputY < inputHeight; inputY++, outputY += multiple) {
-      // Write the contents of this row of the barcode
-      for (int inputX = 0, outputX = leftPadding; inputX < inputWidth; inputX++, outputX += multiple) {
-        if (input.get(inputX, inputY) == 1) {
-          output.setRegion(outputX, outputY, multiple, multiple);
-        }
+      // Scale this row of the barcode one run of dark modules at a time, then copy it to all the
+      // output rows it covers
+      inputRow = input.getRow(inputY, inputRow);
+      outputRow.clear();
+      int inputX = inputRow.getNextSet(0);
+      while (inputX < inputWidth) {
+        int runEnd = inputRow.getNextUnset(inputX);
+        outputRow.setRange(leftPadding + inputX * multiple, leftPadding + runEnd * multiple);
+        inputX = inputRow.getNextSet(runEnd);
+      }
+      for (int i = 0; i < multiple; i++) {
+        output.setRow(outputY + i, outputRow);
       }
     }
 
@@ -92,56 +92,27 @@ final class AlignmentPatternFinder {
     // We are looking for black/white/black modules in 1:1:1 ratio;
     // this tracks the number of black/white/black modules seen so far
     int[] stateCount = new int[3];
+    int[] transitions = new int[width];
     for (int iGen = 0; iGen < height; iGen++) {
       // Search from middle outwards
       int i = middleI + ((iGen & 0x01) == 0 ? (iGen + 1) >> 1 : -((iGen + 1) >> 1));
-      stateCount[0] = 0;
-      stateCount[1] = 0;
-      stateCount[2] = 0;
-      int j = startX;
-      // Burn off leading white pixels before anything else; if we start in the middle of
-      // a white run, it doesn't make sense to count its length, since we don't know if the
-      // white run continued to the left of the start point
-      while (j < maxJ && !image.get(j, i)) {
-        j++;
-      }
-      int currentState = 0;
-      while (j < maxJ) {
-        if (image.get(j, i)) {
-          // Black pixel
-          if (currentState == 1) { // Counting black pixels
-            stateCount[currentState]++;
-          } else { // Counting white pixels
-            if (currentState == 2) { // A winner?
-              if (foundPatternCross(stateCount)) { // Yes
-                AlignmentPattern confirmed = handlePossibleCenter(stateCount, i, j);
-                if (confirmed != null) {
-                  return confirmed;
-                }
-              }
-              stateCount[0] = stateCount[2];
-              stateCount[1] = 1;
-              stateCount[2] = 0;
-              currentState = 1;
-            } else {
-              stateCount[++currentState]++;
-            }
-          }
-        } else { // White pixel
-          if (currentState == 1) { // Counting black pixels
-            currentState++;
+      // Leading white pixels don't count: if we start in the middle of a white run, it doesn't
+      // make sense to count its length, since we don't know if the white run continued to the
+      // left of the start point. Black runs start at even indices.
+      int count = image.getRowTransitions(i, startX, maxJ, transitions);
+      // Look at each black run between two white ones, the last of which may reach maxJ
+      for (int first = 1; first + 2 < count; first += 2) {
+        stateCount[0] = transitions[first + 1] - transitions[first];
+        stateCount[1] = transitions[first + 2] - transitions[first + 1];
+        int end = first + 3 < count ? transitions[first + 3] : maxJ;
+        stateCount[2] = end - transitions[first + 2];
+        if (foundPatternCross(stateCount)) {
+          AlignmentPattern confirmed = handlePossibleCenter(stateCount, i, end);
+          if (confirmed != null) {
+            return confirmed;
           }
-          stateCount[currentState]++;
         }
-        j++;
       }
-      if (foundPatternCross(stateCount)) {
-        AlignmentPattern confirmed = handlePossibleCenter(stateCount, i, maxJ);
-        if (confirmed != null) {
-          return confirmed;
-        }
-      }
-
     }
 
     // Hmm, nothing we saw was observed and confirmed twice. If we had
@@ -92,86 +92,52 @@ public class FinderPatternFinder {
 
     boolean done = false;
     int[] stateCount = new int[5];
+    int[] transitions = new int[maxJ];
     for (int i = iSkip - 1; i < maxI && !done; i += iSkip) {
-      // Get a row of black/white values
-      stateCount[0] = 0;
-      stateCount[1] = 0;
-      stateCount[2] = 0;
-      stateCount[3] = 0;
-      stateCount[4] = 0;
-      int currentState = 0;
-      for (int j = 0; j < maxJ; j++) {
-        if (image.get(j, i)) {
-          // Black pixel
-          if ((currentState & 1) == 1) { // Counting white pixels
-            currentState++;
-          }
-          stateCount[currentState]++;
-        } else { // White pixel
-          if ((currentState & 1) == 0) { // Counting black pixels
-            if (currentState == 4) { // A winner?
-              if (foundPatternCross(stateCount)) { // Yes
-                boolean confirmed = handlePossibleCenter(stateCount, i, j);
-                if (confirmed) {
-                  // Start examining every other line. Checking each line turned out to be too
-                  // expensive and didn't improve performance.
-                  iSkip = 2;
-                  if (hasSkipped) {
-                    done = haveMultiplyConfirmedCenters();
-                  } else {
-                    int rowSkip = findRowSkip();
-                    if (rowSkip > stateCount[2]) {
-                      // Skip rows between row of lower confirmed center
-                      // and top of presumed third confirmed center
-                      // but back up a bit to get a full chance of detecting
-                      // it, entire width of center of finder pattern
-
-                      // Skip by rowSkip, but back off by stateCount[2] (size of last center
-                      // of pattern we saw) to be conservative, and also back off by iSkip which
-                      // is about to be re-added
-                      i += rowSkip - stateCount[2] - iSkip;
-                      j = maxJ - 1;
-                    }
-                  }
-                } else {
-                  stateCount[0] = stateCount[2];
-                  stateCount[1] = stateCount[3];
-                  stateCount[2] = stateCount[4];
-                  stateCount[3] = 1;
-                  stateCount[4] = 0;
-                  currentState = 3;
-                  continue;
-                }
-                // Clear state to start looking again
-                currentState = 0;
-                stateCount[0] = 0;
-                stateCount[1] = 0;
-                stateCount[2] = 0;
-                stateCount[3] = 0;
-                stateCount[4] = 0;
-              } else { // No, shift counts back by two
-                stateCount[0] = stateCount[2];
-                stateCount[1] = stateCount[3];
-                stateCount[2] = stateCount[4];
-                stateCount[3] = 1;
-                stateCount[4] = 0;
-                currentState = 3;
-              }
-            } else {
-              stateCount[++currentState]++;
+      // Get a row as runs of black/white pixels; transitions[first] starts the black run that
+      // begins a candidate pattern, which ends where transitions[first + 5] does.
+      int count = image.getRowTransitions(i, 0, maxJ, transitions);
+      int first = 0;
+      boolean skippedRows = false;
+      for (; first + 5 < count; first += 2) {
+        int end = getStateCount(transitions, count, first, maxJ, stateCount);
+        if (foundPatternCross(stateCount) && handlePossibleCenter(stateCount, i, end)) {
+          // Start examining every other line. Checking each line turned out to be too
+          // expensive and didn't improve performance.
+          iSkip = 2;
+          if (hasSkipped) {
+            done = haveMultiplyConfirmedCenters();
+          } else {
+            int rowSkip = findRowSkip();
+            if (rowSkip > stateCount[2]) {
+              // Skip rows between row of lower confirmed center
+              // and top of presumed third confirmed center
+              // but back up a bit to get a full chance of detecting
+              // it, entire width of center of finder pattern
+
+              // Skip by rowSkip, but back off by stateCount[2] (size of last center
+              // of pattern we saw) to be conservative, and also back off by iSkip which
+              // is about to be re-added
+              i += rowSkip - stateCount[2] - iSkip;
+              skippedRows = true;
+              break;
             }
-          } else { // Counting white pixels
-            stateCount[currentState]++;
           }
+          // Start looking again after the white run that follows the pattern
+          first += 4;
         }
       }
-      if (foundPatternCross(stateCount)) {
-        boolean confirmed = handlePossibleCenter(stateCount, i, maxJ);
-        if (confirmed) {
-          iSkip = stateCount[0];
-          if (hasSkipped) {
-            // Found a third one
-            done = haveMultiplyConfirmedCenters();
+      // A pattern whose last black run reaches the end of the row
+      if (!skippedRows && first + 5 == count) {
+        getStateCount(transitions, count, first, maxJ, stateCount);
+        if (foundPatternCross(stateCount)) {
+          boolean confirmed = handlePossibleCenter(stateCount, i, maxJ);
+          if (confirmed) {
+            iSkip = stateCount[0];
+            if (hasSkipped) {
+              // Found a third one
+              done = haveMultiplyConfirmedCenters();
+            }
           }
         }
       }
@@ -183,6 +149,26 @@ public class FinderPatternFinder {
     return new FinderPatternInfo(patternInfo);
   }
 
+  /**
+   * Reads the lengths of five runs of a row, black/white/black/white/black, from its transitions
+   * (see {@link BitMatrix#getRowTransitions(int, int, int, int[])}).
+   *
+   * @param transitions where the row changes color
+   * @param count number of transitions in the row
+   * @param first index of the transition that starts the first black run
+   * @param maxJ end of the row
+   * @param stateCount where to write the lengths of the runs
+   * @return end of the last black run
+   */
+  protected static int getStateCount(int[] transitions, int count, int first, int maxJ,
+      int[] stateCount) {
+    for (int k = 0; k < 5; k++) {
+      int next = first + k + 1;
+      stateCount[k] = (next < count ? transitions[next] : maxJ) - transitions[first + k];
+    }
+    return first + 5 < count ? transitions[first + 5] : maxJ;
+  }
+
   /**
    * Given a count of black/white/black/white/black pixels just seen and an end position,
    * figures the location of the center of this run.
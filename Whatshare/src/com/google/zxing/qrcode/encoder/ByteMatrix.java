@@ -16,25 +16,38 @@
 
 package com.google.zxing.qrcode.encoder;
 
+import com.google.zxing.common.BitArray;
+
 /**
- * A class which wraps a 2D array of bytes. The default usage is signed. If you want to use it as a
- * unsigned container, it's up to you to do byteValue & 0xff at each location.
+ * A matrix of QR code modules, each of which is either empty (-1, not set yet), light (0) or
+ * dark (1).
  *
  * JAVAPORT: The original code was a 2D array of ints, but since it only ever gets assigned
  * -1, 0, and 1, I'm going to use less memory and go with bytes.
  *
+ * The bytes are now two bits per module instead, whether it is set and whether it is dark, in
+ * rows of 32 bit words laid out like those of {@link com.google.zxing.common.BitMatrix}, so that
+ * a version 40 symbol takes about 8KB rather than 31KB and its dark modules can be copied out a word at
+ * a time.
+ *
  * @author dswitkin@google.com (Daniel Switkin)
  */
 public final class ByteMatrix {
 
-  private final byte[][] bytes;
   private final int width;
   private final int height;
+  private final int rowSize;
+  // Bit x of row y is bit (x & 0x1f) of word y * rowSize + (x >> 5), 0 past the width.
+  private final int[] setBits;
+  // Never set where setBits isn't.
+  private final int[] darkBits;
 
   public ByteMatrix(int width, int height) {
-    bytes = new byte[height][width];
     this.width = width;
     this.height = height;
+    rowSize = (width + 31) >> 5;
+    setBits = new int[rowSize * height];
+    darkBits = new int[rowSize * height];
   }
 
   public int getHeight() {
@@ -46,30 +59,101 @@ public final class ByteMatrix {
   }
 
   public byte get(int x, int y) {
-    return bytes[y][x];
-  }
-
-  public byte[][] getArray() {
-    return bytes;
+    int offset = y * rowSize + (x >> 5);
+    int mask = 1 << (x & 0x1f);
+    if ((setBits[offset] & mask) == 0) {
+      return -1;
+    }
+    return (byte) ((darkBits[offset] & mask) == 0 ? 0 : 1);
   }
 
   public void set(int x, int y, byte value) {
-    bytes[y][x] = value;
+    int offset = y * rowSize + (x >> 5);
+    int mask = 1 << (x & 0x1f);
+    switch (value) {
+      case -1:
+        setBits[offset] &= ~mask;
+        darkBits[offset] &= ~mask;
+        break;
+      case 0:
+        setBits[offset] |= mask;
+        darkBits[offset] &= ~mask;
+        break;
+      case 1:
+        setBits[offset] |= mask;
+        darkBits[offset] |= mask;
+        break;
+      default:
+        throw new IllegalArgumentException("Invalid module value: " + value);
+    }
   }
 
   public void set(int x, int y, int value) {
-    bytes[y][x] = (byte) value;
+    set(x, y, (byte) value);
   }
 
   public void set(int x, int y, boolean value) {
-    bytes[y][x] = (byte) (value ? 1 : 0);
+    int offset = y * rowSize + (x >> 5);
+    int mask = 1 << (x & 0x1f);
+    setBits[offset] |= mask;
+    if (value) {
+      darkBits[offset] |= mask;
+    } else {
+      darkBits[offset] &= ~mask;
+    }
   }
 
   public void clear(byte value) {
+    if (value != -1 && value != 0 && value != 1) {
+      throw new IllegalArgumentException("Invalid module value: " + value);
+    }
+    int lastWordMask = -1 >>> ((rowSize << 5) - width);
     for (int y = 0; y < height; ++y) {
-      for (int x = 0; x < width; ++x) {
-        bytes[y][x] = value;
+      int offset = y * rowSize;
+      for (int i = 0; i < rowSize; i++) {
+        int bits = value == -1 ? 0 : (i == rowSize - 1 ? lastWordMask : -1);
+        setBits[offset + i] = bits;
+        darkBits[offset + i] = value == 1 ? bits : 0;
+      }
+    }
+  }
+
+  /**
+   * @param y row to get
+   * @param row An optional caller-allocated BitArray, will be allocated if null or too small
+   * @return the dark modules of row y, empty and light modules both unset; this reference should
+   *         always be used even when passing your own row
+   */
+  public BitArray getRow(int y, BitArray row) {
+    if (row == null || row.getSize() < width) {
+      row = new BitArray(width);
+    }
+    System.arraycopy(darkBits, y * rowSize, row.getBitArray(), 0, rowSize);
+    return row;
+  }
+
+  /**
+   * Packs row y into longs, 64 modules to a long, module x in bit (x & 0x3f) of packed[x >> 6].
+   *
+   * @param value which modules to set the bits of: -1, 0 or 1
+   */
+  void getRow(int y, int value, long[] packed) {
+    int offset = y * rowSize;
+    int lastWordMask = -1 >>> ((rowSize << 5) - width);
+    for (int i = 0; i < packed.length; i++) {
+      packed[i] = 0L;
+    }
+    for (int i = 0; i < rowSize; i++) {
+      int set = setBits[offset + i];
+      int bits;
+      if (value == 1) {
+        bits = darkBits[offset + i];
+      } else if (value == 0) {
+        bits = set & ~darkBits[offset + i];
+      } else {
+        bits = ~set & (i == rowSize - 1 ? lastWordMask : -1);
       }
+      packed[i >> 1] |= (bits & 0xFFFFFFFFL) << ((i & 1) << 5);
     }
   }
 
@@ -78,7 +162,7 @@ public final class ByteMatrix {
     StringBuilder result = new StringBuilder(2 * width * height + 2);
     for (int y = 0; y < height; ++y) {
       for (int x = 0; x < width; ++x) {
-        switch (bytes[y][x]) {
+        switch (get(x, y)) {
           case 0:
             result.append(" 0");
             break;
@@ -52,15 +52,6 @@ public final class Encoder {
   private Encoder() {
   }
 
-  // The mask penalty calculation is complicated.  See Table 21 of JISX0510:2004 (p.45) for details.
-  // Basically it applies four rules and summate all penalties.
-  private static int calculateMaskPenalty(ByteMatrix matrix) {
-    return MaskUtil.applyMaskPenaltyRule1(matrix)
-        + MaskUtil.applyMaskPenaltyRule2(matrix)
-        + MaskUtil.applyMaskPenaltyRule3(matrix)
-        + MaskUtil.applyMaskPenaltyRule4(matrix);
-  }
-
   /**
    *  Encode "bytes" with the error correction level "ecLevel". The encoding mode will be chosen
    * internally by chooseMode(). On success, store the result in "qrCode".
@@ -235,12 +226,15 @@ public final class Encoder {
                                        Version version,
                                        ByteMatrix matrix) throws WriterException {
 
+    // The mask penalty calculation is complicated.  See Table 21 of JISX0510:2004 (p.45) for details.
+    // Basically it applies four rules and summate all penalties. The matrix is only laid out once,
+    // the evaluator applies each mask to it.
+    MaskEvaluator evaluator = new MaskEvaluator(bits, ecLevel, version, matrix);
     int minPenalty = Integer.MAX_VALUE;  // Lower penalty is better.
     int bestMaskPattern = -1;
     // We try all mask patterns to choose the best one.
     for (int maskPattern = 0; maskPattern < QRCode.NUM_MASK_PATTERNS; maskPattern++) {
-      MatrixUtil.buildMatrix(bits, ecLevel, version, maskPattern, matrix);
-      int penalty = calculateMaskPenalty(matrix);
+      int penalty = evaluator.getPenalty(maskPattern);
       if (penalty < minPenalty) {
         minPenalty = penalty;
         bestMaskPattern = maskPattern;
@@ -428,17 +422,8 @@ public final class Encoder {
   }
 
   static byte[] generateECBytes(byte[] dataBytes, int numEcBytesInBlock) {
-    int numDataBytes = dataBytes.length;
-    int[] toEncode = new int[numDataBytes + numEcBytesInBlock];
-    for (int i = 0; i < numDataBytes; i++) {
-      toEncode[i] = dataBytes[i] & 0xFF;
-    }
-    new ReedSolomonEncoder(GenericGF.QR_CODE_FIELD_256).encode(toEncode, numEcBytesInBlock);
-
     byte[] ecBytes = new byte[numEcBytesInBlock];
-    for (int i = 0; i < numEcBytesInBlock; i++) {
-      ecBytes[i] = (byte) toEncode[numDataBytes + i];
-    }
+    new ReedSolomonEncoder(GenericGF.QR_CODE_FIELD_256).encode(dataBytes, ecBytes);
     return ecBytes;
   }
 
@@ -0,0 +1,284 @@
+/*
+ * Copyright 2013 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.qrcode.encoder;
+
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import com.google.zxing.qrcode.decoder.Version;
+
+/**
+ * Computes the penalty of each mask pattern for one QR code, giving exactly the same figures as
+ * the rules in {@link MaskUtil} on the matrix {@link MatrixUtil#buildMatrix} would build with
+ * that mask, without building it.
+ *
+ * The matrix is laid out once, unmasked, as rows of packed bits (bit x of a row is module x,
+ * least significant bit first). A mask is then a XOR of each row with the mask pattern restricted
+ * to the data modules, plus the type information of that mask, and the four rules are computed
+ * 64 modules at a time on the rows and on their transpose.
+ *
+ * Not thread safe.
+ */
+final class MaskEvaluator {
+
+  // Penalty weights from section 6.8.2.1, as in MaskUtil
+  private static final int N1 = 3;
+  private static final int N2 = 3;
+  private static final int N3 = 40;
+  private static final int N4 = 10;
+
+  // Every mask pattern repeats every 12 rows.
+  private static final int MASK_PERIOD = 12;
+  // Type information sits in row 8 and column 8, next to the finder patterns.
+  private static final int TYPE_INFO_EDGE = 9;
+
+  private final ErrorCorrectionLevel ecLevel;
+  private final ByteMatrix matrix;
+  private final int dimension;
+  private final int words;
+  private final long[][] unmasked;
+  private final long[][] dataModules;
+  private final long[][] masked;
+  private final long[][] transposed;
+  private final long[][] maskRows;
+  private final long[] block = new long[64];
+
+  /**
+   * Lays out the matrix without mask. The matrix is only used as a scratch area, and is left in
+   * an unspecified state.
+   */
+  MaskEvaluator(BitArray dataBits,
+                ErrorCorrectionLevel ecLevel,
+                Version version,
+                ByteMatrix matrix) throws WriterException {
+    this.ecLevel = ecLevel;
+    this.matrix = matrix;
+    dimension = matrix.getWidth();
+    words = (dimension + 63) >> 6;
+    unmasked = new long[dimension][words];
+    dataModules = new long[dimension][words];
+    masked = new long[dimension][words];
+    transposed = new long[dimension][words];
+    maskRows = new long[MASK_PERIOD][words];
+
+    // Same steps as MatrixUtil.buildMatrix(), modules still empty before the data are the data
+    // modules.
+    MatrixUtil.clearMatrix(matrix);
+    MatrixUtil.embedBasicPatterns(version, matrix);
+    MatrixUtil.embedTypeInfo(ecLevel, 0, matrix);
+    MatrixUtil.maybeEmbedVersionInfo(version, matrix);
+    for (int y = 0; y < dimension; y++) {
+      matrix.getRow(y, -1, dataModules[y]);
+    }
+    MatrixUtil.embedDataBits(dataBits, -1, matrix);
+    for (int y = 0; y < dimension; y++) {
+      matrix.getRow(y, 1, unmasked[y]);
+    }
+  }
+
+  /**
+   * @return the sum of the four penalty rules for the matrix masked with maskPattern
+   */
+  int getPenalty(int maskPattern) throws WriterException {
+    for (int y = 0; y < MASK_PERIOD; y++) {
+      long[] maskRow = maskRows[y];
+      for (int x = 0; x < dimension; x++) {
+        if (MaskUtil.getDataMaskBit(maskPattern, x, y)) {
+          maskRow[x >> 6] |= 1L << (x & 63);
+        } else {
+          maskRow[x >> 6] &= ~(1L << (x & 63));
+        }
+      }
+    }
+    MatrixUtil.embedTypeInfo(ecLevel, maskPattern, matrix);
+    for (int y = 0; y < dimension; y++) {
+      long[] row = masked[y];
+      if (y < TYPE_INFO_EDGE || y >= dimension - TYPE_INFO_EDGE) {
+        matrix.getRow(y, 1, row);
+      } else {
+        System.arraycopy(unmasked[y], 0, row, 0, words);
+      }
+      long[] maskRow = maskRows[y % MASK_PERIOD];
+      long[] data = dataModules[y];
+      for (int i = 0; i < words; i++) {
+        row[i] ^= maskRow[i] & data[i];
+      }
+    }
+    transpose(masked, transposed);
+
+    int penalty = 0;
+    int darkModules = 0;
+    for (int y = 0; y < dimension; y++) {
+      penalty += applyRules1And3(masked[y]) + applyRules1And3(transposed[y]);
+      if (y + 1 < dimension) {
+        penalty += applyRule2(masked[y], masked[y + 1]);
+      }
+      for (long word : masked[y]) {
+        darkModules += Long.bitCount(word);
+      }
+    }
+    int numTotalCells = dimension * dimension;
+    double darkRatio = (double) darkModules / numTotalCells;
+    int fivePercentVariances = (int) (Math.abs(darkRatio - 0.5) * 20.0); // * 100.0 / 5.0
+    return penalty + fivePercentVariances * N4;
+  }
+
+  /**
+   * Rule 1 (runs of five or more modules of the same color) and rule 3 (1:1:3:1:1 patterns
+   * with four light modules on either side) along one row.
+   */
+  private int applyRules1And3(long[] row) {
+    int rule1 = 0;
+    int rule3 = 0;
+    for (int i = 0; i < words; i++) {
+      long b0 = row[i];
+      long b1 = moduleBits(row, i, 1);
+      long b2 = moduleBits(row, i, 2);
+      long b3 = moduleBits(row, i, 3);
+      long b4 = moduleBits(row, i, 4);
+      long b5 = moduleBits(row, i, 5);
+      long b6 = moduleBits(row, i, 6);
+
+      // Runs: a run of length modules has length - 4 windows of five equal modules, the first
+      // of which adds N1 - 1 to make N1 + (length - 5).
+      long equal0 = ~(b0 ^ b1);
+      long equal1 = ~(b1 ^ b2);
+      long equal2 = ~(b2 ^ b3);
+      long equal3 = ~(b3 ^ b4);
+      long runs = equal0 & equal1 & equal2 & equal3 & validFrom(i, 0, dimension - 5);
+      long runStarts = runs & (moduleBits(row, i, -1) ^ b0);
+      if (i == 0) {
+        // The first module of the row starts a run whatever comes before it.
+        runStarts |= runs & 1L;
+      }
+      rule1 += Long.bitCount(runs) + (N1 - 1) * Long.bitCount(runStarts);
+
+      // Dark, light, 3 dark, light, dark; the last dark module can't be past the row's end.
+      long finder = b0 & ~b1 & b2 & b3 & b4 & ~b5 & b6;
+      if (finder != 0) {
+        long lightAfter = ~(moduleBits(row, i, 7) | moduleBits(row, i, 8) |
+            moduleBits(row, i, 9) | moduleBits(row, i, 10)) & validFrom(i, 0, dimension - 11);
+        long lightBefore = ~(moduleBits(row, i, -1) | moduleBits(row, i, -2) |
+            moduleBits(row, i, -3) | moduleBits(row, i, -4)) & validFrom(i, 4, dimension - 1);
+        rule3 += Long.bitCount(finder & (lightAfter | lightBefore));
+      }
+    }
+    // MaskUtil only penalizes a run that reaches the end of the row if it's longer than five.
+    int lastStart = dimension - 5;
+    if (isRunOfFiveAt(row, lastStart) &&
+        (lastStart == 0 || bit(row, lastStart - 1) != bit(row, lastStart))) {
+      rule1 -= N1;
+    }
+    return rule1 + N3 * rule3;
+  }
+
+  /**
+   * Rule 2: 2x2 blocks of the same color, in the rows at y and y + 1.
+   */
+  private int applyRule2(long[] row, long[] nextRow) {
+    int blocks = 0;
+    for (int i = 0; i < words; i++) {
+      long top = row[i];
+      long bottom = nextRow[i];
+      long same = ~(top ^ bottom) & ~(top ^ moduleBits(row, i, 1)) &
+          ~(bottom ^ moduleBits(nextRow, i, 1));
+      blocks += Long.bitCount(same & validFrom(i, 0, dimension - 2));
+    }
+    return N2 * blocks;
+  }
+
+  private boolean isRunOfFiveAt(long[] row, int x) {
+    boolean color = bit(row, x);
+    for (int i = 1; i < 5; i++) {
+      if (bit(row, x + i) != color) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean bit(long[] row, int x) {
+    return (row[x >> 6] & (1L << (x & 63))) != 0;
+  }
+
+  /**
+   * @return the 64 modules of row starting at module 64 * word + offset, the first one in the
+   *         least significant bit; modules outside the row are light
+   */
+  private static long moduleBits(long[] row, int word, int offset) {
+    int start = (word << 6) + offset;
+    int index = start >> 6;
+    int shift = start & 63;
+    long low = index >= 0 && index < row.length ? row[index] : 0L;
+    if (shift == 0) {
+      return low;
+    }
+    long high = index + 1 >= 0 && index + 1 < row.length ? row[index + 1] : 0L;
+    return (low >>> shift) | (high << (64 - shift));
+  }
+
+  /**
+   * @return the bits of word for modules from first to last inclusive
+   */
+  private static long validFrom(int word, int first, int last) {
+    long bits = 0L;
+    int base = word << 6;
+    int from = Math.max(first - base, 0);
+    int to = Math.min(last - base, 63);
+    if (from <= to) {
+      bits = (-1L >>> (63 - to)) & (-1L << from);
+    }
+    return bits;
+  }
+
+  /**
+   * Transposes rows into columns, 64x64 modules at a time.
+   */
+  private void transpose(long[][] rows, long[][] columns) {
+    for (int rowWord = 0; rowWord < words; rowWord++) {
+      for (int columnWord = 0; columnWord < words; columnWord++) {
+        for (int i = 0; i < 64; i++) {
+          int y = (rowWord << 6) + i;
+          block[i] = y < dimension ? rows[y][columnWord] : 0L;
+        }
+        transpose64(block);
+        for (int i = 0; i < 64; i++) {
+          int x = (columnWord << 6) + i;
+          if (x < dimension) {
+            columns[x][rowWord] = block[i];
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Transposes a 64x64 bit matrix in place, bit j of a[i] trading places with bit i of a[j], by
+   * swapping ever smaller blocks across the diagonal (Hacker's Delight, 7-3).
+   */
+  private static void transpose64(long[] a) {
+    long m = 0x00000000FFFFFFFFL;
+    for (int j = 32; j != 0; j >>= 1, m ^= m << j) {
+      for (int k = 0; k < 64; k = ((k | j) + 1) & ~j) {
+        long t = ((a[k] >>> j) ^ a[k | j]) & m;
+        a[k] ^= t << j;
+        a[k | j] ^= t;
+      }
+    }
+  }
+
+}
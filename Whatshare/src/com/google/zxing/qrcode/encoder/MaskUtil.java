@@ -48,13 +48,14 @@ final class MaskUtil {
    */
   static int applyMaskPenaltyRule2(ByteMatrix matrix) {
     int penalty = 0;
-    byte[][] array = matrix.getArray();
     int width = matrix.getWidth();
     int height = matrix.getHeight();
     for (int y = 0; y < height - 1; y++) {
       for (int x = 0; x < width - 1; x++) {
-        int value = array[y][x];
-        if (value == array[y][x + 1] && value == array[y + 1][x] && value == array[y + 1][x + 1]) {
+        int value = matrix.get(x, y);
+        if (value == matrix.get(x + 1, y) &&
+            value == matrix.get(x, y + 1) &&
+            value == matrix.get(x + 1, y + 1)) {
           penalty++;
         }
       }
@@ -69,50 +70,49 @@ final class MaskUtil {
    */
   static int applyMaskPenaltyRule3(ByteMatrix matrix) {
     int penalty = 0;
-    byte[][] array = matrix.getArray();
     int width = matrix.getWidth();
     int height = matrix.getHeight();
     for (int y = 0; y < height; y++) {
       for (int x = 0; x < width; x++) {
         // Tried to simplify following conditions but failed.
         if (x + 6 < width &&
-            array[y][x] == 1 &&
-            array[y][x +  1] == 0 &&
-            array[y][x +  2] == 1 &&
-            array[y][x +  3] == 1 &&
-            array[y][x +  4] == 1 &&
-            array[y][x +  5] == 0 &&
-            array[y][x +  6] == 1 &&
+            matrix.get(x, y) == 1 &&
+            matrix.get(x +  1, y) == 0 &&
+            matrix.get(x +  2, y) == 1 &&
+            matrix.get(x +  3, y) == 1 &&
+            matrix.get(x +  4, y) == 1 &&
+            matrix.get(x +  5, y) == 0 &&
+            matrix.get(x +  6, y) == 1 &&
             ((x + 10 < width &&
-                array[y][x +  7] == 0 &&
-                array[y][x +  8] == 0 &&
-                array[y][x +  9] == 0 &&
-                array[y][x + 10] == 0) ||
+                matrix.get(x +  7, y) == 0 &&
+                matrix.get(x +  8, y) == 0 &&
+                matrix.get(x +  9, y) == 0 &&
+                matrix.get(x + 10, y) == 0) ||
              (x - 4 >= 0 &&
-                array[y][x -  1] == 0 &&
-                array[y][x -  2] == 0 &&
-                array[y][x -  3] == 0 &&
-                array[y][x -  4] == 0))) {
+                matrix.get(x -  1, y) == 0 &&
+                matrix.get(x -  2, y) == 0 &&
+                matrix.get(x -  3, y) == 0 &&
+                matrix.get(x -  4, y) == 0))) {
           penalty += N3;
         }
         if (y + 6 < height &&
-            array[y][x] == 1  &&
-            array[y +  1][x] == 0  &&
-            array[y +  2][x] == 1  &&
-            array[y +  3][x] == 1  &&
-            array[y +  4][x] == 1  &&
-            array[y +  5][x] == 0  &&
-            array[y +  6][x] == 1 &&
+            matrix.get(x, y) == 1  &&
+            matrix.get(x, y +  1) == 0  &&
+            matrix.get(x, y +  2) == 1  &&
+            matrix.get(x, y +  3) == 1  &&
+            matrix.get(x, y +  4) == 1  &&
+            matrix.get(x, y +  5) == 0  &&
+            matrix.get(x, y +  6) == 1 &&
             ((y + 10 < height &&
-                array[y +  7][x] == 0 &&
-                array[y +  8][x] == 0 &&
-                array[y +  9][x] == 0 &&
-                array[y + 10][x] == 0) ||
+                matrix.get(x, y +  7) == 0 &&
+                matrix.get(x, y +  8) == 0 &&
+                matrix.get(x, y +  9) == 0 &&
+                matrix.get(x, y + 10) == 0) ||
              (y - 4 >= 0 &&
-                array[y -  1][x] == 0 &&
-                array[y -  2][x] == 0 &&
-                array[y -  3][x] == 0 &&
-                array[y -  4][x] == 0))) {
+                matrix.get(x, y -  1) == 0 &&
+                matrix.get(x, y -  2) == 0 &&
+                matrix.get(x, y -  3) == 0 &&
+                matrix.get(x, y -  4) == 0))) {
           penalty += N3;
         }
       }
@@ -126,13 +126,11 @@ final class MaskUtil {
    */
   static int applyMaskPenaltyRule4(ByteMatrix matrix) {
     int numDarkCells = 0;
-    byte[][] array = matrix.getArray();
     int width = matrix.getWidth();
     int height = matrix.getHeight();
     for (int y = 0; y < height; y++) {
-      byte[] arrayY = array[y];
       for (int x = 0; x < width; x++) {
-        if (arrayY[x] == 1) {
+        if (matrix.get(x, y) == 1) {
           numDarkCells++;
         }
       }
@@ -192,12 +190,11 @@ final class MaskUtil {
     int penalty = 0;
     int iLimit = isHorizontal ? matrix.getHeight() : matrix.getWidth();
     int jLimit = isHorizontal ? matrix.getWidth() : matrix.getHeight();
-    byte[][] array = matrix.getArray();
     for (int i = 0; i < iLimit; i++) {
       int numSameBitCells = 0;
       int prevBit = -1;
       for (int j = 0; j < jLimit; j++) {
-        int bit = isHorizontal ? array[i][j] : array[j][i];
+        int bit = isHorizontal ? matrix.get(j, i) : matrix.get(i, j);
         if (bit == prevBit) {
           numSameBitCells++;
         } else {
@@ -25,9 +25,7 @@ import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URLEncoder;
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Random;
 
 import org.apache.http.client.HttpClient;
@@ -155,10 +153,9 @@ class CallGooGlInbound extends AsyncTask<int[], Void, Void> {
             googl = shorten(encodedID, encodedAssignedID);
             if (googl != null) {
                 googl = googl.substring(googl.lastIndexOf('/') + 1);
+                // the list of inbound devices is told by the pairing store
                 saveInboundPairing(deviceToBePaired);
             }
-
-            mainActivity.refreshInboundDevicesList();
         } catch (CantRegisterWithGCMException e) {
             registrationError = e.getMessageID();
         }
@@ -273,10 +270,7 @@ class CallGooGlInbound extends AsyncTask<int[], Void, Void> {
     }
 
     private void saveInboundPairing(PairedDevice newDevice) {
-        List<PairedDevice> alreadyPaired = new ArrayList<PairedDevice>();
-        alreadyPaired = mainActivity.loadInboundPairing();
-        alreadyPaired.add(newDevice);
-        mainActivity.writePairedInboundFile(alreadyPaired);
+        mainActivity.addPairedInbound(newDevice);
         deviceToBePaired = null;
     }
 }
\ No newline at end of file
@@ -26,8 +26,6 @@ import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
-import org.json.JSONException;
-
 import android.annotation.SuppressLint;
 import android.app.Activity;
 import android.app.AlertDialog;
@@ -59,6 +57,8 @@ import android.widget.EditText;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import com.google.zxing.client.android.Intents;
+
 /**
  * Dialogs used throughout the app.
  * 
@@ -214,8 +214,6 @@ public class Dialogs {
                 } catch (IOException e) {
                     // TODO let user know
                     e.printStackTrace();
-                } catch (JSONException e) {
-                    e.printStackTrace();
                 }
                 builder.setPositiveButton(android.R.string.ok,
                         new OnClickListener() {
@@ -436,8 +434,7 @@ public class Dialogs {
                                             @Override
                                             public void run() {
                                                 // @formatter:off
-                                                device.rename(getParam());
-                                                activity.onSelectedDeviceRenamed();
+                                                activity.onSelectedDeviceRenamed(getParam());
 
                                                 ((InputMethodManager) activity
                                                         .getSystemService(Context.INPUT_METHOD_SERVICE))
@@ -543,10 +540,11 @@ public class Dialogs {
                             public void onClick(DialogInterface dialog,
                                     int which) {
                                 Intent intent = new Intent(
-                                        "com.google.zxing.client.android.SCAN");
-                                intent.putExtra(
-                                        "com.google.zxing.client.android.SCAN.SCAN_MODE",
-                                        "QR_CODE_MODE");
+                                        Intents.Scan.ACTION);
+                                intent.putExtra(Intents.Scan.MODE,
+                                        Intents.Scan.QR_CODE_MODE);
+                                intent.putExtra(Intents.Scan.PAIRING_MODE,
+                                        true);
                                 getActivity().startActivityForResult(intent,
                                         MainActivity.QR_CODE_SCANNED);
                             }
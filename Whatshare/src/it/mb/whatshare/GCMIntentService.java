@@ -18,20 +18,9 @@
  */
 package it.mb.whatshare;
 
-import it.mb.whatshare.MainActivity.PairedDevice;
-
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.StreamCorruptedException;
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
@@ -63,6 +52,11 @@ public class GCMIntentService extends GCMBaseIntentService {
     private static final Lock REGISTRATION_LOCK = new ReentrantLock();
     private static final String PROJECT_SERVER_ID = "213874322054";
     private static final String UNKNOWN_GCM_ERROR = "UNKNOWN_GCM_ERROR";
+    private static final String RECEIVED_IDS_FILENAME = "received";
+    /**
+     * Enough to cover all retries of a sender's outbox.
+     */
+    private static final int RECEIVED_IDS_KEPT = 128;
     private static final Map<String, Integer> ERROR_CODES = new HashMap<String, Integer>() {
         private static final long serialVersionUID = 649852390172936228L;
 
@@ -85,9 +79,7 @@ public class GCMIntentService extends GCMBaseIntentService {
     private static AtomicInteger counter = new AtomicInteger();
     private static String registrationID = "";
     private static int errorID = -1;
-
-    private Set<String> senderWhitelist = new HashSet<String>();
-    private long lastCheckedWhitelist;
+    private static RecentMessageIDs receivedIDs;
 
     /**
      * Creates a new intent service for the application.
@@ -142,56 +134,6 @@ public class GCMIntentService extends GCMBaseIntentService {
         return registrationID;
     }
 
-    private void readWhitelist() {
-        File whitelist = new File(getFilesDir(),
-                MainActivity.INBOUND_DEVICES_FILENAME);
-        // if whitelist doesn't exist, don't bother
-        long lastModified = whitelist.exists() ? whitelist.lastModified()
-                : Long.MIN_VALUE;
-
-        if (lastCheckedWhitelist < lastModified) {
-            FileInputStream fis = null;
-            try {
-                fis = openFileInput(MainActivity.INBOUND_DEVICES_FILENAME);
-                ObjectInputStream ois = new ObjectInputStream(fis);
-                Object read = ois.readObject();
-
-                @SuppressWarnings("unchecked")
-                List<PairedDevice> devices = (ArrayList<PairedDevice>) read;
-                senderWhitelist = new HashSet<String>();
-                for (PairedDevice device : devices) {
-                    try {
-                        senderWhitelist
-                                .add(String.valueOf(device.id.hashCode()));
-                    } catch (NullPointerException e) {
-                        // backward compatibility... devices didn't have an ID
-                        senderWhitelist.add(String.valueOf(device.name
-                                .hashCode()));
-                    }
-                }
-            } catch (FileNotFoundException e) {
-                // it's ok, no whitelist, all messages are rejected
-            } catch (StreamCorruptedException e) {
-                e.printStackTrace();
-            } catch (IOException e) {
-                e.printStackTrace();
-            } catch (ClassNotFoundException e) {
-                // TODO here the error should be notified I guess
-                e.printStackTrace();
-            } finally {
-                if (fis != null)
-                    try {
-                        fis.close();
-                    } catch (IOException e) {
-                        // can't do much...
-                        e.printStackTrace();
-                    }
-            }
-            // whatever happens, don't keep checking for nothing
-            lastCheckedWhitelist = lastModified;
-        }
-    }
-
     /*
      * (non-Javadoc)
      * 
@@ -245,9 +187,16 @@ public class GCMIntentService extends GCMBaseIntentService {
         String sender = bundle.getString("sender");
         Utils.debug("new incoming message from %s: %s", sender,
                 bundle.getString("message"));
-        readWhitelist();
 
-        if (senderWhitelist.contains(sender)) {
+        if (SenderWhitelist.get(arg0).contains(sender)) {
+            String id = bundle
+                    .getString(SendToGCMActivity.MESSAGE_ID_EXTRA);
+            // senders before the outbox don't send IDs
+            if (id != null && !getReceivedIDs(arg0).add(sender + ' ' + id)) {
+                Utils.debug("ignoring message %s from %s, already received",
+                        id, sender);
+                return;
+            }
             String type = bundle.getString(MainActivity.INTENT_TYPE_EXTRA);
             if (type == null) {
                 type = MainActivity.SHARE_VIA_WHATSAPP_EXTRA;
@@ -260,6 +209,15 @@ public class GCMIntentService extends GCMBaseIntentService {
         }
     }
 
+    private static synchronized RecentMessageIDs getReceivedIDs(
+            Context context) {
+        if (receivedIDs == null) {
+            receivedIDs = new RecentMessageIDs(new File(context.getFilesDir(),
+                    RECEIVED_IDS_FILENAME), RECEIVED_IDS_KEPT);
+        }
+        return receivedIDs;
+    }
+
     /**
      * Creates a notification informing the user that new content is to be
      * shared.
@@ -0,0 +1,334 @@
+/**
+ * GCMSendQueue.java Created on 24 Oct 2013 Copyright 2013 Michele Bonazza
+ * <emmepuntobi@gmail.com>
+ * 
+ * This file is part of WhatsHare.
+ * 
+ * WhatsHare is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * Foobar is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * WhatsHare. If not, see <http://www.gnu.org/licenses/>.
+ */
+package it.mb.whatshare;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.BasicResponseHandler;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+
+/**
+ * A queue of messages to be sent through GCM, shared by all shares made while
+ * the process lives.
+ * 
+ * <p>
+ * All messages with the same data queued before the first of them is posted
+ * go in a single multicast request to all of their recipients, and a message
+ * queued twice for the same recipient (e.g. a share confirmed twice) is only
+ * sent once. Messages with different data go in separate requests, as GCM
+ * only takes one payload per request. Messages can be made to wait for a
+ * while for others to join them, which only pays off when the same data is
+ * sent to several devices at once: shares made by the app each carry their
+ * own ID, so the app's queue doesn't wait.
+ * 
+ * <p>
+ * Requests are posted on a fixed number of threads through a single HTTP
+ * client, whose connections to GCM are kept alive and reused by the next
+ * requests instead of paying the TCP and TLS handshakes every time.
+ * 
+ * <p>
+ * This class doesn't depend on Android, and can be run on a plain JVM against
+ * any server speaking GCM's HTTP protocol.
+ * 
+ * @author Michele Bonazza
+ * 
+ */
+final class GCMSendQueue {
+
+    /**
+     * The URL of GCM's HTTP connection server.
+     */
+    static final String GCM_URL = "https://android.googleapis.com/gcm/send";
+    /**
+     * GCM refuses multicast requests to more registration IDs than this.
+     */
+    static final int MAX_RECIPIENTS = 1000;
+    /**
+     * Requests sent at the same time to GCM by the queue of this process.
+     */
+    static final int DEFAULT_CONCURRENT_REQUESTS = 2;
+    /**
+     * How long messages wait for others with the same data to join them, by
+     * default not at all: only messages queued while all requests are in
+     * flight are posted together.
+     */
+    static final long DEFAULT_LINGER_MILLIS = 0L;
+    /**
+     * How long messages wait for others with the same data to join them when
+     * the same data is sent to several devices at once.
+     */
+    static final long BATCHING_LINGER_MILLIS = 20L;
+
+    private static final int CONNECTION_TIMEOUT = 10000;
+    private static final int SOCKET_TIMEOUT = 30000;
+    private static final AtomicInteger QUEUE_COUNTER = new AtomicInteger();
+
+    /**
+     * Told how the request carrying a message went, on the thread that posted
+     * it: implementations should return quickly.
+     */
+    interface Listener {
+
+        /**
+         * Called when GCM answered the request, which may still report errors
+         * for some of its recipients.
+         * 
+         * @param response
+         *            the body of GCM's response
+         */
+        void onResponse(String response);
+
+        /**
+         * Called when the request couldn't be posted or GCM refused it.
+         * 
+         * @param e
+         *            the error, an <tt>HttpResponseException</tt> if GCM
+         *            answered with an error status
+         */
+        void onFailure(IOException e);
+    }
+
+    /**
+     * Messages with the same data waiting to be posted together.
+     */
+    private final class Batch implements Callable<String> {
+
+        private final String data;
+        private final Set<String> registrationIDs = new LinkedHashSet<String>();
+        private final List<Listener> listeners = new ArrayList<Listener>();
+        private Future<String> response;
+
+        private Batch(String data) {
+            this.data = data;
+        }
+
+        /*
+         * (non-Javadoc)
+         * 
+         * @see java.util.concurrent.Callable#call()
+         */
+        @Override
+        public String call() throws IOException {
+            synchronized (pending) {
+                // it may have been taken out already if it filled up
+                if (pending.get(data) == this) {
+                    pending.remove(data);
+                }
+            }
+            // nothing gets added to the batch once out of pending
+            String response;
+            try {
+                response = post(registrationIDs, data);
+            } catch (IOException e) {
+                for (Listener listener : listeners) {
+                    listener.onFailure(e);
+                }
+                throw e;
+            }
+            for (Listener listener : listeners) {
+                listener.onResponse(response);
+            }
+            return response;
+        }
+    }
+
+    private final String url;
+    private final String apiKey;
+    private final long lingerMillis;
+    private final DefaultHttpClient client;
+    private final ScheduledThreadPoolExecutor senders;
+    /**
+     * Batches waiting to be posted, by their data.
+     */
+    private final Map<String, Batch> pending = new HashMap<String, Batch>();
+
+    /**
+     * Creates a new queue.
+     * 
+     * @param url
+     *            the URL of the GCM server, {@link #GCM_URL} unless testing
+     * @param apiKey
+     *            the API key sent with every request
+     * @param concurrentRequests
+     *            the maximum number of requests in flight at the same time,
+     *            which is also the number of connections kept alive
+     * @param lingerMillis
+     *            how long messages wait for others with the same data before
+     *            being posted
+     */
+    GCMSendQueue(String url, String apiKey, int concurrentRequests,
+            long lingerMillis) {
+        this.url = url;
+        this.apiKey = apiKey;
+        this.lingerMillis = lingerMillis;
+        client = createClient(concurrentRequests);
+        final int queueNumber = QUEUE_COUNTER.incrementAndGet();
+        senders = new ScheduledThreadPoolExecutor(concurrentRequests,
+                new ThreadFactory() {
+                    private final AtomicInteger threadCounter = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, String.format(
+                                "GCMSendQueue-%d-%d", queueNumber,
+                                threadCounter.incrementAndGet()));
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+    }
+
+    private static DefaultHttpClient createClient(int concurrentRequests) {
+        HttpParams params = new BasicHttpParams();
+        HttpConnectionParams.setConnectionTimeout(params, CONNECTION_TIMEOUT);
+        HttpConnectionParams.setSoTimeout(params, SOCKET_TIMEOUT);
+        HttpConnectionParams.setStaleCheckingEnabled(params, true);
+        // requests are small, and a reused connection would otherwise wait
+        // for the ACK of the headers before sending the body
+        HttpConnectionParams.setTcpNoDelay(params, true);
+        ConnManagerParams.setMaxTotalConnections(params, concurrentRequests);
+        ConnManagerParams.setMaxConnectionsPerRoute(params,
+                new ConnPerRouteBean(concurrentRequests));
+        SchemeRegistry schemes = new SchemeRegistry();
+        schemes.register(new Scheme("http", PlainSocketFactory
+                .getSocketFactory(), 80));
+        schemes.register(new Scheme("https", SSLSocketFactory
+                .getSocketFactory(), 443));
+        return new DefaultHttpClient(new ThreadSafeClientConnManager(params,
+                schemes), params);
+    }
+
+    /**
+     * Queues a message to be sent to a device.
+     * 
+     * @param registrationID
+     *            the GCM registration ID of the recipient
+     * @param data
+     *            the payload of the message, a JSON object
+     * @return the response of GCM to the request that carries the message,
+     *         shared by all messages sent with it; getting it throws an
+     *         <tt>ExecutionException</tt> caused by an <tt>IOException</tt> if
+     *         the request fails
+     */
+    Future<String> send(String registrationID, String data) {
+        return send(registrationID, data, null);
+    }
+
+    /**
+     * Queues a message to be sent to a device.
+     * 
+     * @param registrationID
+     *            the GCM registration ID of the recipient
+     * @param data
+     *            the payload of the message, a JSON object
+     * @param listener
+     *            told how the request carrying the message went, may be
+     *            <code>null</code>
+     * @return the response of GCM to the request that carries the message,
+     *         see {@link #send(String, String)}
+     */
+    Future<String> send(String registrationID, String data,
+            Listener listener) {
+        synchronized (pending) {
+            Batch batch = pending.get(data);
+            if (batch == null) {
+                batch = new Batch(data);
+                batch.response = senders.schedule(batch, lingerMillis,
+                        TimeUnit.MILLISECONDS);
+                pending.put(data, batch);
+            }
+            batch.registrationIDs.add(registrationID);
+            if (listener != null) {
+                batch.listeners.add(listener);
+            }
+            if (batch.registrationIDs.size() == MAX_RECIPIENTS) {
+                // the next message with this data starts a new batch
+                pending.remove(data);
+            }
+            return batch.response;
+        }
+    }
+
+    /**
+     * Posts all messages still waiting, waits for all requests to be done and
+     * closes the connections. Messages sent afterwards are rejected.
+     * 
+     * @throws InterruptedException
+     *             if interrupted while waiting, in which case connections are
+     *             closed anyway
+     */
+    void shutdown() throws InterruptedException {
+        senders.shutdown();
+        try {
+            senders.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } finally {
+            client.getConnectionManager().shutdown();
+        }
+    }
+
+    private String post(Set<String> registrationIDs, String data)
+            throws IOException {
+        StringBuilder body = new StringBuilder(
+                "{\"delay_while_idle\": false, \"registration_ids\": [");
+        String separator = "";
+        for (String registrationID : registrationIDs) {
+            body.append(separator).append('"').append(registrationID)
+                    .append('"');
+            separator = ", ";
+        }
+        body.append("], \"data\": ").append(data).append('}');
+        HttpPost post = new HttpPost(url);
+        post.setEntity(new StringEntity(body.toString(), "UTF-8"));
+        post.setHeader("Content-Type", "application/json");
+        post.setHeader("Authorization", "key=" + apiKey);
+        try {
+            // the handler consumes the response, which gives the connection
+            // back to be reused
+            return client.execute(post, new BasicResponseHandler());
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw e;
+        }
+    }
+
+}
@@ -19,23 +19,26 @@
  */
 package it.mb.whatshare;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.OptionalDataException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Scanner;
 
 import org.json.JSONException;
+import org.json.JSONObject;
 
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.support.v4.app.FragmentActivity;
 import android.text.Html;
 import android.util.Pair;
@@ -46,9 +49,9 @@ import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.View.OnLongClickListener;
+import android.view.ViewGroup;
 import android.widget.AdapterView.AdapterContextMenuInfo;
 import android.widget.ArrayAdapter;
-import android.widget.BaseAdapter;
 import android.widget.TextView;
 import android.widget.Toast;
 
@@ -56,6 +59,7 @@ import com.google.analytics.tracking.android.EasyTracker;
 import com.google.analytics.tracking.android.ExceptionReporter;
 import com.google.analytics.tracking.android.GoogleAnalytics;
 import com.google.analytics.tracking.android.Tracker;
+import com.google.zxing.client.android.Intents;
 
 /**
  * The only activity: it can be created when tapping on a notification (and an
@@ -69,7 +73,8 @@ import com.google.analytics.tracking.android.Tracker;
 public class MainActivity extends FragmentActivity {
 
     /**
-     * The file name of the list containing all inbound devices.
+     * The file name of the list containing all inbound devices, as kept before
+     * the {@link PairingStore}.
      */
     public static final String INBOUND_DEVICES_FILENAME = "inbound";
 
@@ -228,10 +233,65 @@ public class MainActivity extends FragmentActivity {
     static final int QR_CODE_SCANNED = 0;
 
     private PairedDevice outboundDevice, deviceSelectedContextMenu;
-    private List<PairedDevice> inboundDevices = new ArrayList<PairedDevice>();
-    private ArrayAdapter<String> adapter;
+    /**
+     * The list shown by {@link #adapter}, only changed on the UI thread.
+     */
+    private final List<PairedDevice> inboundDevices = new ArrayList<PairedDevice>();
+    private ArrayAdapter<PairedDevice> adapter;
+    private final Handler uiHandler = new Handler(Looper.getMainLooper());
+    /**
+     * Applies changes made to the pairing store to {@link #inboundDevices} on
+     * the UI thread, in the order they were made.
+     */
+    private final PairingStore.Listener inboundListener = new PairingStore.Listener() {
+
+        @Override
+        public void onInboundAdded(final int position,
+                final PairedDevice device) {
+            uiHandler.post(new Runnable() {
+
+                @Override
+                public void run() {
+                    inboundDevices.add(position, device);
+                    adapter.notifyDataSetChanged();
+                }
+            });
+        }
+
+        @Override
+        public void onInboundRemoved(final int position,
+                final PairedDevice device) {
+            uiHandler.post(new Runnable() {
+
+                @Override
+                public void run() {
+                    inboundDevices.remove(position);
+                    adapter.notifyDataSetChanged();
+                }
+            });
+        }
+
+        @Override
+        public void onInboundRenamed(final int position,
+                final PairedDevice device) {
+            uiHandler.post(new Runnable() {
+
+                @Override
+                public void run() {
+                    inboundDevices.get(position).rename(device.name);
+                    adapter.notifyDataSetChanged();
+                }
+            });
+        }
+
+        @Override
+        public void onInboundChanged(List<PairedDevice> devices) {
+            // already applied one device at a time
+        }
+    };
     private Tracker tracker;
     private GoogleAnalytics analytics;
+    private static PairingStore pairingStore;
 
     /*
      * (non-Javadoc)
@@ -285,13 +345,19 @@ public class MainActivity extends FragmentActivity {
      */
     void removePaired() {
         if (deviceSelectedContextMenu != null) {
-            Utils.debug("removePaired(): removing %s... success? %s",
-                    deviceSelectedContextMenu.name,
-                    inboundDevices.remove(deviceSelectedContextMenu));
+            try {
+                Utils.debug("removePaired(): removing %s... success? %s",
+                        deviceSelectedContextMenu.name, getPairingStore(this)
+                                .removeInbound(deviceSelectedContextMenu));
+            } catch (IOException e) {
+                e.printStackTrace();
+                Toast.makeText(
+                        this,
+                        getString(R.string.unpair_fail_notification,
+                                deviceSelectedContextMenu.name),
+                        Toast.LENGTH_SHORT).show();
+            }
             deviceSelectedContextMenu = null;
-            writePairedInboundFile(inboundDevices);
-            BaseAdapter listAdapter = getListAdapter();
-            listAdapter.notifyDataSetChanged();
         } else {
             Utils.debug("removePaired(): no device is currently set to be unpaired");
         }
@@ -299,16 +365,26 @@ public class MainActivity extends FragmentActivity {
 
     /**
      * Renames the currently selected device.
+     * 
+     * @param newName
+     *            the name chosen by the user
      */
-    void onSelectedDeviceRenamed() {
+    void onSelectedDeviceRenamed(String newName) {
         if (deviceSelectedContextMenu != null) {
             Utils.debug("renamePaired(): renamed %s to %s",
-                    deviceSelectedContextMenu.type,
-                    deviceSelectedContextMenu.name);
+                    deviceSelectedContextMenu.name, newName);
+            try {
+                getPairingStore(this).renameInbound(deviceSelectedContextMenu,
+                        newName);
+            } catch (IOException e) {
+                e.printStackTrace();
+                Toast.makeText(
+                        this,
+                        getString(R.string.rename_fail_notification,
+                                deviceSelectedContextMenu.name),
+                        Toast.LENGTH_SHORT).show();
+            }
             deviceSelectedContextMenu = null;
-            writePairedInboundFile(inboundDevices);
-            BaseAdapter listAdapter = getListAdapter();
-            listAdapter.notifyDataSetChanged();
         } else {
             Utils.debug("renamePaired(): no device is currently set to be renamed");
         }
@@ -320,20 +396,10 @@ public class MainActivity extends FragmentActivity {
      */
     private void updateLayout() {
         if (outboundDevice == null) {
-            try {
-                Pair<PairedDevice, String> paired = SendToGCMActivity
-                        .loadOutboundPairing(this);
-                if (paired != null)
-                    outboundDevice = paired.first;
-            } catch (OptionalDataException e) {
-                e.printStackTrace();
-            } catch (ClassNotFoundException e) {
-                e.printStackTrace();
-            } catch (FileNotFoundException e) {
-                // it's ok
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+            Pair<PairedDevice, String> paired = SendToGCMActivity
+                    .loadOutboundPairing(this);
+            if (paired != null)
+                outboundDevice = paired.first;
         }
 
         final TextView outboundView = (TextView) findViewById(R.id.outbound_device);
@@ -369,8 +435,6 @@ public class MainActivity extends FragmentActivity {
             PairOutboundActivity.savePairing(null, this);
         } catch (IOException e) {
             e.printStackTrace();
-        } catch (JSONException e) {
-            e.printStackTrace();
         }
         updateLayout();
     }
@@ -459,18 +523,15 @@ public class MainActivity extends FragmentActivity {
      * Removes all inbound paired devices.
      */
     public void deleteAllInbound() {
-        if (!getApplicationContext().deleteFile(INBOUND_DEVICES_FILENAME)) {
-            if (!inboundDevices.isEmpty()) {
-                Toast.makeText(this,
-                        R.string.delete_all_inbound_fail_notification,
-                        Toast.LENGTH_SHORT).show();
-                return;
-            }
+        try {
+            getPairingStore(this).setInbound(new ArrayList<PairedDevice>());
+        } catch (IOException e) {
+            e.printStackTrace();
+            Toast.makeText(this, R.string.delete_all_inbound_fail_notification,
+                    Toast.LENGTH_SHORT).show();
+            return;
         }
 
-        inboundDevices = new ArrayList<PairedDevice>();
-        BaseAdapter listAdapter = getListAdapter();
-        listAdapter.notifyDataSetChanged();
         Toast.makeText(this, R.string.delete_all_inbound_notification,
                 Toast.LENGTH_SHORT).show();
     }
@@ -527,10 +588,25 @@ public class MainActivity extends FragmentActivity {
         analytics.setDefaultTracker(tracker);
         // start the registration process if needed
         GCMIntentService.registerWithGCM(this);
+        // send again the shares a previous process couldn't send, if any
+        SendToGCMActivity.getOutbox(this);
         View menu = getLayoutInflater().inflate(R.layout.menu, null);
         setContentView(menu);
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see android.support.v4.app.FragmentActivity#onDestroy()
+     */
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (adapter != null) {
+            getPairingStore(this).removeListener(inboundListener);
+        }
+    }
+
     /**
      * Checks whether Whatsapp is installed on this device.
      * 
@@ -585,15 +661,11 @@ public class MainActivity extends FragmentActivity {
                 String result = data.getStringExtra("SCAN_RESULT");
                 try {
                     String[] keys = result.split(" ");
+                    int[] sharedSecret = parseSharedSecret(keys);
 
-                    if (keys.length < SHARED_SECRET_SIZE)
+                    if (sharedSecret == null)
                         throw new NumberFormatException();
 
-                    int[] sharedSecret = new int[SHARED_SECRET_SIZE];
-                    for (int i = 0; i < SHARED_SECRET_SIZE; i++) {
-                        sharedSecret[i] = Integer.valueOf(keys[i]);
-                    }
-
                     String space = "";
                     StringBuilder deviceName = new StringBuilder();
                     for (int i = SHARED_SECRET_SIZE; i < keys.length; i++) {
@@ -605,6 +677,16 @@ public class MainActivity extends FragmentActivity {
                     tracker.sendEvent("qr", "result", "scan_ok", 0L);
                     Dialogs.promptForInboundName(deviceName.toString(),
                             sharedSecret, this);
+                    long cameraOpened = data.getLongExtra(
+                            Intents.Scan.RESULT_CAMERA_OPENED, 0L);
+                    if (cameraOpened > 0) {
+                        long elapsed = SystemClock.elapsedRealtime()
+                                - cameraOpened;
+                        Utils.debug("camera to pairing dialog: %d ms",
+                                elapsed);
+                        tracker.sendTiming("qr", elapsed, "pairing_scan",
+                                null);
+                    }
                 } catch (NumberFormatException e) {
                     tracker.sendEvent("qr", "result", "scan_fail", 0L);
                     Dialogs.onQRFail(this);
@@ -615,6 +697,44 @@ public class MainActivity extends FragmentActivity {
         }
     }
 
+    /**
+     * Returns whether <tt>contents</tt> is the content of a pairing QR code as
+     * generated by {@link PairOutboundActivity}, that is
+     * <tt>"k1 k2 k3 k4 manufacturer model"</tt>.
+     * 
+     * @param contents
+     *            the text of a QR code
+     * @return <code>true</code> if <tt>contents</tt> starts with
+     *         {@link #SHARED_SECRET_SIZE} integers
+     */
+    public static boolean isPairingCode(String contents) {
+        return contents != null
+                && parseSharedSecret(contents.split(" ")) != null;
+    }
+
+    /**
+     * Parses the shared secret at the beginning of a pairing QR code.
+     * 
+     * @param keys
+     *            the content of the QR code, split at spaces
+     * @return the shared secret, or <code>null</code> if <tt>keys</tt> doesn't
+     *         start with {@link #SHARED_SECRET_SIZE} integers
+     */
+    private static int[] parseSharedSecret(String[] keys) {
+        if (keys.length < SHARED_SECRET_SIZE)
+            return null;
+
+        int[] sharedSecret = new int[SHARED_SECRET_SIZE];
+        try {
+            for (int i = 0; i < SHARED_SECRET_SIZE; i++) {
+                sharedSecret[i] = Integer.valueOf(keys[i]);
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return sharedSecret;
+    }
+
     /**
      * Returns whether the argument <tt>deviceID</tt> is valid.
      * 
@@ -640,16 +760,61 @@ public class MainActivity extends FragmentActivity {
     }
 
     /**
-     * Returns a list of all devices currently configured as inbound devices by
-     * loading it from the configuration file.
+     * Returns the store that keeps all paired devices, reading it from file
+     * the first time it's needed in this process.
      * 
-     * @return a (potentially empty) list of currently paired inbound devices
-     */
+     * <p>
+     * Devices paired by versions that kept inbound and outbound devices in two
+     * separate files are moved to the store the first time it's opened.
+     * 
+     * @param context
+     *            the context used to find the store's file
+     * @return the store
+     */
+    static synchronized PairingStore getPairingStore(Context context) {
+        if (pairingStore == null) {
+            File file = new File(context.getFilesDir(), PairingStore.FILENAME);
+            pairingStore = new PairingStore(file);
+            try {
+                pairingStore.load();
+            } catch (IOException e) {
+                e.printStackTrace();
+                // keep it for debugging, and start over with no devices
+                if (!file.renameTo(new File(file.getPath() + ".bad")))
+                    file.delete();
+            }
+            if (!pairingStore.exists()) {
+                migrateLegacyPairings(context, pairingStore);
+            }
+            SenderWhitelist.follow(pairingStore);
+        }
+        return pairingStore;
+    }
+
+    private static void migrateLegacyPairings(Context context,
+            PairingStore store) {
+        List<PairedDevice> inbound = readLegacyInbound(context);
+        PairedDevice outbound = readLegacyOutbound(context);
+        if (inbound.isEmpty() && outbound == null)
+            return;
+        try {
+            store.set(inbound, outbound);
+            context.deleteFile(INBOUND_DEVICES_FILENAME);
+            context.deleteFile(PairOutboundActivity.PAIRING_FILE_NAME);
+            Utils.debug("moved %d inbound device(s) and %s outbound device "
+                    + "to the pairing store", inbound.size(),
+                    outbound == null ? "no" : "the");
+        } catch (IOException e) {
+            // the old files are still there, will try again next time
+            e.printStackTrace();
+        }
+    }
+
     @SuppressWarnings("unchecked")
-    List<PairedDevice> loadInboundPairing() {
+    private static List<PairedDevice> readLegacyInbound(Context context) {
         FileInputStream fis = null;
         try {
-            fis = openFileInput(INBOUND_DEVICES_FILENAME);
+            fis = context.openFileInput(INBOUND_DEVICES_FILENAME);
             ObjectInputStream ois = new ObjectInputStream(fis);
             Object read = ois.readObject();
             return (ArrayList<PairedDevice>) read;
@@ -668,74 +833,78 @@ public class MainActivity extends FragmentActivity {
                 }
         }
         return new ArrayList<PairedDevice>();
-
     }
 
-    /**
-     * Reloads the list of configured inbound devices from file and updates the
-     * list in the UI.
-     */
-    void refreshInboundDevicesList() {
-        runOnUiThread(new Runnable() {
-
-            @Override
-            public void run() {
-                getListAdapter().notifyDataSetChanged();
-            }
-        });
+    private static PairedDevice readLegacyOutbound(Context context) {
+        FileInputStream fis = null;
+        try {
+            fis = context.openFileInput(PairOutboundActivity.PAIRING_FILE_NAME);
+            Scanner scanner = new Scanner(fis).useDelimiter("\\Z");
+            JSONObject json = new JSONObject(scanner.next());
+            String name = json.getString("name");
+            String type = json.getString("type");
+            String assignedID = json.getString("assignedID");
+            return new PairedDevice(assignedID, name, type);
+        } catch (FileNotFoundException e) {
+            // it's ok, no outbound device has been configured
+        } catch (JSONException e) {
+            e.printStackTrace();
+        } finally {
+            if (fis != null)
+                try {
+                    fis.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+        }
+        return null;
     }
 
     /**
-     * Loads the list of configured inbound devices from the configuration file
-     * and creates an {@link ArrayAdapter} wrapping them.
+     * Returns the adapter for the list of inbound devices, creating it the
+     * first time.
+     * 
+     * <p>
+     * Devices are read from the pairing store only then: from that moment on,
+     * the adapter is kept up to date by the store's changes.
      * 
-     * @return a new {@link ArrayAdapter} that contains all currently configured
+     * @return the {@link ArrayAdapter} that contains all currently configured
      *         inbound devices (potentially none)
      */
-    ArrayAdapter<String> getListAdapter() {
-        List<String> deviceNames = new ArrayList<String>();
-        inboundDevices = loadInboundPairing();
-        Utils.debug("%d device(s)", inboundDevices.size());
-
-        for (PairedDevice device : inboundDevices) {
-            deviceNames.add(device.name);
-        }
-
+    ArrayAdapter<PairedDevice> getListAdapter() {
         if (adapter == null) {
-            adapter = new ArrayAdapter<String>(this,
-                    android.R.layout.simple_list_item_1, deviceNames);
-        } else {
-            adapter.clear();
-            for (String deviceName : deviceNames) {
-                adapter.add(deviceName);
-            }
+            inboundDevices.addAll(getPairingStore(this).addListener(
+                    inboundListener));
+            Utils.debug("%d device(s)", inboundDevices.size());
+            adapter = new ArrayAdapter<PairedDevice>(this,
+                    android.R.layout.simple_list_item_1, inboundDevices) {
+
+                @Override
+                public View getView(int position, View convertView,
+                        ViewGroup parent) {
+                    TextView view = (TextView) super.getView(position,
+                            convertView, parent);
+                    view.setText(getItem(position).name);
+                    return view;
+                }
+            };
         }
         return adapter;
     }
 
     /**
-     * Overwrites the current configuration file for outbound devices storing
-     * the argument list of devices.
+     * Adds a newly paired inbound device to the pairing store, without
+     * rewriting the devices already paired.
      * 
-     * @param pairedDevices
-     *            the new list of devices to be saved to disk
+     * @param device
+     *            the new device
      */
-    void writePairedInboundFile(List<PairedDevice> pairedDevices) {
-        FileOutputStream fos = null;
+    void addPairedInbound(PairedDevice device) {
         try {
-            fos = openFileOutput(INBOUND_DEVICES_FILENAME, Context.MODE_PRIVATE);
-            ObjectOutputStream oos = new ObjectOutputStream(fos);
-            oos.writeObject(pairedDevices);
+            getPairingStore(this).addInbound(device);
         } catch (IOException e) {
             // TODO should notify the user
             e.printStackTrace();
-        } finally {
-            if (fos != null)
-                try {
-                    fos.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
         }
     }
 
@@ -0,0 +1,591 @@
+/**
+ * Outbox.java Created on 28 Oct 2013 Copyright 2013 Michele Bonazza
+ * <emmepuntobi@gmail.com>
+ * 
+ * This file is part of WhatsHare.
+ * 
+ * WhatsHare is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * Foobar is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * WhatsHare. If not, see <http://www.gnu.org/licenses/>.
+ */
+package it.mb.whatshare;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.http.client.HttpResponseException;
+
+/**
+ * The shares sent from this device that GCM hasn't taken yet, kept in an
+ * append-only journal on disk so that they survive network errors and the
+ * process being killed.
+ * 
+ * <p>
+ * Every share is written to the journal before being handed to a
+ * {@link GCMSendQueue}, and marked as done in the journal once GCM accepts it
+ * or it's given up on. Shares that fail are sent again after an exponential
+ * backoff with jitter, until GCM accepts them or they're
+ * {@link #MAX_AGE_MILLIS} old; GCM errors that sending again wouldn't fix
+ * (e.g. an unknown registration ID) drop them right away. Shares left in the
+ * journal by a previous process are sent again as soon as the outbox is
+ * created.
+ * 
+ * <p>
+ * A share may be sent more than once, if the process dies after GCM accepted
+ * it but before it was marked as done, or if GCM's response gets lost: each
+ * carries an ID for receivers to recognize it (see {@link RecentMessageIDs}).
+ * 
+ * <p>
+ * All reads and writes of the journal happen on the outbox's own thread,
+ * never on the caller's. This class doesn't depend on Android.
+ * 
+ * @author Michele Bonazza
+ * 
+ */
+final class Outbox {
+
+    /**
+     * Shares older than this are dropped instead of being sent again.
+     */
+    static final long MAX_AGE_MILLIS = TimeUnit.DAYS.toMillis(1);
+    /**
+     * Delay before sending a share again after its first failure, doubled
+     * after each further failure.
+     */
+    static final long BASE_BACKOFF_MILLIS = 2000L;
+    /**
+     * Longest delay between two attempts at sending a share.
+     */
+    static final long MAX_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(15);
+
+    /**
+     * The journal is rewritten with the pending shares alone once it holds
+     * this many shares that are done.
+     */
+    private static final int COMPACT_AFTER_DONE = 32;
+    private static final byte RECORD_ADDED = 1;
+    private static final byte RECORD_DONE = 2;
+    /**
+     * The errors GCM reports per recipient that mean "try again later".
+     */
+    private static final Pattern RETRY_ERRORS = Pattern
+            .compile("\"error\"\\s*:\\s*\"(Unavailable|InternalServerError)\"");
+    private static final Pattern ERROR = Pattern
+            .compile("\"error\"\\s*:\\s*\"(\\w+)\"");
+    /**
+     * Delivery latencies kept to compute percentiles.
+     */
+    private static final int LATENCY_SAMPLES = 64;
+    private static final Random RANDOM = new Random();
+
+    /**
+     * Told what becomes of shares, on the outbox's thread.
+     */
+    interface Listener {
+
+        /**
+         * Called when GCM accepted a share.
+         * 
+         * @param latencyMillis
+         *            the time from the share being added to the outbox to GCM
+         *            accepting it
+         * @param attempts
+         *            the number of times the share was sent
+         * @param stats
+         *            the outbox's figures after the share was done
+         */
+        void onDelivered(long latencyMillis, int attempts, Stats stats);
+
+        /**
+         * Called when a share is given up on.
+         * 
+         * @param reason
+         *            the GCM error, HTTP status or <tt>"expired"</tt>
+         * @param stats
+         *            the outbox's figures after the share was dropped
+         */
+        void onDropped(String reason, Stats stats);
+    }
+
+    /**
+     * A snapshot of the outbox's figures since it was created.
+     */
+    static final class Stats {
+
+        private final int depth;
+        private final int delivered;
+        private final int dropped;
+        private final int retries;
+        private final long p50LatencyMillis;
+        private final long p99LatencyMillis;
+
+        private Stats(int depth, int delivered, int dropped, int retries,
+                long[] latencies, int latencyCount) {
+            this.depth = depth;
+            this.delivered = delivered;
+            this.dropped = dropped;
+            this.retries = retries;
+            int samples = Math.min(latencyCount, latencies.length);
+            long[] sorted = Arrays.copyOf(latencies, samples);
+            Arrays.sort(sorted);
+            p50LatencyMillis = percentile(sorted, 50);
+            p99LatencyMillis = percentile(sorted, 99);
+        }
+
+        private static long percentile(long[] sorted, int percentile) {
+            if (sorted.length == 0)
+                return 0L;
+            int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+            return sorted[Math.max(0, index)];
+        }
+
+        /**
+         * @return the number of shares waiting to be accepted by GCM
+         */
+        int getDepth() {
+            return depth;
+        }
+
+        int getDelivered() {
+            return delivered;
+        }
+
+        int getDropped() {
+            return dropped;
+        }
+
+        /**
+         * @return the number of times shares were sent again
+         */
+        int getRetries() {
+            return retries;
+        }
+
+        /**
+         * @return the median delivery latency of the last shares delivered
+         */
+        long getP50LatencyMillis() {
+            return p50LatencyMillis;
+        }
+
+        /**
+         * @return the 99th percentile delivery latency of the last shares
+         *         delivered
+         */
+        long getP99LatencyMillis() {
+            return p99LatencyMillis;
+        }
+
+        /*
+         * (non-Javadoc)
+         * 
+         * @see java.lang.Object#toString()
+         */
+        @Override
+        public String toString() {
+            return String.format(
+                    "%d pending, %d delivered, %d dropped, %d retries, "
+                            + "latency p50 %d ms p99 %d ms", depth, delivered,
+                    dropped, retries, p50LatencyMillis, p99LatencyMillis);
+        }
+    }
+
+    /**
+     * A share waiting for GCM to accept it.
+     */
+    private static final class Message {
+        private final String id;
+        private final String registrationID;
+        private final String data;
+        /**
+         * Wall clock time, as it's kept across processes.
+         */
+        private final long addedAt;
+        private int attempts;
+
+        private Message(String id, String registrationID, String data,
+                long addedAt) {
+            this.id = id;
+            this.registrationID = registrationID;
+            this.data = data;
+            this.addedAt = addedAt;
+        }
+    }
+
+    private final File journal;
+    private final GCMSendQueue queue;
+    private final Listener listener;
+    private final ScheduledThreadPoolExecutor thread;
+    /**
+     * Only touched on the outbox's thread.
+     */
+    private final Map<String, Message> pending = new LinkedHashMap<String, Message>();
+    private FileOutputStream journalOut;
+    private int doneInJournal;
+
+    private int delivered;
+    private int dropped;
+    private int retries;
+    private final long[] latencies = new long[LATENCY_SAMPLES];
+    private int latencyCount;
+
+    /**
+     * Creates an outbox, and starts sending again the shares its journal holds
+     * if any.
+     * 
+     * @param journal
+     *            the journal, created if it doesn't exist
+     * @param queue
+     *            the queue shares are sent through
+     * @param listener
+     *            told what becomes of shares, may be <code>null</code>
+     */
+    Outbox(File journal, GCMSendQueue queue, Listener listener) {
+        this.journal = journal;
+        this.queue = queue;
+        this.listener = listener;
+        thread = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "Outbox");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        thread.execute(new Runnable() {
+            @Override
+            public void run() {
+                replay();
+            }
+        });
+    }
+
+    /**
+     * Returns a new ID for a share, to be put in its data.
+     * 
+     * @return a random ID
+     */
+    static String newMessageID() {
+        synchronized (RANDOM) {
+            return Long.toHexString(RANDOM.nextLong());
+        }
+    }
+
+    /**
+     * Adds a share to the outbox, which sends it as soon as it's written to the
+     * journal.
+     * 
+     * @param id
+     *            the ID of the share, see {@link #newMessageID()}, which must
+     *            be in <tt>data</tt> as well
+     * @param registrationID
+     *            the GCM registration ID of the recipient
+     * @param data
+     *            the payload of the message, a JSON object
+     */
+    void send(String id, String registrationID, String data) {
+        final Message message = new Message(id, registrationID, data,
+                System.currentTimeMillis());
+        thread.execute(new Runnable() {
+            @Override
+            public void run() {
+                add(message);
+            }
+        });
+    }
+
+    /**
+     * Returns the outbox's figures.
+     * 
+     * @return a snapshot of the figures
+     */
+    synchronized Stats getStats() {
+        return new Stats(pending.size(), delivered, dropped, retries,
+                latencies, latencyCount);
+    }
+
+    private void add(Message message) {
+        synchronized (this) {
+            pending.put(message.id, message);
+        }
+        try {
+            append(RECORD_ADDED, message, true);
+        } catch (IOException e) {
+            // send it anyway, it only won't survive the process
+            e.printStackTrace();
+        }
+        dispatch(message);
+    }
+
+    private void dispatch(final Message message) {
+        message.attempts++;
+        queue.send(message.registrationID, message.data,
+                new GCMSendQueue.Listener() {
+                    @Override
+                    public void onResponse(final String response) {
+                        thread.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                onSent(message, response);
+                            }
+                        });
+                    }
+
+                    @Override
+                    public void onFailure(final IOException e) {
+                        thread.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                onFailed(message, e);
+                            }
+                        });
+                    }
+                });
+    }
+
+    private void onSent(Message message, String response) {
+        // shares have unique data, so they're the only recipient of their
+        // request and the response holds a single result
+        if (RETRY_ERRORS.matcher(response).find()) {
+            retry(message);
+            return;
+        }
+        Matcher error = ERROR.matcher(response);
+        if (error.find()) {
+            drop(message, error.group(1));
+            return;
+        }
+        long latency = Math.max(0L,
+                System.currentTimeMillis() - message.addedAt);
+        Stats stats;
+        synchronized (this) {
+            pending.remove(message.id);
+            delivered++;
+            latencies[latencyCount++ % latencies.length] = latency;
+            stats = getStats();
+        }
+        markDone(message);
+        if (listener != null) {
+            listener.onDelivered(latency, message.attempts, stats);
+        }
+    }
+
+    private void onFailed(Message message, IOException e) {
+        if (e instanceof HttpResponseException) {
+            int status = ((HttpResponseException) e).getStatusCode();
+            if (status < 500) {
+                // a bad request or API key, it would fail every time
+                drop(message, "HTTP " + status);
+                return;
+            }
+        }
+        retry(message);
+    }
+
+    private void retry(final Message message) {
+        if (System.currentTimeMillis() - message.addedAt > MAX_AGE_MILLIS) {
+            drop(message, "expired");
+            return;
+        }
+        synchronized (this) {
+            retries++;
+        }
+        thread.schedule(new Runnable() {
+            @Override
+            public void run() {
+                dispatch(message);
+            }
+        }, getBackoffMillis(message.attempts), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns how long to wait before sending a share again: a random time
+     * between half and all of a ceiling that doubles with every attempt, so
+     * that shares failing together don't all come back at once.
+     * 
+     * @param attempts
+     *            the number of times the share was sent so far
+     * @return the delay in milliseconds
+     */
+    static long getBackoffMillis(int attempts) {
+        long ceiling = BASE_BACKOFF_MILLIS << Math.min(attempts - 1, 20);
+        ceiling = Math.min(ceiling, MAX_BACKOFF_MILLIS);
+        double jitter;
+        synchronized (RANDOM) {
+            jitter = RANDOM.nextDouble();
+        }
+        return ceiling / 2 + (long) (jitter * ceiling / 2);
+    }
+
+    private void drop(Message message, String reason) {
+        Stats stats;
+        synchronized (this) {
+            pending.remove(message.id);
+            dropped++;
+            stats = getStats();
+        }
+        markDone(message);
+        if (listener != null) {
+            listener.onDropped(reason, stats);
+        }
+    }
+
+    private void markDone(Message message) {
+        try {
+            if (pending.isEmpty()) {
+                // nothing worth keeping
+                rewriteJournal();
+            } else {
+                append(RECORD_DONE, message, false);
+                if (++doneInJournal >= COMPACT_AFTER_DONE) {
+                    rewriteJournal();
+                }
+            }
+        } catch (IOException e) {
+            // at worst it's sent again by the next process
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Reads the journal left by previous processes and sends its pending
+     * shares again.
+     */
+    private void replay() {
+        int validLength = 0;
+        byte[] contents = new byte[0];
+        try {
+            contents = readJournal();
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+                    contents));
+            while (true) {
+                byte type = in.readByte();
+                if (type == RECORD_ADDED) {
+                    Message message = new Message(in.readUTF(), in.readUTF(),
+                            in.readUTF(), in.readLong());
+                    synchronized (this) {
+                        pending.put(message.id, message);
+                    }
+                } else if (type == RECORD_DONE) {
+                    String id = in.readUTF();
+                    synchronized (this) {
+                        pending.remove(id);
+                    }
+                    doneInJournal++;
+                } else {
+                    throw new IOException("Unknown record type " + type);
+                }
+                validLength = contents.length - in.available();
+            }
+        } catch (FileNotFoundException e) {
+            // first run, nothing to send
+        } catch (EOFException e) {
+            // end of the journal, or a record cut short by the process dying
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        try {
+            if (doneInJournal > 0 || validLength < contents.length) {
+                rewriteJournal();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        for (Message message : pending.values()) {
+            dispatch(message);
+        }
+    }
+
+    private byte[] readJournal() throws IOException {
+        FileInputStream in = new FileInputStream(journal);
+        try {
+            ByteArrayOutputStream contents = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                contents.write(buffer, 0, read);
+            }
+            return contents.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private void append(byte type, Message message, boolean sync)
+            throws IOException {
+        if (journalOut == null) {
+            journalOut = new FileOutputStream(journal, true);
+        }
+        // one write per record, so that a record is either all there or cut
+        // short at the end of the journal
+        journalOut.write(toRecord(type, message));
+        if (sync) {
+            journalOut.getFD().sync();
+        }
+    }
+
+    /**
+     * Replaces the journal with one holding the pending shares alone.
+     */
+    private void rewriteJournal() throws IOException {
+        if (journalOut != null) {
+            journalOut.close();
+            journalOut = null;
+        }
+        File rewritten = new File(journal.getPath() + ".new");
+        FileOutputStream out = new FileOutputStream(rewritten);
+        try {
+            for (Message message : pending.values()) {
+                out.write(toRecord(RECORD_ADDED, message));
+            }
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!rewritten.renameTo(journal)) {
+            throw new IOException("Can't replace " + journal);
+        }
+        doneInJournal = 0;
+    }
+
+    private static byte[] toRecord(byte type, Message message)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(type);
+        out.writeUTF(message.id);
+        if (type == RECORD_ADDED) {
+            out.writeUTF(message.registrationID);
+            out.writeUTF(message.data);
+            out.writeLong(message.addedAt);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+}
@@ -22,11 +22,7 @@ import static it.mb.whatshare.CallGooGlInbound.CHARACTERS;
 import static it.mb.whatshare.CallGooGlInbound.CHAR_MAP;
 import it.mb.whatshare.MainActivity.PairedDevice;
 
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OptionalDataException;
-import java.io.PrintStream;
 import java.net.URLDecoder;
 import java.util.ArrayList;
 import java.util.List;
@@ -67,10 +63,8 @@ import android.widget.TextView.OnEditorActionListener;
 import com.google.analytics.tracking.android.EasyTracker;
 import com.google.analytics.tracking.android.GoogleAnalytics;
 import com.google.analytics.tracking.android.Tracker;
-import com.google.zxing.BarcodeFormat;
-import com.google.zxing.MultiFormatWriter;
 import com.google.zxing.WriterException;
-import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
 
 /**
  * Activity displayed when pairing this device so that it can share stuff to a
@@ -82,8 +76,9 @@ import com.google.zxing.common.BitMatrix;
 public class PairOutboundActivity extends FragmentActivity {
 
     /**
-     * The name of the file that keeps reference of the device (which has
-     * Whatsapp installed) used to send messages to.
+     * The name of the file that kept reference of the device (which has
+     * Whatsapp installed) used to send messages to, before the
+     * {@link PairingStore}.
      */
     public static final String PAIRING_FILE_NAME = "pairing";
 
@@ -205,14 +200,60 @@ public class PairOutboundActivity extends FragmentActivity {
         }
     }
 
+    /**
+     * Encodes and renders the pairing QR code off the UI thread, through the
+     * {@link QRCodeCache}, then shows it.
+     * 
+     * @author Michele Bonazza
+     */
+    private class GenerateQRCode extends AsyncTask<String, Void, Bitmap> {
+
+        private final ImageView qrWrapper;
+        private final int size;
+
+        private GenerateQRCode(ImageView qrWrapper, int size) {
+            this.qrWrapper = qrWrapper;
+            this.size = size;
+        }
+
+        /*
+         * (non-Javadoc)
+         * 
+         * @see android.os.AsyncTask#doInBackground(Params[])
+         */
+        @Override
+        protected Bitmap doInBackground(String... params) {
+            try {
+                return QRCodeCache.get(params[0], QR_CODE_EC_LEVEL, size);
+            } catch (WriterException e) {
+                e.printStackTrace();
+            }
+            return null;
+        }
+
+        /*
+         * (non-Javadoc)
+         * 
+         * @see android.os.AsyncTask#onPostExecute(java.lang.Object)
+         */
+        @Override
+        protected void onPostExecute(Bitmap qrCode) {
+            if (qrCode != null && !isFinishing()) {
+                qrWrapper.setImageBitmap(qrCode);
+            }
+        }
+    }
+
     private static final String EXPANDER_URL = MainActivity.SHORTENER_URL
             + "&shortUrl=http://goo.gl/%s";
     private static final Pattern EXPANDED_URL = Pattern
             .compile("http://([^/]+)/(\\d+)\\?model\\=([^&]+)&yourid=([a-zA-Z0-9\\-\\_]+)&id=([a-zA-Z0-9\\-\\_]+)");
     private static final int MAX_SHORTENED_URL_LENGTH = 6;
+    private static final ErrorCorrectionLevel QR_CODE_EC_LEVEL = ErrorCorrectionLevel.L;
     private static String assignedID;
     private EditText inputCode;
     private List<Integer> randomSeed;
+    private String qrContents;
     private Tracker tracker;
     private boolean keepKeyboardVisible;
 
@@ -228,17 +269,10 @@ public class PairOutboundActivity extends FragmentActivity {
      */
     static String getAssignedID(ContextWrapper context) {
         if (assignedID == null) {
-            try {
-                Pair<PairedDevice, String> paired = SendToGCMActivity
-                        .loadOutboundPairing(context);
+            Pair<PairedDevice, String> paired = SendToGCMActivity
+                    .loadOutboundPairing(context);
+            if (paired != null)
                 assignedID = paired.second;
-            } catch (OptionalDataException e) {
-                e.printStackTrace();
-            } catch (ClassNotFoundException e) {
-                e.printStackTrace();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
         }
         return assignedID;
     }
@@ -321,6 +355,9 @@ public class PairOutboundActivity extends FragmentActivity {
             }
         });
 
+        if (qrContents == null) {
+            qrContents = generateRandomSeed();
+        }
         final ImageView qrWrapper = (ImageView) findViewById(R.id.qr_code);
         qrWrapper.getViewTreeObserver().addOnGlobalLayoutListener(
                 new OnGlobalLayoutListener() {
@@ -330,19 +367,17 @@ public class PairOutboundActivity extends FragmentActivity {
                     @Override
                     public void onGlobalLayout() {
                         if (!createdQRCode) {
-                            try {
-                                Bitmap qrCode = generateQRCode(
-                                        generateRandomSeed(),
-                                        getResources().getConfiguration().orientation == Configuration.ORIENTATION_PORTRAIT ? qrWrapper
-                                                .getHeight() : qrWrapper
-                                                .getWidth());
-                                if (qrCode != null) {
-                                    qrWrapper.setImageBitmap(qrCode);
-                                }
-                                createdQRCode = true;
-                            } catch (WriterException e) {
-                                e.printStackTrace();
+                            int size = getResources().getConfiguration().orientation == Configuration.ORIENTATION_PORTRAIT ? qrWrapper
+                                    .getHeight() : qrWrapper.getWidth();
+                            Bitmap qrCode = QRCodeCache.peek(qrContents,
+                                    QR_CODE_EC_LEVEL, size);
+                            if (qrCode != null) {
+                                qrWrapper.setImageBitmap(qrCode);
+                            } else {
+                                new GenerateQRCode(qrWrapper, size)
+                                        .execute(qrContents);
                             }
+                            createdQRCode = true;
                         }
                     }
                 });
@@ -371,23 +406,11 @@ public class PairOutboundActivity extends FragmentActivity {
     }
 
     private String getOutboundPaired() {
-        try {
-            Pair<PairedDevice, String> paired = SendToGCMActivity
-                    .loadOutboundPairing(this);
-            if (paired != null) {
-                assignedID = paired.second;
-                return paired.first.type;
-            }
-        } catch (OptionalDataException e) {
-            e.printStackTrace();
-        } catch (ClassNotFoundException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
-        } catch (FileNotFoundException e) {
-            // it's ok
-        } catch (IOException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
+        Pair<PairedDevice, String> paired = SendToGCMActivity
+                .loadOutboundPairing(this);
+        if (paired != null) {
+            assignedID = paired.second;
+            return paired.first.type;
         }
         return null;
     }
@@ -404,32 +427,17 @@ public class PairOutboundActivity extends FragmentActivity {
      *            the device to be stored, or <code>null</code> if the current
      *            association must be discarded
      * @param context
-     *            the application's context (used to open the association file
+     *            the application's context (used to open the pairing store
      *            with)
      * @throws IOException
      *             in case something is wrong with the file
-     * @throws JSONException
-     *             in case something is wrong with the argument <tt>device</tt>
      */
     public static void savePairing(PairedDevice device, Context context)
-            throws IOException, JSONException {
+            throws IOException {
         if (device == null) {
-            Utils.debug("deleting outbound device... %s",
-                    context.deleteFile(PAIRING_FILE_NAME) ? "success" : "fail");
-        } else {
-            FileOutputStream fos = context.openFileOutput(PAIRING_FILE_NAME,
-                    Context.MODE_PRIVATE);
-            // @formatter:off
-        JSONObject json = new JSONObject()
-                                .put("name", device.name)
-                                .put("type", device.type)
-                                .put("assignedID", device.id);
-        // @formatter:on
-            PrintStream writer = new PrintStream(fos);
-            writer.append(json.toString());
-            writer.flush();
-            writer.close();
+            Utils.debug("deleting outbound device...");
         }
+        MainActivity.getPairingStore(context).setOutbound(device);
     }
 
     /**
@@ -455,26 +463,6 @@ public class PairOutboundActivity extends FragmentActivity {
         new CallGooGlOutbound().execute(code);
     }
 
-    private Bitmap generateQRCode(String dataToEncode, int imageViewSize)
-            throws WriterException {
-        MultiFormatWriter writer = new MultiFormatWriter();
-        BitMatrix matrix = writer.encode(dataToEncode, BarcodeFormat.QR_CODE,
-                imageViewSize, imageViewSize);
-        int width = matrix.getWidth();
-        int height = matrix.getHeight();
-        int[] pixels = new int[width * height];
-        for (int y = 0; y < height; y++) {
-            int offset = y * width;
-            for (int x = 0; x < width; x++) {
-                pixels[offset + x] = matrix.get(x, y) ? 0xff000000 : 0xffffffff;
-            }
-        }
-        Bitmap bitmap = Bitmap.createBitmap(width, height,
-                Bitmap.Config.ARGB_8888);
-        bitmap.setPixels(pixels, 0, width, 0, 0, width, height);
-        return bitmap;
-    }
-
     private String generateRandomSeed() {
         StringBuilder builder = new StringBuilder();
         String whitespace = "";
@@ -0,0 +1,606 @@
+/**
+ * PairingStore.java Created on 2 Nov 2013 Copyright 2013 Michele Bonazza
+ * <emmepuntobi@gmail.com>
+ * 
+ * This file is part of WhatsHare.
+ * 
+ * WhatsHare is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * Foobar is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * WhatsHare. If not, see <http://www.gnu.org/licenses/>.
+ */
+package it.mb.whatshare;
+
+import it.mb.whatshare.MainActivity.PairedDevice;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * All devices paired with this one, inbound and outbound, kept in a single
+ * binary file.
+ * 
+ * <p>
+ * The file starts with a magic number and a version, followed by one record
+ * per device: the length of the record (7 bits per byte, the highest set on
+ * all bytes but the last), its kind, a byte of flags and the device's fields.
+ * The type is left out when it's the same as the previous device's, as most
+ * devices are the same Chrome extension. Records of kinds this version doesn't
+ * know are skipped, and a record cut short at the end of the file (by the
+ * process dying while appending it) is dropped.
+ * 
+ * <p>
+ * Pairing a new inbound device appends its record to the file; any other
+ * change writes a new file next to it and renames it over the old one, so the
+ * file is never seen half written.
+ * 
+ * <p>
+ * The devices are read from the file once, by {@link #load()}, and kept in
+ * memory; all methods return copies that can be changed freely. Every change
+ * to inbound devices is reported to the store's {@link Listener}s, one device
+ * at a time, so that lists showing them only update the rows that changed,
+ * and then as a whole, for those that need all devices.
+ * 
+ * @author Michele Bonazza
+ * 
+ */
+final class PairingStore {
+
+    /**
+     * Told about changes to inbound devices, in the order they're made.
+     * 
+     * <p>
+     * Methods are called with the store's lock held, by whichever thread made
+     * the change: listeners should hand the change over to their own thread
+     * and return. Positions are those in the list of inbound devices right
+     * before the change, and only make sense if all changes are applied in
+     * the same order they were reported, starting from the list returned by
+     * {@link PairingStore#addListener(Listener)}.
+     * 
+     * @author Michele Bonazza
+     */
+    interface Listener {
+
+        /**
+         * Called when a new device is added to inbound devices.
+         * 
+         * @param position
+         *            where the device was added
+         * @param device
+         *            a copy of the device
+         */
+        void onInboundAdded(int position, PairedDevice device);
+
+        /**
+         * Called when a device is removed from inbound devices.
+         * 
+         * @param position
+         *            where the device was
+         * @param device
+         *            a copy of the device, as it was before being removed
+         */
+        void onInboundRemoved(int position, PairedDevice device);
+
+        /**
+         * Called when an inbound device is renamed.
+         * 
+         * @param position
+         *            where the device is
+         * @param device
+         *            a copy of the device, with its new name
+         */
+        void onInboundRenamed(int position, PairedDevice device);
+
+        /**
+         * Called once every change has been reported one device at a time.
+         * 
+         * @param devices
+         *            all inbound devices after the change, read-only and
+         *            only valid until this method returns
+         */
+        void onInboundChanged(List<PairedDevice> devices);
+    }
+
+    /**
+     * The name of the store's file in the app's files dir.
+     */
+    static final String FILENAME = "pairings";
+
+    private static final int MAGIC = 0x57485053;
+    private static final byte VERSION = 1;
+    private static final byte KIND_INBOUND = 1;
+    private static final byte KIND_OUTBOUND = 2;
+    private static final int HAS_ID = 1;
+    private static final int HAS_NAME = 2;
+    private static final int HAS_TYPE = 4;
+    private static final int SAME_TYPE = 8;
+
+    private final File file;
+    private final List<PairedDevice> inbound = new ArrayList<PairedDevice>();
+    private PairedDevice outbound;
+    /**
+     * The type of the last device record in the file.
+     */
+    private String lastType;
+    private final List<Listener> listeners = new ArrayList<Listener>();
+
+    /**
+     * Creates a new store kept in <tt>file</tt>, which is empty until
+     * {@link #load()} is called.
+     * 
+     * @param file
+     *            the store's file, which is created when first written if it
+     *            doesn't exist
+     */
+    PairingStore(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Reads all devices from the store's file, if it exists.
+     * 
+     * @throws IOException
+     *             if the file can't be read or was written by a later,
+     *             incompatible version, in which case the store is left empty
+     */
+    synchronized void load() throws IOException {
+        inbound.clear();
+        outbound = null;
+        lastType = null;
+        try {
+            if (file.exists() && !read()) {
+                // drop whatever follows the last whole record, or appending
+                // would hide the new records behind it
+                rewrite();
+            }
+        } catch (IOException e) {
+            inbound.clear();
+            outbound = null;
+            lastType = null;
+            throw e;
+        }
+    }
+
+    /**
+     * Returns whether the store's file exists, i.e. if anything was ever
+     * written to it.
+     * 
+     * @return <code>true</code> if the file exists
+     */
+    boolean exists() {
+        return file.exists();
+    }
+
+    /**
+     * Returns the inbound devices, in the order they were paired.
+     * 
+     * @return a copy of the list of inbound devices
+     */
+    synchronized List<PairedDevice> getInbound() {
+        List<PairedDevice> copy = new ArrayList<PairedDevice>(inbound.size());
+        for (PairedDevice device : inbound) {
+            copy.add(copyOf(device));
+        }
+        return copy;
+    }
+
+    /**
+     * Adds a listener to be told about all changes made to inbound devices
+     * from now on.
+     * 
+     * @param listener
+     *            the listener
+     * @return a copy of the list of inbound devices as they are right before
+     *         the first change the listener will be told about
+     */
+    synchronized List<PairedDevice> addListener(Listener listener) {
+        listeners.add(listener);
+        return getInbound();
+    }
+
+    /**
+     * Removes a listener added with {@link #addListener(Listener)}.
+     * 
+     * @param listener
+     *            the listener
+     */
+    synchronized void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Returns the outbound device.
+     * 
+     * @return a copy of the outbound device, whose ID is the one the outbound
+     *         device assigned to this one, or <code>null</code> if there's
+     *         none
+     */
+    synchronized PairedDevice getOutbound() {
+        return outbound == null ? null : copyOf(outbound);
+    }
+
+    /**
+     * Adds a new inbound device at the end of the list, appending it to the
+     * file.
+     * 
+     * @param device
+     *            the device
+     * @throws IOException
+     *             if the device can't be written, in which case it's not added
+     */
+    synchronized void addInbound(PairedDevice device) throws IOException {
+        if (!file.exists()) {
+            inbound.add(copyOf(device));
+            try {
+                rewrite();
+            } catch (IOException e) {
+                inbound.remove(inbound.size() - 1);
+                throw e;
+            }
+        } else {
+            FileOutputStream out = new FileOutputStream(file, true);
+            try {
+                // one write, so that the record is either all there or cut
+                // short
+                out.write(toRecord(KIND_INBOUND, device, lastType));
+                out.getFD().sync();
+            } finally {
+                out.close();
+            }
+            inbound.add(copyOf(device));
+            lastType = device.type;
+        }
+        for (Listener listener : listeners) {
+            listener.onInboundAdded(inbound.size() - 1, copyOf(device));
+        }
+        notifyChanged();
+    }
+
+    /**
+     * Removes an inbound device.
+     * 
+     * @param device
+     *            the device, as returned by this store
+     * @return <code>false</code> if no inbound device is equal to
+     *         <tt>device</tt>
+     * @throws IOException
+     *             if the change can't be written, in which case the store
+     *             keeps the device
+     */
+    synchronized boolean removeInbound(PairedDevice device) throws IOException {
+        int position = inbound.indexOf(device);
+        if (position == -1) {
+            return false;
+        }
+        PairedDevice removed = inbound.remove(position);
+        try {
+            rewrite();
+        } catch (IOException e) {
+            inbound.add(position, removed);
+            throw e;
+        }
+        for (Listener listener : listeners) {
+            listener.onInboundRemoved(position, copyOf(removed));
+        }
+        notifyChanged();
+        return true;
+    }
+
+    /**
+     * Renames an inbound device.
+     * 
+     * @param device
+     *            the device, as returned by this store
+     * @param newName
+     *            the new name for the device
+     * @return <code>false</code> if no inbound device is equal to
+     *         <tt>device</tt>
+     * @throws IOException
+     *             if the change can't be written, in which case the store
+     *             keeps the old name
+     */
+    synchronized boolean renameInbound(PairedDevice device, String newName)
+            throws IOException {
+        int position = inbound.indexOf(device);
+        if (position == -1) {
+            return false;
+        }
+        PairedDevice renamed = inbound.get(position);
+        String oldName = renamed.name;
+        renamed.rename(newName);
+        try {
+            rewrite();
+        } catch (IOException e) {
+            renamed.rename(oldName);
+            throw e;
+        }
+        for (Listener listener : listeners) {
+            listener.onInboundRenamed(position, copyOf(renamed));
+        }
+        notifyChanged();
+        return true;
+    }
+
+    /**
+     * Replaces all inbound devices, e.g. after one was renamed or removed.
+     * 
+     * @param devices
+     *            the new list of inbound devices
+     * @throws IOException
+     *             if the devices can't be written, in which case the store
+     *             keeps the old ones
+     */
+    synchronized void setInbound(List<PairedDevice> devices)
+            throws IOException {
+        set(devices, outbound);
+    }
+
+    /**
+     * Replaces the outbound device.
+     * 
+     * @param device
+     *            the new outbound device, <code>null</code> to remove the
+     *            current one
+     * @throws IOException
+     *             if the device can't be written, in which case the store
+     *             keeps the old one
+     */
+    synchronized void setOutbound(PairedDevice device) throws IOException {
+        set(inbound, device);
+    }
+
+    /**
+     * Replaces all devices at once.
+     * 
+     * <p>
+     * Listeners are told about the devices that were removed and added,
+     * leaving out those at the beginning and end of the list that are the same
+     * as before.
+     * 
+     * @param inboundDevices
+     *            the new list of inbound devices
+     * @param outboundDevice
+     *            the new outbound device, <code>null</code> if there's none
+     * @throws IOException
+     *             if the devices can't be written, in which case the store
+     *             keeps the old ones
+     */
+    synchronized void set(List<PairedDevice> inboundDevices,
+            PairedDevice outboundDevice) throws IOException {
+        List<PairedDevice> oldInbound = new ArrayList<PairedDevice>(inbound);
+        PairedDevice oldOutbound = outbound;
+        List<PairedDevice> newInbound = new ArrayList<PairedDevice>(
+                inboundDevices.size());
+        for (PairedDevice device : inboundDevices) {
+            newInbound.add(copyOf(device));
+        }
+        inbound.clear();
+        inbound.addAll(newInbound);
+        outbound = outboundDevice == null ? null : copyOf(outboundDevice);
+        try {
+            rewrite();
+        } catch (IOException e) {
+            inbound.clear();
+            inbound.addAll(oldInbound);
+            outbound = oldOutbound;
+            throw e;
+        }
+        if (!listeners.isEmpty()) {
+            notifyReplaced(oldInbound, newInbound);
+            notifyChanged();
+        }
+    }
+
+    private void notifyChanged() {
+        List<PairedDevice> view = Collections.unmodifiableList(inbound);
+        for (Listener listener : listeners) {
+            listener.onInboundChanged(view);
+        }
+    }
+
+    private void notifyReplaced(List<PairedDevice> before,
+            List<PairedDevice> after) {
+        int start = 0;
+        while (start < before.size() && start < after.size()
+                && before.get(start).equals(after.get(start))) {
+            start++;
+        }
+        int endBefore = before.size();
+        int endAfter = after.size();
+        while (endBefore > start && endAfter > start
+                && before.get(endBefore - 1).equals(after.get(endAfter - 1))) {
+            endBefore--;
+            endAfter--;
+        }
+        // from the end, so positions of the ones left to remove still hold
+        for (int i = endBefore - 1; i >= start; i--) {
+            for (Listener listener : listeners) {
+                listener.onInboundRemoved(i, copyOf(before.get(i)));
+            }
+        }
+        for (int i = start; i < endAfter; i++) {
+            for (Listener listener : listeners) {
+                listener.onInboundAdded(i, copyOf(after.get(i)));
+            }
+        }
+    }
+
+    /**
+     * Reads the file.
+     * 
+     * @return <code>false</code> if the file ends with a record cut short
+     */
+    private boolean read() throws IOException {
+        byte[] contents;
+        try {
+            contents = readFully(file);
+        } catch (FileNotFoundException e) {
+            return true;
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+                contents));
+        int magic;
+        byte version;
+        try {
+            magic = in.readInt();
+            version = in.readByte();
+        } catch (EOFException e) {
+            // the very first write was cut short
+            return false;
+        }
+        if (magic != MAGIC) {
+            throw new IOException("Not a pairing store: " + file);
+        }
+        if (version > VERSION) {
+            throw new IOException(String.format(
+                    "Pairing store version %d, only up to %d supported",
+                    version, VERSION));
+        }
+        while (in.available() > 0) {
+            int length = 0;
+            int shift = 0;
+            int next;
+            do {
+                if (in.available() == 0 || shift > 28) {
+                    return false;
+                }
+                next = in.readUnsignedByte();
+                length |= (next & 0x7f) << shift;
+                shift += 7;
+            } while ((next & 0x80) != 0);
+            if (length < 2 || length > in.available()) {
+                return false;
+            }
+            int end = in.available() - length;
+            byte kind = in.readByte();
+            if (kind == KIND_INBOUND) {
+                inbound.add(readDevice(in));
+            } else if (kind == KIND_OUTBOUND) {
+                outbound = readDevice(in);
+            }
+            // else written by a later version, skip it
+            in.skipBytes(in.available() - end);
+        }
+        return true;
+    }
+
+    private PairedDevice readDevice(DataInputStream in) throws IOException {
+        int flags = in.readUnsignedByte();
+        String id = (flags & HAS_ID) != 0 ? in.readUTF() : null;
+        String name = (flags & HAS_NAME) != 0 ? in.readUTF() : null;
+        String type = null;
+        if ((flags & SAME_TYPE) != 0) {
+            type = lastType;
+        } else if ((flags & HAS_TYPE) != 0) {
+            type = in.readUTF();
+        }
+        lastType = type;
+        return new PairedDevice(id, name, type);
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream contents = new ByteArrayOutputStream(
+                    (int) file.length());
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                contents.write(buffer, 0, read);
+            }
+            return contents.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Writes all devices to a new file, and renames it over the store's file.
+     */
+    private void rewrite() throws IOException {
+        File rewritten = new File(file.getPath() + ".new");
+        FileOutputStream fos = new FileOutputStream(rewritten);
+        String previousType = null;
+        try {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(fos));
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            for (PairedDevice device : inbound) {
+                out.write(toRecord(KIND_INBOUND, device, previousType));
+                previousType = device.type;
+            }
+            if (outbound != null) {
+                out.write(toRecord(KIND_OUTBOUND, outbound, previousType));
+                previousType = outbound.type;
+            }
+            out.flush();
+            fos.getFD().sync();
+        } finally {
+            fos.close();
+        }
+        if (!rewritten.renameTo(file)) {
+            rewritten.delete();
+            throw new IOException("Can't replace " + file);
+        }
+        lastType = previousType;
+    }
+
+    private static byte[] toRecord(byte kind, PairedDevice device,
+            String previousType) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(body);
+        out.writeByte(kind);
+        // devices paired by old versions have no ID
+        int flags = (device.id == null ? 0 : HAS_ID)
+                | (device.name == null ? 0 : HAS_NAME);
+        if (device.type != null && device.type.equals(previousType)) {
+            flags |= SAME_TYPE;
+        } else if (device.type != null) {
+            flags |= HAS_TYPE;
+        }
+        out.writeByte(flags);
+        if (device.id != null)
+            out.writeUTF(device.id);
+        if (device.name != null)
+            out.writeUTF(device.name);
+        if ((flags & HAS_TYPE) != 0)
+            out.writeUTF(device.type);
+        out.flush();
+
+        ByteArrayOutputStream record = new ByteArrayOutputStream(
+                body.size() + 5);
+        int length = body.size();
+        while (length > 0x7f) {
+            record.write((length & 0x7f) | 0x80);
+            length >>>= 7;
+        }
+        record.write(length);
+        body.writeTo(record);
+        return record.toByteArray();
+    }
+
+    private static PairedDevice copyOf(PairedDevice device) {
+        return new PairedDevice(device.id, device.name, device.type);
+    }
+
+}
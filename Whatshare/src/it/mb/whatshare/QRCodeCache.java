@@ -0,0 +1,163 @@
+/**
+ * QRCodeCache.java Created on 21 Oct 2013 Copyright 2013 Michele Bonazza
+ * <emmepuntobi@gmail.com>
+ * 
+ * This file is part of WhatsHare.
+ * 
+ * WhatsHare is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * Foobar is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * WhatsHare. If not, see <http://www.gnu.org/licenses/>.
+ */
+package it.mb.whatshare;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import android.graphics.Bitmap;
+import android.support.v4.util.LruCache;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.WriterException;
+import com.google.zxing.client.android.encode.BitmapRenderer;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.BitMatrixRenderer;
+import com.google.zxing.qrcode.QRCodeWriter;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+
+/**
+ * A process-wide cache of the QR codes shown by the app.
+ * 
+ * <p>
+ * Two levels are kept, both evicting the least recently used entries once
+ * they grow past their size: the encoded modules, keyed by contents and error
+ * correction level, and the bitmaps rendered from them, keyed also by size.
+ * Showing the same code again costs a lookup, showing it at another size
+ * (e.g. after rotating the device) only costs the rendering.
+ * 
+ * <p>
+ * {@link #get(String, ErrorCorrectionLevel, int)} may take a while and should
+ * be called off the UI thread; {@link #peek(String, ErrorCorrectionLevel, int)}
+ * never encodes nor renders anything. Both can be called from any thread.
+ * 
+ * @author Michele Bonazza
+ * 
+ */
+final class QRCodeCache {
+
+    /**
+     * Bytes of encoded modules kept, a few hundred codes even at the largest
+     * versions.
+     */
+    private static final int MAX_MATRIX_BYTES = 256 * 1024;
+    /**
+     * The bitmaps cache may take up to this fraction of the heap.
+     */
+    private static final int HEAP_FRACTION_FOR_BITMAPS = 16;
+
+    private static final LruCache<String, BitMatrix> MATRICES = new LruCache<String, BitMatrix>(
+            MAX_MATRIX_BYTES) {
+        @Override
+        protected int sizeOf(String key, BitMatrix value) {
+            return (value.getWidth() * value.getHeight() + 7) / 8;
+        }
+    };
+
+    private static final LruCache<String, Bitmap> BITMAPS = new LruCache<String, Bitmap>(
+            (int) (Runtime.getRuntime().maxMemory() / HEAP_FRACTION_FOR_BITMAPS)) {
+        @Override
+        protected int sizeOf(String key, Bitmap value) {
+            return value.getRowBytes() * value.getHeight();
+        }
+    };
+
+    /*
+     * Static methods only!
+     */
+    private QRCodeCache() {
+    }
+
+    /**
+     * Returns the QR code for <tt>contents</tt> rendered at <tt>size</tt>, if
+     * it's cached.
+     * 
+     * @param contents
+     *            the text encoded in the QR code
+     * @param ecLevel
+     *            the error correction level of the QR code
+     * @param size
+     *            the requested width and height in pixels
+     * @return the cached bitmap, or <code>null</code> if it must be created
+     *         with {@link #get(String, ErrorCorrectionLevel, int)}
+     */
+    static Bitmap peek(String contents, ErrorCorrectionLevel ecLevel, int size) {
+        return BITMAPS.get(getBitmapKey(contents, ecLevel, size));
+    }
+
+    /**
+     * Returns the QR code for <tt>contents</tt> rendered at <tt>size</tt>,
+     * encoding and rendering it unless it's cached.
+     * 
+     * @param contents
+     *            the text encoded in the QR code
+     * @param ecLevel
+     *            the error correction level of the QR code
+     * @param size
+     *            the requested width and height in pixels, the bitmap is
+     *            larger if the QR code doesn't fit in it
+     * @return the bitmap, which must not be modified nor recycled
+     * @throws WriterException
+     *             if <tt>contents</tt> can't be encoded
+     */
+    static Bitmap get(String contents, ErrorCorrectionLevel ecLevel, int size)
+            throws WriterException {
+        String bitmapKey = getBitmapKey(contents, ecLevel, size);
+        Bitmap bitmap = BITMAPS.get(bitmapKey);
+        if (bitmap == null) {
+            bitmap = render(getMatrix(contents, ecLevel), size);
+            BITMAPS.put(bitmapKey, bitmap);
+        }
+        return bitmap;
+    }
+
+    private static BitMatrix getMatrix(String contents,
+            ErrorCorrectionLevel ecLevel) throws WriterException {
+        String matrixKey = getMatrixKey(contents, ecLevel);
+        BitMatrix matrix = MATRICES.get(matrixKey);
+        if (matrix == null) {
+            Map<EncodeHintType, Object> hints = new EnumMap<EncodeHintType, Object>(
+                    EncodeHintType.class);
+            hints.put(EncodeHintType.ERROR_CORRECTION, ecLevel);
+            // one pixel per module, scaled up to the requested size when
+            // rendering
+            matrix = new QRCodeWriter().encode(contents, BarcodeFormat.QR_CODE,
+                    0, 0, hints);
+            MATRICES.put(matrixKey, matrix);
+        }
+        return matrix;
+    }
+
+    private static Bitmap render(BitMatrix matrix, int size) {
+        return BitmapRenderer.toBitmap(new BitMatrixRenderer(matrix, size,
+                size));
+    }
+
+    private static String getMatrixKey(String contents,
+            ErrorCorrectionLevel ecLevel) {
+        return ecLevel.name() + ' ' + contents;
+    }
+
+    private static String getBitmapKey(String contents,
+            ErrorCorrectionLevel ecLevel, int size) {
+        return size + " " + getMatrixKey(contents, ecLevel);
+    }
+
+}
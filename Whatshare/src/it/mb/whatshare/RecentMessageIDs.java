@@ -0,0 +1,131 @@
+/**
+ * RecentMessageIDs.java Created on 28 Oct 2013 Copyright 2013 Michele Bonazza
+ * <emmepuntobi@gmail.com>
+ * 
+ * This file is part of WhatsHare.
+ * 
+ * WhatsHare is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * Foobar is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * WhatsHare. If not, see <http://www.gnu.org/licenses/>.
+ */
+package it.mb.whatshare;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/**
+ * The IDs of the last messages received, kept on disk, to recognize messages
+ * that a sender's {@link Outbox} sent more than once.
+ * 
+ * @author Michele Bonazza
+ * 
+ */
+final class RecentMessageIDs {
+
+    private final File file;
+    private final int capacity;
+    /**
+     * Oldest first, <code>null</code> until read from file.
+     */
+    private LinkedHashSet<String> ids;
+
+    /**
+     * Creates a new set of IDs, read from file when first needed.
+     * 
+     * @param file
+     *            where IDs are kept
+     * @param capacity
+     *            the number of IDs kept, the oldest are forgotten first
+     */
+    RecentMessageIDs(File file, int capacity) {
+        this.file = file;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Adds the ID of a message just received, unless it's among the recent
+     * IDs already.
+     * 
+     * @param id
+     *            the ID
+     * @return <code>true</code> if the ID wasn't known, <code>false</code> if
+     *         the message was received before
+     */
+    synchronized boolean add(String id) {
+        if (ids == null) {
+            ids = read();
+        }
+        if (!ids.add(id)) {
+            return false;
+        }
+        if (ids.size() > capacity) {
+            Iterator<String> oldest = ids.iterator();
+            oldest.next();
+            oldest.remove();
+        }
+        write();
+        return true;
+    }
+
+    private LinkedHashSet<String> read() {
+        LinkedHashSet<String> read = new LinkedHashSet<String>();
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new FileInputStream(file));
+            while (true) {
+                read.add(in.readUTF());
+            }
+        } catch (FileNotFoundException e) {
+            // nothing received yet
+        } catch (EOFException e) {
+            // all read
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            if (in != null)
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+        }
+        return read;
+    }
+
+    private void write() {
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new FileOutputStream(file));
+            for (String id : ids) {
+                out.writeUTF(id);
+            }
+        } catch (IOException e) {
+            // duplicates may get through after a restart, no big deal
+            e.printStackTrace();
+        } finally {
+            if (out != null)
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+        }
+    }
+
+}
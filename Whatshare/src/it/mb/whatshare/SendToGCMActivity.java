@@ -20,22 +20,12 @@ package it.mb.whatshare;
 
 import it.mb.whatshare.MainActivity.PairedDevice;
 
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.io.OptionalDataException;
-import java.io.UnsupportedEncodingException;
+import java.io.File;
 import java.util.Locale;
-import java.util.Scanner;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import org.apache.http.client.ClientProtocolException;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.BasicResponseHandler;
-import org.apache.http.impl.client.DefaultHttpClient;
-import org.json.JSONException;
 import org.json.JSONObject;
 
 import android.annotation.TargetApi;
@@ -64,56 +54,20 @@ import com.google.analytics.tracking.android.Tracker;
  */
 public class SendToGCMActivity extends FragmentActivity {
 
-    private class CallGCM extends AsyncTask<String, Void, Void> {
-
-        /*
-         * (non-Javadoc)
-         * 
-         * @see android.os.AsyncTask#doInBackground(Params[])
-         */
-        @Override
-        protected Void doInBackground(String... params) {
-            String text = params[0];
-            String type = params[1];
-            String assignedID = PairOutboundActivity
-                    .getAssignedID(SendToGCMActivity.this);
-            HttpPost post = new HttpPost(GCM_URL);
-            try {
-                Utils.debug(String
-                        .format("{\"registration_ids\": [\"%s\"], \"data\": {\"message\": \"%s\", \"sender\": \"%s\", \"type\": \"%s\"}}",
-                                outboundDevice.name, JSONObject.quote(text),
-                                JSONObject.quote(assignedID), type));
-                post.setEntity(new StringEntity(
-                        String.format(
-                                "{\"delay_while_idle\": false, \"registration_ids\": [\"%s\"], \"data\": {\"message\": %s, \"sender\": %s, \"type\": \"%s\"}}",
-                                outboundDevice.name, JSONObject.quote(text),
-                                JSONObject.quote(assignedID), type)));
-                post.setHeader("Content-Type", "application/json");
-                post.setHeader(
-                        "Authorization",
-                        "key="
-                                + SendToGCMActivity.this.getResources()
-                                        .getString(
-                                                R.string.android_shortener_key));
-                String response = new DefaultHttpClient().execute(post,
-                        new BasicResponseHandler());
-                Utils.debug("response is %s", response);
-            } catch (UnsupportedEncodingException e) {
-                e.printStackTrace();
-            } catch (ClientProtocolException e) {
-                e.printStackTrace();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-            return null;
-        }
-
-    }
+    /**
+     * The name of the data field of GCM messages carrying the ID receivers
+     * recognize messages sent more than once by.
+     */
+    static final String MESSAGE_ID_EXTRA = "id";
+    /**
+     * The file name of the journal of shares waiting to be sent.
+     */
+    static final String OUTBOX_FILENAME = "outbox";
 
-    private static final String GCM_URL = "https://android.googleapis.com/gcm/send";
     private static final Pattern FLIPBOARD_PATTERN = Pattern
             .compile("\\w+\\:(.+)");
     private static AtomicInteger notificationCounter = new AtomicInteger();
+    private static Outbox outbox;
     private String registrationID = "";
     private int registrationError = -1;
     private PairedDevice outboundDevice;
@@ -215,26 +169,18 @@ public class SendToGCMActivity extends FragmentActivity {
                         R.string.no_internet_sending, true);
             } else {
                 // send to paired device if any
-                try {
-                    if (outboundDevice == null) {
-                        Pair<PairedDevice, String> paired = loadOutboundPairing(this);
-                        if (paired != null)
-                            outboundDevice = paired.first;
-                    }
-                    if (outboundDevice != null) {
-                        // share with other device
-                        shareViaGCM(intent);
-                        finish();
-                        return;
-                    }
-                } catch (OptionalDataException e) {
-                    e.printStackTrace();
-                } catch (ClassNotFoundException e) {
-                    e.printStackTrace();
-                } catch (IOException e) {
-                    e.printStackTrace();
+                if (outboundDevice == null) {
+                    Pair<PairedDevice, String> paired = loadOutboundPairing(this);
+                    if (paired != null)
+                        outboundDevice = paired.first;
+                }
+                if (outboundDevice != null) {
+                    // share with other device
+                    shareViaGCM(intent);
+                    finish();
+                    return;
                 }
-                // can't load paired device from file
+                // no paired device
                 tracker.sendEvent("intent", "send_to_gcm", "no_paired_device",
                         0L);
                 Dialogs.noPairedDevice(this);
@@ -252,28 +198,58 @@ public class SendToGCMActivity extends FragmentActivity {
      * 
      * @param activity
      *            the calling activity
-     * @return the device loaded from file if any is configured,
+     * @return the device loaded from the pairing store if any is configured,
      *         <code>null</code> otherwise
-     * @throws OptionalDataException
-     * @throws ClassNotFoundException
-     * @throws IOException
      */
-    static Pair<PairedDevice, String> loadOutboundPairing(Context activity)
-            throws OptionalDataException, ClassNotFoundException, IOException {
-        FileInputStream fis = activity.openFileInput("pairing");
-        Scanner scanner = new Scanner(fis).useDelimiter("\\Z");
-        JSONObject json;
-        try {
-            json = new JSONObject(scanner.next());
-            String name = json.getString("name");
-            String type = json.getString("type");
-            String assignedID = json.getString("assignedID");
-            return new Pair<PairedDevice, String>(new PairedDevice(assignedID,
-                    name, type), assignedID);
-        } catch (JSONException e) {
-            e.printStackTrace();
+    static Pair<PairedDevice, String> loadOutboundPairing(Context activity) {
+        PairedDevice device = MainActivity.getPairingStore(activity)
+                .getOutbound();
+        if (device == null)
+            return null;
+        return new Pair<PairedDevice, String>(device, device.id);
+    }
+
+    /**
+     * Returns the outbox all shares made by this process are sent through,
+     * creating it on first use, which also sends again the shares left pending
+     * by previous processes.
+     * 
+     * @param context
+     *            the context used to read the API key and find the journal
+     * @return the outbox
+     */
+    static synchronized Outbox getOutbox(Context context) {
+        if (outbox == null) {
+            final Context appContext = context.getApplicationContext();
+            GCMSendQueue queue = new GCMSendQueue(GCMSendQueue.GCM_URL,
+                    appContext.getResources().getString(
+                            R.string.android_shortener_key),
+                    GCMSendQueue.DEFAULT_CONCURRENT_REQUESTS,
+                    GCMSendQueue.DEFAULT_LINGER_MILLIS);
+            outbox = new Outbox(new File(appContext.getFilesDir(),
+                    OUTBOX_FILENAME), queue, new Outbox.Listener() {
+                @Override
+                public void onDelivered(long latencyMillis, int attempts,
+                        Outbox.Stats stats) {
+                    Utils.debug("share delivered after %d attempt(s): %s",
+                            attempts, stats);
+                    GoogleAnalytics.getInstance(appContext)
+                            .getDefaultTracker()
+                            .sendTiming("gcm", latencyMillis, "delivery",
+                                    attempts > 1 ? "retried" : "first_attempt");
+                }
+
+                @Override
+                public void onDropped(String reason, Outbox.Stats stats) {
+                    Utils.debug("share dropped (%s): %s", reason, stats);
+                    GoogleAnalytics.getInstance(appContext)
+                            .getDefaultTracker()
+                            .sendEvent("gcm", "dropped", reason,
+                                    (long) stats.getDepth());
+                }
+            });
         }
-        return null;
+        return outbox;
     }
 
     private void shareViaGCM(Intent intent) {
@@ -289,7 +265,15 @@ public class SendToGCMActivity extends FragmentActivity {
         int sharedWhat = text.contains("http://") ? R.string.link
                 : R.string.selection;
         Utils.debug("sharing with %s this: '%s'", outboundDevice.type, text);
-        new CallGCM().execute(text, type);
+        String id = Outbox.newMessageID();
+        String data = String.format("{\"message\": %s, \"sender\": %s, "
+                + "\"type\": \"%s\", \"%s\": \"%s\"}",
+                JSONObject.quote(text),
+                JSONObject.quote(PairOutboundActivity.getAssignedID(this)),
+                type, MESSAGE_ID_EXTRA, id);
+        Utils.debug("{\"registration_ids\": [\"%s\"], \"data\": %s}",
+                outboundDevice.name, data);
+        getOutbox(this).send(id, outboundDevice.name, data);
         tracker.sendEvent("gcm", "share", sharedWhat == R.string.link ? "link"
                 : "text", 0L);
         showNotification(sharedWhat,
@@ -0,0 +1,223 @@
+/**
+ * SenderWhitelist.java Created on 30 Oct 2013 Copyright 2013 Michele Bonazza
+ * <emmepuntobi@gmail.com>
+ * 
+ * This file is part of WhatsHare.
+ * 
+ * WhatsHare is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ * 
+ * Foobar is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * WhatsHare. If not, see <http://www.gnu.org/licenses/>.
+ */
+package it.mb.whatshare;
+
+import it.mb.whatshare.MainActivity.PairedDevice;
+
+import java.util.Collection;
+import java.util.List;
+
+import android.content.Context;
+
+/**
+ * The inbound devices this device accepts messages from, as an immutable
+ * snapshot shared by the whole process.
+ * 
+ * <p>
+ * Senders identify themselves with the hash code of the ID this device gave
+ * them when pairing, in decimal. A snapshot keeps those hash codes as
+ * <tt>int</tt>s in an open addressing table, so that checking a sender is a
+ * couple of array reads, without locks nor file I/O. The snapshot is replaced
+ * every time inbound devices are written to the app's {@link PairingStore},
+ * while the store's lock is still held, so that snapshots are published in
+ * the same order as the changes they reflect.
+ * 
+ * @author Michele Bonazza
+ * 
+ */
+final class SenderWhitelist {
+
+    private static final SenderWhitelist EMPTY = new SenderWhitelist(
+            new int[0], 0);
+
+    private static volatile SenderWhitelist current;
+
+    private static final PairingStore.Listener UPDATER = new PairingStore.Listener() {
+
+        @Override
+        public void onInboundAdded(int position, PairedDevice device) {
+            // wait for the whole change
+        }
+
+        @Override
+        public void onInboundRemoved(int position, PairedDevice device) {
+            // wait for the whole change
+        }
+
+        @Override
+        public void onInboundRenamed(int position, PairedDevice device) {
+            // wait for the whole change
+        }
+
+        @Override
+        public void onInboundChanged(List<PairedDevice> devices) {
+            current = of(devices);
+        }
+    };
+
+    /**
+     * Hash codes, 0 marking empty slots, the length a power of two.
+     */
+    private final int[] table;
+    private final boolean containsZero;
+
+    private SenderWhitelist(int[] hashes, int count) {
+        int capacity = 2;
+        // keep the table at most half full, so probes stay short
+        while (capacity < count * 2) {
+            capacity <<= 1;
+        }
+        table = new int[capacity];
+        boolean zero = false;
+        for (int i = 0; i < count; i++) {
+            if (hashes[i] == 0) {
+                zero = true;
+            } else {
+                int slot = mix(hashes[i]) & (capacity - 1);
+                while (table[slot] != 0 && table[slot] != hashes[i]) {
+                    slot = (slot + 1) & (capacity - 1);
+                }
+                table[slot] = hashes[i];
+            }
+        }
+        containsZero = zero;
+    }
+
+    /**
+     * Returns the current whitelist, opening the pairing store if it's the
+     * first time it's needed in this process.
+     * 
+     * @param context
+     *            the context used to read the file
+     * @return the whitelist
+     */
+    static SenderWhitelist get(Context context) {
+        SenderWhitelist whitelist = current;
+        if (whitelist == null) {
+            // the store starts the whitelist when opened
+            MainActivity.getPairingStore(context);
+            whitelist = current;
+        }
+        return whitelist;
+    }
+
+    /**
+     * Makes the whitelist follow the inbound devices in <tt>store</tt> from
+     * now on, to be called once when the app's store is opened.
+     * 
+     * @param store
+     *            the store
+     */
+    static void follow(PairingStore store) {
+        // the store's lock, so no change is published before this snapshot
+        synchronized (store) {
+            current = of(store.addListener(UPDATER));
+        }
+    }
+
+    private static SenderWhitelist of(Collection<PairedDevice> devices) {
+        if (devices.isEmpty()) {
+            return EMPTY;
+        }
+        int[] hashes = new int[devices.size()];
+        int count = 0;
+        for (PairedDevice device : devices) {
+            if (device.id != null) {
+                hashes[count++] = device.id.hashCode();
+            } else {
+                // backward compatibility... devices didn't have an ID
+                hashes[count++] = device.name.hashCode();
+            }
+        }
+        return new SenderWhitelist(hashes, count);
+    }
+
+    /**
+     * Returns whether messages from <tt>sender</tt> are accepted.
+     * 
+     * @param sender
+     *            the sender as sent along with messages
+     * @return <code>true</code> if the sender is an inbound device
+     */
+    boolean contains(String sender) {
+        if (sender == null) {
+            return false;
+        }
+        long parsed = parseHash(sender);
+        if (parsed == Long.MIN_VALUE) {
+            return false;
+        }
+        int hash = (int) parsed;
+        if (hash == 0) {
+            return containsZero;
+        }
+        int mask = table.length - 1;
+        int slot = mix(hash) & mask;
+        while (table[slot] != 0) {
+            if (table[slot] == hash) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Parses an <tt>int</tt> written the way <tt>String.valueOf(int)</tt>
+     * writes it, rejecting any other way of writing it (e.g. with leading
+     * zeros) as senders used to be compared as strings.
+     * 
+     * @return the value, or <tt>Long.MIN_VALUE</tt> if <tt>sender</tt> isn't
+     *         one
+     */
+    private static long parseHash(String sender) {
+        int length = sender.length();
+        int start = length > 0 && sender.charAt(0) == '-' ? 1 : 0;
+        if (length == start || length - start > 10) {
+            return Long.MIN_VALUE;
+        }
+        if (sender.charAt(start) == '0' && (length > start + 1 || start == 1)) {
+            return Long.MIN_VALUE;
+        }
+        long value = 0;
+        for (int i = start; i < length; i++) {
+            char c = sender.charAt(i);
+            if (c < '0' || c > '9') {
+                return Long.MIN_VALUE;
+            }
+            value = value * 10 + (c - '0');
+        }
+        if (start == 1) {
+            value = -value;
+        }
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            return Long.MIN_VALUE;
+        }
+        return value;
+    }
+
+    /**
+     * Spreads hash codes of IDs that are mostly timestamps over the table.
+     */
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+}